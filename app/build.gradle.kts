@@ -43,6 +43,11 @@ android {
         compose = true
         buildConfig = true
     }
+
+    testOptions {
+        // android.util.Log and friends return defaults instead of throwing in JVM tests.
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 ksp {
@@ -122,6 +127,9 @@ dependencies {
         exclude(group = "org.apache.logging.log4j")
     }
 
+    // Testing
+    testImplementation(libs.junit)
+
     // Desugaring (java.time on API < 26)
     coreLibraryDesugaring(libs.desugar.jdk)
 }
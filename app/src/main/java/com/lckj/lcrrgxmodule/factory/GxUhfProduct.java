@@ -36,6 +36,7 @@ public class GxUhfProduct implements ILcUhfProduct {
     @Override public int SetRegion(int i, int i2, int i3) { return -1; }
     @Override public int SetRfPower(int i) { return -1; }
     @Override public int SetWorkMode(byte b) { return -1; }
+    @Override public int StartContinuousRead() { return -1; }
     @Override public int StartRead() { return -1; }
     @Override public void StopRead() {}
     @Override public int WriteDataByEPC(String str, byte b, byte b2, byte[] bArr, String str2) { return -1; }
@@ -53,6 +53,8 @@ public interface ILcUhfProduct {
 
     int SetWorkMode(byte b);
 
+    int StartContinuousRead();
+
     int StartRead();
 
     void StopRead();
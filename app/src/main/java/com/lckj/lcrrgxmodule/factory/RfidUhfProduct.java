@@ -7,10 +7,21 @@ import android.util.Log;
 import com.rfid.InventoryTagMap;
 import com.rfid.InventoryTagResult;
 import com.rfid.trans.BaseReader;
+import com.rfid.trans.ConcurrentTagTable;
+import com.rfid.trans.EpcTable;
+import com.rfid.trans.InventoryScheduler;
+import com.rfid.trans.LinkSpeed;
+import com.rfid.trans.QController;
 import com.rfid.trans.ReadTag;
+import com.rfid.trans.ReaderActor;
+import com.rfid.trans.ReaderInfo;
 import com.rfid.trans.ReaderParameter;
+import com.rfid.trans.ReaderProbe;
+import com.rfid.trans.RoundStatsRing;
+import com.rfid.trans.SerialTransport;
 import com.rfid.trans.TagCallback;
-import java.util.ArrayList;
+import com.rfid.trans.TagMemoryReader;
+import com.rfid.trans.Transport;
 import java.util.List;
 import kotlin.jvm.internal.ByteCompanionObject;
 
@@ -18,25 +29,47 @@ import kotlin.jvm.internal.ByteCompanionObject;
 public class RfidUhfProduct implements ILcUhfProduct {
     private static String devport = "/dev/ttyS3";
     private static String devport2 = "/dev/ttyS2";
+    /** Longest EPC the 5-bit length field of the PC word can describe. */
+    private static final int MAX_EPC_BYTES = 62;
+    private static final int EPC_WRITE_TIMEOUT_MS = 1000;
+    /**
+     * Where the module answered last in this process, so reconnecting skips the
+     * probe. Only kept in memory: this class has no storage of its own, so a new
+     * process probes again (the app saves its {@code ReaderProfile} instead).
+     */
+    private static volatile ReaderInfo lastFound = null;
+    /** Queries before giving up on a port; covers a module still starting up. */
+    private static final int IDENTIFY_ATTEMPTS = 3;
     private long beginTime;
     private TagCallback callback;
     private long endtime;
     private long ttbegintime;
-    public static List<InventoryTagMap> lsTagList = new ArrayList();
-    public static List<InventoryTagResult> lsList = new ArrayList();
+    /** Rounds kept for {@link #getInventoryTagResultList()}; about an hour of 1 s rounds. */
+    private static final int ROUND_HISTORY = 4096;
     private final String TAG = "bldAdd#RfidUhfProduct";
-    private BaseReader reader = new BaseReader();
+    /** How long past the longest inventory round a setting may wait before it is dropped. */
+    private static final long SETTING_DEADLINE_MARGIN_MS = 1000;
+    private final BaseReader reader;
+    /**
+     * Sends every command to {@link #reader}, so settings and tag access can interleave
+     * with inventory rounds; started by Connect, closed by DisConnect.
+     */
+    private volatile ReaderActor actor = null;
     private ReaderParameter param = new ReaderParameter();
     private volatile boolean mWorking = true;
     private volatile Thread mThread = null;
-    private volatile boolean soundworking = true;
-    private volatile boolean isSound = false;
-    private volatile Thread sThread = null;
+    /** Read sound, beeping while the last round or stream window had reads; null while disconnected. */
+    private volatile SoundPacer sound = null;
     private byte[] pOUcharIDList = new byte[25600];
-    private volatile int NoCardCOunt = 0;
+    private volatile InventoryScheduler scheduler = null;
+    private final EpcTable seenTags = new EpcTable();
+    private final ConcurrentTagTable tagTable = new ConcurrentTagTable();
+    private final RoundStatsRing roundStats = new RoundStatsRing(ROUND_HISTORY);
     private Integer soundid = null;
     private SoundPool soundPool = null;
     public String devName = "";
+    /** Reply of the connected module; null while disconnected. */
+    private volatile ReaderInfo info = null;
     private int CurrentNum = 0;
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -45,6 +78,12 @@ public class RfidUhfProduct implements ILcUhfProduct {
     }
 
     public RfidUhfProduct() {
+        this(new SerialTransport());
+    }
+
+    /** Runs the product over {@code transport} instead of the serial port. */
+    public RfidUhfProduct(Transport transport) {
+        this.reader = new BaseReader(transport);
         this.param.ComAddr = (byte) -1;
         this.param.ScanTime = 20;
         this.param.Session = 0;
@@ -57,7 +96,14 @@ public class RfidUhfProduct implements ILcUhfProduct {
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public void beginSound(boolean z) {
-        this.isSound = z;
+        setSounding(z);
+    }
+
+    private void setSounding(boolean on) {
+        SoundPacer pacer = this.sound;
+        if (pacer != null) {
+            pacer.set(on);
+        }
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -82,72 +128,126 @@ public class RfidUhfProduct implements ILcUhfProduct {
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int Connect() {
+        ReaderInfo cached = lastFound;
+        if (cached != null && Connect(cached.port, cached.baudRate) == 0) {
+            return 0;
+        }
         String str;
         if (Build.VERSION.SDK_INT == 28) {
             str = devport2;
         } else {
             str = devport;
         }
-        return Connect(str, 115200);
+        // The model's port first, then the other known ports, at every rate, in parallel.
+        ReaderInfo info = new ReaderProbe(SerialTransport::new).find(str);
+        if (info == null) {
+            return 48;
+        }
+        int result = Connect(info.port, info.baudRate);
+        // Found afresh: raise the link; lastFound keeps the rate for the next Connect().
+        return result == 0 ? negotiateLink() : result;
     }
 
-    @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
-    public int Connect(String str, int i) {
-        int Connect = this.reader.Connect(str, i, 1);
-        if (Connect == 0) {
-            SystemClock.sleep(100L);
-            Connect = GetUHFInformation(new byte[2], new byte[1], new byte[1], new byte[1], new byte[1], new byte[1], new byte[1]);
-            if (Connect != 0) {
-                this.reader.DisConnect();
+    /** Raises the link to the fastest rate it passes at; see {@link LinkSpeed#negotiate}. */
+    private int negotiateLink() {
+        int result = this.actor.call(ReaderActor.Priority.URGENT, ReaderActor.NO_DEADLINE, r -> {
+            ReaderInfo connected = this.info;
+            if (connected == null) {
+                return 48;
             }
-            this.devName = str;
-            this.isSound = false;
-            this.soundworking = true;
-            this.sThread = new Thread(new Runnable() { // from class: com.lckj.lcrrgxmodule.factory.RfidUhfProduct$$ExternalSyntheticLambda1
-                @Override // java.lang.Runnable
-                public final void run() {
-                    RfidUhfProduct.this.m653lambda$Connect$0$comlckjlcrrgxmodulefactoryRfidUhfProduct();
-                }
-            });
-            this.sThread.start();
+            ReaderInfo linked = LinkSpeed.negotiate(r, connected, LinkSpeed.UPGRADES);
+            if (linked == null) {
+                lastFound = null;
+                return 48;
+            }
+            this.info = linked;
+            lastFound = linked;
+            return 0;
+        });
+        if (result != 0) {
+            DisConnect();
         }
-        return Connect;
+        return result;
     }
 
-    /* renamed from: lambda$Connect$0$com-lckj-lcrrgxmodule-factory-RfidUhfProduct, reason: not valid java name */
-    /* synthetic */ void m653lambda$Connect$0$comlckjlcrrgxmodulefactoryRfidUhfProduct() {
-        while (this.soundworking) {
-            if (this.isSound) {
-                playSound();
-                SystemClock.sleep(50L);
+    @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
+    public int Connect(String str, int i) {
+        synchronized (this) {
+            if (this.actor == null) {
+                this.actor = new ReaderActor(this.reader);
             }
         }
+        int Connect = call(ReaderActor.Priority.URGENT, ReaderActor.NO_DEADLINE, r -> {
+            int result = r.Connect(str, i, 0);
+            if (result == 0) {
+                // Short queries rather than a fixed settle time and a one-second wait.
+                ReaderInfo info = ReaderInfo.query(r, str, i, ReaderProbe.REPLY_TIMEOUT_MS, IDENTIFY_ATTEMPTS);
+                if (info == null) {
+                    r.DisConnect();
+                    return 48;
+                }
+                this.param.ComAddr = info.comAddr;
+                this.param.Antenna = info.antenna;
+                this.info = info;
+                lastFound = info;
+            }
+            return result;
+        });
+        if (Connect == 0) {
+            this.devName = str;
+            SoundPacer previous = this.sound;
+            if (previous != null) {
+                previous.shutdown();
+            }
+            this.sound = new SoundPacer(this::playSound, 50L);
+        } else {
+            closeLink();
+        }
+        return Connect;
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int DisConnect() {
+        StopRead();
         try {
-            this.isSound = false;
-            this.soundworking = false;
-            this.sThread.interrupt();
-            this.sThread = null;
+            SoundPacer pacer = this.sound;
+            this.sound = null;
+            if (pacer != null) {
+                pacer.shutdown();
+            }
             SoundPool soundPool = this.soundPool;
             if (soundPool != null) {
                 soundPool.release();
                 this.soundPool = null;
             }
-            List<InventoryTagMap> list = lsTagList;
-            if (list != null) {
-                list.clear();
-            }
-            List<InventoryTagResult> list2 = lsList;
-            if (list2 != null) {
-                list2.clear();
-            }
+            this.tagTable.clear();
+            this.roundStats.clear();
+            this.info = null;
         } catch (Exception e) {
             Log.e(this.TAG, "DisConnect Exception=" + e.getMessage());
         }
-        return this.reader.DisConnect();
+        return closeLink();
+    }
+
+    /** Leaves active mode, closes the port and ends the actor's thread; 0 if already closed. */
+    private int closeLink() {
+        ReaderActor a;
+        synchronized (this) {
+            a = this.actor;
+            this.actor = null;
+        }
+        if (a == null) {
+            return 0;
+        }
+        int result = a.call(ReaderActor.Priority.URGENT, ReaderActor.NO_DEADLINE, r -> {
+            if (a.isStreaming()) {
+                a.setStreaming(null, null);
+                r.StopActiveInventory(this.param.ComAddr);
+            }
+            return r.DisConnect();
+        });
+        a.close();
+        return result;
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -163,7 +263,7 @@ public class RfidUhfProduct implements ILcUhfProduct {
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int GetUHFInformation(byte[] bArr, byte[] bArr2, byte[] bArr3, byte[] bArr4, byte[] bArr5, byte[] bArr6, byte[] bArr7) {
         byte[] bArr8 = {-1};
-        int GetReaderInformation = this.reader.GetReaderInformation(bArr8, bArr, new byte[1], new byte[1], bArr3, bArr4, bArr5, bArr2, new byte[1], bArr7, bArr6, new byte[1], new byte[1]);
+        int GetReaderInformation = command(r -> r.GetReaderInformation(bArr8, bArr, new byte[1], new byte[1], bArr3, bArr4, bArr5, bArr2, new byte[1], bArr7, bArr6, new byte[1], new byte[1]));
         if (GetReaderInformation == 0) {
             this.param.ComAddr = bArr8[0];
             this.param.Antenna = bArr7[0];
@@ -171,39 +271,63 @@ public class RfidUhfProduct implements ILcUhfProduct {
         return GetReaderInformation;
     }
 
+    /**
+     * Sets power (dBm), antenna and region in one command, each
+     * {@link ReaderInfo#KEEP} to leave it, sending only those the module does not
+     * have already. Returns 0 or the status of the setting the module refused.
+     */
+    public int Configure(int power, int antenna, int band, int maxFre, int minFre) {
+        ReaderInfo connected = this.info;
+        if (connected == null) {
+            return 48;
+        }
+        return setting(r -> {
+            // Asked again: the setters may have changed the module since it connected.
+            ReaderInfo current = ReaderInfo.query(r, connected.port, connected.baudRate, ReaderProbe.REPLY_TIMEOUT_MS, IDENTIFY_ATTEMPTS);
+            if (current == null) {
+                return 48;
+            }
+            int result = current.configure(r, power, antenna, band, maxFre, minFre);
+            if (result == 0 && antenna != ReaderInfo.KEEP) {
+                this.param.Antenna = antenna;
+            }
+            return result;
+        });
+    }
+
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetRfPower(int i) {
-        return this.reader.SetRfPower(this.param.ComAddr, (byte) i);
+        return setting(r -> r.SetRfPower(this.param.ComAddr, (byte) i));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetRegion(int i, int i2, int i3) {
-        return this.reader.SetRegion(this.param.ComAddr, i, i2, i3);
+        return setting(r -> r.SetRegion(this.param.ComAddr, i, i2, i3));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int RfOutput(byte b) {
-        return this.reader.RfOutput(this.param.ComAddr, b);
+        return setting(r -> r.RfOutput(this.param.ComAddr, b));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetPowerMode(int i) {
-        return this.reader.SetPowerMode(this.param.ComAddr, (byte) (i | 128));
+        return setting(r -> r.SetPowerMode(this.param.ComAddr, (byte) (i | 128)));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int MeasureTemperature(byte[] bArr) {
-        return this.reader.MeasureTemperature(this.param.ComAddr, bArr);
+        return command(r -> r.MeasureTemperature(this.param.ComAddr, bArr));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int MeasureReturnLoss(byte[] bArr) {
-        return this.reader.MeasureReturnLoss(this.param.ComAddr, new byte[]{0, 13, -9, 50}, (byte) 0, bArr);
+        return command(r -> r.MeasureReturnLoss(this.param.ComAddr, new byte[]{0, 13, -9, 50}, (byte) 0, bArr));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetAntenna(byte b) {
-        int SetAntennaMultiplexing = this.reader.SetAntennaMultiplexing(this.param.ComAddr, (byte) 1, (byte) 0, b);
+        int SetAntennaMultiplexing = setting(r -> r.SetAntennaMultiplexing(this.param.ComAddr, (byte) 1, (byte) 0, b));
         if (SetAntennaMultiplexing == 0) {
             this.param.Antenna = b;
         }
@@ -212,17 +336,26 @@ public class RfidUhfProduct implements ILcUhfProduct {
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetBeepNotification(int i) {
-        return this.reader.SetBeepNotification(this.param.ComAddr, (byte) i);
+        return setting(r -> r.SetBeepNotification(this.param.ComAddr, (byte) i));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetWorkMode(byte b) {
-        return this.reader.SetWorkMode(this.param.ComAddr, b);
+        return command(r -> r.SetWorkMode(this.param.ComAddr, b));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int SetBaudRate(byte b) {
-        return this.reader.SetBaudRate(this.param.ComAddr, b);
+        return command(r -> {
+            int result = r.SetBaudRate(this.param.ComAddr, b);
+            int rate = LinkSpeed.rate(b & 0xFF);
+            if (result == 0 && rate > 0) {
+                // The module now answers at the new rate only; follow it, and probe next time.
+                lastFound = null;
+                result = r.Reconnect(rate) == 0 ? 0 : 48;
+            }
+            return result;
+        });
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -232,7 +365,11 @@ public class RfidUhfProduct implements ILcUhfProduct {
         }
         int i = b3 * 2;
         byte[] bArr2 = new byte[i];
-        int ReadData_G2 = this.reader.ReadData_G2(this.param.ComAddr, (byte) (str.length() / 4), this.reader.hexStringToBytes(str), b, b2, b3, bArr, (byte) 0, new byte[2], (byte) 0, new byte[12], (byte) 0, bArr2, new byte[1]);
+        byte[] epc = this.reader.hexStringToBytes(str);
+        if (epc == null) {
+            return "FF";
+        }
+        int ReadData_G2 = command(r -> r.ReadData_G2(this.param.ComAddr, (byte) (str.length() / 4), epc, b, b2, b3, bArr, (byte) 0, new byte[2], (byte) 0, new byte[12], (byte) 0, bArr2, new byte[1]));
         return ReadData_G2 == 0 ? this.reader.bytesToHexString(bArr2, 0, i) : String.format("%2X", Integer.valueOf(ReadData_G2));
     }
 
@@ -242,12 +379,15 @@ public class RfidUhfProduct implements ILcUhfProduct {
             return "FF";
         }
         byte[] hexStringToBytes = this.reader.hexStringToBytes(str);
+        if (hexStringToBytes == null) {
+            return "FF";
+        }
         byte length = (byte) (str.length() * 4);
         byte[] bArr2 = new byte[str.length()];
         System.arraycopy(hexStringToBytes, 0, bArr2, 0, hexStringToBytes.length);
         int i = b3 * 2;
         byte[] bArr3 = new byte[i];
-        int ReadData_G2 = this.reader.ReadData_G2(this.param.ComAddr, (byte) -1, new byte[12], b, b2, b3, bArr, (byte) 2, new byte[]{0, 0}, length, bArr2, (byte) 1, bArr3, new byte[1]);
+        int ReadData_G2 = command(r -> r.ReadData_G2(this.param.ComAddr, (byte) -1, new byte[12], b, b2, b3, bArr, (byte) 2, new byte[]{0, 0}, length, bArr2, (byte) 1, bArr3, new byte[1]));
         return ReadData_G2 == 0 ? this.reader.bytesToHexString(bArr3, 0, i) : String.format("%2X", Integer.valueOf(ReadData_G2));
     }
 
@@ -257,7 +397,12 @@ public class RfidUhfProduct implements ILcUhfProduct {
             return 255;
         }
         byte length = (byte) (str.length() / 4);
-        return this.reader.WriteData_G2(this.param.ComAddr, (byte) (str2.length() / 4), length, this.reader.hexStringToBytes(str), b, b2, this.reader.hexStringToBytes(str2), bArr, (byte) 0, new byte[2], (byte) 0, new byte[12], (byte) 0, new byte[1]);
+        byte[] epc = this.reader.hexStringToBytes(str);
+        byte[] data = this.reader.hexStringToBytes(str2);
+        if (epc == null || data == null) {
+            return 255;
+        }
+        return command(r -> r.WriteData_G2(this.param.ComAddr, (byte) (str2.length() / 4), length, epc, b, b2, data, bArr, (byte) 0, new byte[2], (byte) 0, new byte[12], (byte) 0, new byte[1]));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -267,81 +412,36 @@ public class RfidUhfProduct implements ILcUhfProduct {
         }
         byte[] hexStringToBytes = this.reader.hexStringToBytes(str2);
         byte[] hexStringToBytes2 = this.reader.hexStringToBytes(str);
+        if (hexStringToBytes == null || hexStringToBytes2 == null) {
+            return 255;
+        }
         byte[] bArr2 = {0, 0};
         byte length = (byte) (str.length() * 4);
         byte[] bArr3 = new byte[str.length()];
         System.arraycopy(hexStringToBytes2, 0, bArr3, 0, hexStringToBytes2.length);
-        return this.reader.WriteData_G2(this.param.ComAddr, (byte) (str2.length() / 4), (byte) -1, new byte[12], b, b2, hexStringToBytes, bArr, (byte) 2, bArr2, length, bArr3, (byte) 1, new byte[1]);
+        return command(r -> r.WriteData_G2(this.param.ComAddr, (byte) (str2.length() / 4), (byte) -1, new byte[12], b, b2, hexStringToBytes, bArr, (byte) 2, bArr2, length, bArr3, (byte) 1, new byte[1]));
     }
 
+    /**
+     * Writes EPC {@code str2} into the tag with TID {@code str}, selected by TID mask
+     * as {@link com.rfid.trans.TagCommissioner} does. The PC word's length field is
+     * updated only if the length changes; its other bits are kept as the tag has them.
+     */
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public int WriteEPCByTID(String str, String str2, byte[] bArr) {
-        String str3;
         if (str.length() % 4 != 0 || str2.length() % 4 != 0) {
             return 255;
         }
-        byte length = (byte) (str2.length() / 4);
-        byte[] bArr2 = new byte[12];
-        switch (length) {
-            case 1:
-                str3 = "0800";
-                break;
-            case 2:
-                str3 = "1000";
-                break;
-            case 3:
-                str3 = "1800";
-                break;
-            case 4:
-                str3 = "2000";
-                break;
-            case 5:
-                str3 = "2800";
-                break;
-            case 6:
-                str3 = "3000";
-                break;
-            case 7:
-                str3 = "3800";
-                break;
-            case 8:
-                str3 = "4000";
-                break;
-            case 9:
-                str3 = "4800";
-                break;
-            case 10:
-                str3 = "5000";
-                break;
-            case 11:
-                str3 = "5800";
-                break;
-            case 12:
-                str3 = "6000";
-                break;
-            case 13:
-                str3 = "6800";
-                break;
-            case 14:
-                str3 = "7000";
-                break;
-            case 15:
-                str3 = "7800";
-                break;
-            case 16:
-                str3 = "8000";
-                break;
-            default:
-                str3 = "";
-                break;
+        byte[] tid = this.reader.hexStringToBytes(str);
+        byte[] epc = this.reader.hexStringToBytes(str2);
+        if (tid == null || epc == null || epc.length > MAX_EPC_BYTES || bArr == null || bArr.length < 4) {
+            return 255;
         }
-        byte[] hexStringToBytes = this.reader.hexStringToBytes(str3 + str2);
-        byte[] hexStringToBytes2 = this.reader.hexStringToBytes(str);
-        byte[] bArr3 = {0, 0};
-        byte length2 = (byte) (str.length() * 4);
-        byte[] bArr4 = new byte[str.length()];
-        System.arraycopy(hexStringToBytes2, 0, bArr4, 0, hexStringToBytes2.length);
-        return this.reader.WriteData_G2(this.param.ComAddr, length, (byte) -1, bArr2, (byte) 1, (byte) 1, hexStringToBytes, bArr, (byte) 2, bArr3, length2, bArr4, (byte) 1, new byte[1]);
+        byte[] pcEpc = new byte[epc.length + 2];
+        System.arraycopy(epc, 0, pcEpc, 2, epc.length);
+        byte[] cmd = new byte[pcEpc.length + tid.length + 17];
+        return command(r -> r.WriteEpcByMask(this.param.ComAddr, TagMemoryReader.MEM_TID, 0, tid.length * 8, tid, 0,
+                pcEpc, bArr, cmd, new byte[1], EPC_WRITE_TIMEOUT_MS));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -349,7 +449,12 @@ public class RfidUhfProduct implements ILcUhfProduct {
         if (str.length() % 4 != 0 || str2.length() != 8) {
             return 255;
         }
-        return this.reader.Lock_G2(this.param.ComAddr, (byte) (str.length() / 4), this.reader.hexStringToBytes(str), b, b2, this.reader.hexStringToBytes(str2), new byte[1]);
+        byte[] epc = this.reader.hexStringToBytes(str);
+        byte[] password = this.reader.hexStringToBytes(str2);
+        if (epc == null || password == null) {
+            return 255;
+        }
+        return command(r -> r.Lock_G2(this.param.ComAddr, (byte) (str.length() / 4), epc, b, b2, password, new byte[1]));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -357,7 +462,12 @@ public class RfidUhfProduct implements ILcUhfProduct {
         if (str.length() % 4 != 0 || str2.length() != 8) {
             return 255;
         }
-        return this.reader.Kill_G2(this.param.ComAddr, (byte) (str.length() / 4), this.reader.hexStringToBytes(str), this.reader.hexStringToBytes(str2), new byte[1]);
+        byte[] epc = this.reader.hexStringToBytes(str);
+        byte[] password = this.reader.hexStringToBytes(str2);
+        if (epc == null || password == null) {
+            return 255;
+        }
+        return command(r -> r.Kill_G2(this.param.ComAddr, (byte) (str.length() / 4), epc, password, new byte[1]));
     }
 
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
@@ -386,43 +496,54 @@ public class RfidUhfProduct implements ILcUhfProduct {
     /* synthetic */ void m654lambda$StartRead$1$comlckjlcrrgxmodulefactoryRfidUhfProduct() {
         this.CurrentNum = 0;
         this.ttbegintime = SystemClock.elapsedRealtime();
-        byte b = 0;
+        InventoryScheduler scheduler = InventoryScheduler.forSession(this.param.Session);
+        this.scheduler = scheduler;
+        QController qController = this.param.AdaptiveQ
+                ? new QController(true, this.param.QValue, QController.MIN_Q, QController.MAX_Q)
+                : new QController(this.param.QValue);
+        this.seenTags.clear();
+        this.tagTable.clear();
+        long[] crc = new long[2];
+        inventory(r -> {
+            r.SetTagTable(this.seenTags);
+            crc[0] = r.GetCrcErrorCount();
+            return 0;
+        });
         while (this.mWorking) {
             int[] iArr = {0};
             int[] iArr2 = {0};
-            if (this.param.Session == 0 || this.param.Session == 1) {
-                this.NoCardCOunt = 0;
-                b = 0;
-            }
             this.beginTime = SystemClock.elapsedRealtime();
-            iArr2[0] = 0;
-            int Inventory_G2 = this.reader.Inventory_G2(this.param.ComAddr, (byte) this.param.QValue, (byte) this.param.Session, (byte) this.param.TidPtr, (byte) this.param.TidLen, b, ByteCompanionObject.MIN_VALUE, this.param.ScanTime, this.pOUcharIDList, iArr2, iArr);
-            if (iArr2[0] == 0) {
-                this.isSound = false;
-                if (this.param.Session > 1) {
-                    this.NoCardCOunt++;
-                    if (this.NoCardCOunt > 7) {
-                        b = (byte) (1 - b);
-                        this.NoCardCOunt = 0;
-                    }
-                }
-            } else {
-                this.NoCardCOunt = 0;
-                this.isSound = true;
-            }
+            // One command per round: settings queued meanwhile go out before the next one.
+            int Inventory_G2 = inventory(r -> {
+                int status = r.Inventory_G2(this.param.ComAddr, (byte) qController.currentQ(), (byte) scheduler.session(), (byte) this.param.TidPtr, (byte) this.param.TidLen, scheduler.target(), ByteCompanionObject.MIN_VALUE, this.param.ScanTime, this.pOUcharIDList, iArr2, iArr);
+                crc[1] = r.GetCrcErrorCount();
+                return status;
+            });
+            setSounding(iArr2[0] != 0);
             this.endtime = SystemClock.elapsedRealtime();
             InventoryTagResult inventoryTagResult = new InventoryTagResult();
             inventoryTagResult.nCount = iArr2[0];
             inventoryTagResult.nTime = this.endtime - this.beginTime;
-            inventoryTagResult.speed = (int) ((inventoryTagResult.nCount * 1000) / inventoryTagResult.nTime);
+            inventoryTagResult.speed = inventoryTagResult.nTime > 0 ? (int) ((inventoryTagResult.nCount * 1000) / inventoryTagResult.nTime) : 0;
             inventoryTagResult.result = Inventory_G2;
-            inventoryTagResult.NewNum = lsTagList.size() - this.CurrentNum;
-            this.CurrentNum = lsTagList.size();
+            inventoryTagResult.NewNum = this.seenTags.size() - this.CurrentNum;
+            this.CurrentNum = this.seenTags.size();
             inventoryTagResult.TotalTime = SystemClock.elapsedRealtime() - this.ttbegintime;
-            lsList.add(inventoryTagResult);
+            inventoryTagResult.QValue = qController.currentQ();
+            inventoryTagResult.nCrcErrors = (int) (crc[1] - crc[0]);
+            crc[0] = crc[1];
+            qController.update(inventoryTagResult, this.param.ScanTime);
+            scheduler.onRound(inventoryTagResult);
+            this.tagTable.update(this.seenTags);
+            this.roundStats.add(inventoryTagResult);
             SystemClock.sleep(this.param.Interval);
         }
-        this.isSound = false;
+        inventory(r -> {
+            r.SetTagTable(null);
+            return 0;
+        });
+        this.tagTable.update(this.seenTags);
+        setSounding(false);
         this.mThread = null;
         TagCallback tagCallback = this.callback;
         if (tagCallback != null) {
@@ -430,22 +551,160 @@ public class RfidUhfProduct implements ILcUhfProduct {
         }
     }
 
+    /**
+     * Scheduler of the current or last {@link #StartRead()} run, for its per-strategy
+     * metrics; null before the first run. S2/S3 in the inventory parameters select
+     * {@link InventoryScheduler.Strategy#COUNT_ONCE}, S0/S1 select MONITOR.
+     */
+    public InventoryScheduler getInventoryScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Like {@link #StartRead()}, but the module inventories on its own in active work
+     * mode and streams tags, so no air time is lost between command rounds. Answer
+     * mode is restored by {@link #StopRead()}; other commands meanwhile pause the
+     * stream while they run. Returns the module's status if it refuses active mode;
+     * callers can fall back to {@link #StartRead()}.
+     */
+    @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
+    public int StartContinuousRead() {
+        if (this.mThread != null) {
+            return 1;
+        }
+        int result = inventory(this::startStream);
+        if (result != 0) {
+            return result;
+        }
+        this.mWorking = true;
+        this.mThread = new Thread(this::continuousReadLoop);
+        this.mThread.start();
+        return 0;
+    }
+
+    private void continuousReadLoop() {
+        this.CurrentNum = 0;
+        this.ttbegintime = SystemClock.elapsedRealtime();
+        this.beginTime = this.ttbegintime;
+        this.seenTags.clear();
+        this.tagTable.clear();
+        inventory(r -> {
+            r.SetTagTable(this.seenTags);
+            return 0;
+        });
+        int[] cardNum = new int[1];
+        int windowCount = 0;
+        while (this.mWorking) {
+            int result = inventory(r -> r.ReadActiveModeData(cardNum, 200));
+            ReaderActor a = this.actor;
+            if (result != 0 || a == null || !a.isStreaming()) {
+                break;
+            }
+            setSounding(cardNum[0] > 0);
+            windowCount += cardNum[0];
+            this.endtime = SystemClock.elapsedRealtime();
+            if (this.endtime - this.beginTime >= 1000) {
+                // There are no rounds in active mode; summarise the stream once a second instead.
+                InventoryTagResult inventoryTagResult = new InventoryTagResult();
+                inventoryTagResult.nCount = windowCount;
+                inventoryTagResult.nTime = this.endtime - this.beginTime;
+                inventoryTagResult.speed = (int) ((inventoryTagResult.nCount * 1000) / inventoryTagResult.nTime);
+                inventoryTagResult.result = result;
+                inventoryTagResult.NewNum = this.seenTags.size() - this.CurrentNum;
+                this.CurrentNum = this.seenTags.size();
+                inventoryTagResult.TotalTime = this.endtime - this.ttbegintime;
+                this.tagTable.update(this.seenTags);
+                this.roundStats.add(inventoryTagResult);
+                windowCount = 0;
+                this.beginTime = this.endtime;
+            }
+        }
+        call(ReaderActor.Priority.URGENT, ReaderActor.NO_DEADLINE, r -> {
+            setStreaming(null, null);
+            r.StopActiveInventory(this.param.ComAddr);
+            r.SetTagTable(null);
+            return 0;
+        });
+        this.tagTable.update(this.seenTags);
+        setSounding(false);
+        this.mThread = null;
+        TagCallback tagCallback = this.callback;
+        if (tagCallback != null) {
+            tagCallback.FinishCallBack();
+        }
+    }
+
+    /** From a command: active mode, paused by the actor around other commands. */
+    private int startStream(BaseReader r) {
+        int result = r.StartActiveInventory(this.param.ComAddr);
+        if (result == 0) {
+            setStreaming(
+                    pr -> pr.StopActiveInventory(this.param.ComAddr),
+                    pr -> pr.StartActiveInventory(this.param.ComAddr));
+        }
+        return result;
+    }
+
+    /** From a command: see {@link ReaderActor#setStreaming}. */
+    private void setStreaming(ReaderActor.Command pause, ReaderActor.Command resume) {
+        ReaderActor a = this.actor;
+        if (a != null) {
+            a.setStreaming(pause, resume);
+        }
+    }
+
+    /** {@link ReaderActor#call} on the connection's actor; {@link ReaderActor#STATUS_CLOSED} while disconnected. */
+    private int call(ReaderActor.Priority priority, long deadlineMs, ReaderActor.Command command) {
+        ReaderActor a = this.actor;
+        return a == null ? ReaderActor.STATUS_CLOSED : a.call(priority, deadlineMs, command);
+    }
+
+    private int inventory(ReaderActor.Command command) {
+        return call(ReaderActor.Priority.INVENTORY, ReaderActor.NO_DEADLINE, command);
+    }
+
+    /** Tag access and queries: waits for the current round, however long. */
+    private int command(ReaderActor.Command command) {
+        return call(ReaderActor.Priority.CONTROL, ReaderActor.NO_DEADLINE, command);
+    }
+
+    /**
+     * A setting, applied after the current round; {@link ReaderActor#STATUS_EXPIRED}
+     * if it waited over a round's scan time and {@link #SETTING_DEADLINE_MARGIN_MS}.
+     */
+    private int setting(ReaderActor.Command command) {
+        long deadline = (this.param.ScanTime & 0xFF) * 100L + SETTING_DEADLINE_MARGIN_MS;
+        return call(ReaderActor.Priority.CONTROL, deadline, command);
+    }
+
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public void StopRead() {
         this.mWorking = false;
         if (this.mThread != null) {
-            this.isSound = false;
+            setSounding(false);
         }
     }
 
+    /** Copy of the distinct tags of the current or last run, as of its last round. */
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public List<InventoryTagMap> getInventoryTagMapList() {
-        return lsTagList;
+        return this.tagTable.snapshot();
     }
 
+    /** Copy of the last {@value #ROUND_HISTORY} rounds, oldest first. */
     @Override // com.lckj.lcrrgxmodule.factory.ILcUhfProduct
     public List<InventoryTagResult> getInventoryTagResultList() {
-        return lsList;
+        return this.roundStats.snapshot();
+    }
+
+    /** Distinct tags, readable while inventorying; updated once per round. */
+    public ConcurrentTagTable getTagTable() {
+        return this.tagTable;
+    }
+
+    /** Recent rounds, readable while inventorying, with rolling reads/s and new tags/s. */
+    public RoundStatsRing getRoundStats() {
+        return this.roundStats;
     }
 
     public class OutDataCB implements TagCallback {
@@ -468,7 +727,7 @@ public class RfidUhfProduct implements ILcUhfProduct {
 
         @Override // com.rfid.trans.TagCallback
         public void tagCallback(ReadTag readTag) {
-            readTag.epcId.toUpperCase();
+            readTag.getEpcId();
         }
     }
 }
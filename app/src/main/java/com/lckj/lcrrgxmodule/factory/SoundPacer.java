@@ -0,0 +1,61 @@
+package com.lckj.lcrrgxmodule.factory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays a sound every {@code intervalMs} while switched on. The sound is run by
+ * a scheduled task that reschedules itself only while on, so the thread behind
+ * it sleeps in the executor's queue while off instead of polling a flag.
+ * Switching on and off is cheap and may be done from the inventory loop every
+ * round.
+ */
+final class SoundPacer {
+
+    private final Runnable sound;
+    private final long intervalMs;
+    private final AtomicBoolean on = new AtomicBoolean();
+    private final AtomicBoolean ticking = new AtomicBoolean();
+    private final ScheduledThreadPoolExecutor executor;
+
+    SoundPacer(Runnable sound, long intervalMs) {
+        this.sound = sound;
+        this.intervalMs = intervalMs;
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "uhf-sound");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void set(boolean on) {
+        this.on.set(on);
+        if (on && this.ticking.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this::tick);
+            } catch (RejectedExecutionException e) {
+                // Shut down already.
+            }
+        }
+    }
+
+    /** Stops for good; the pacer cannot be switched on again. */
+    void shutdown() {
+        this.on.set(false);
+        this.executor.shutdownNow();
+    }
+
+    private void tick() {
+        if (!this.on.get()) {
+            this.ticking.set(false);
+            // Switched on again between the check and the reset: keep going.
+            if (!this.on.get() || !this.ticking.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        this.sound.run();
+        this.executor.schedule(this::tick, this.intervalMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -3,8 +3,12 @@ package com.rfid;
 /* loaded from: classes3.dex */
 public class InventoryTagResult {
     public int NewNum;
+    public int QValue;
     public long TotalTime;
     public int nCount;
+    public int nCrcErrors;
+    /** Bytes received from the module during the round. */
+    public long nRxBytes;
     public long nTime;
     public int result;
     public int speed;
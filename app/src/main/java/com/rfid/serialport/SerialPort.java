@@ -1,5 +1,9 @@
 package com.rfid.serialport;
 
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
 import android.util.Log;
 import java.io.File;
 import java.io.FileDescriptor;
@@ -15,6 +19,7 @@ public class SerialPort {
     private FileDescriptor mFd;
     private FileInputStream mFileInputStream;
     private FileOutputStream mFileOutputStream;
+    private final StructPollfd[] mPollFds = {new StructPollfd()};
 
     private static native FileDescriptor open(String str, int i, int i2);
 
@@ -31,6 +36,40 @@ public class SerialPort {
         }
         this.mFileInputStream = new FileInputStream(this.mFd);
         this.mFileOutputStream = new FileOutputStream(this.mFd);
+        this.mPollFds[0].fd = this.mFd;
+        this.mPollFds[0].events = (short) OsConstants.POLLIN;
+    }
+
+    public FileDescriptor getFileDescriptor() {
+        return this.mFd;
+    }
+
+    /**
+     * Blocks until the port has data to read or {@code timeoutMs} elapses, without
+     * consuming CPU. Returns false on timeout or signal interruption; throws if the
+     * descriptor reports an error or hang-up with nothing left to read.
+     */
+    public boolean poll(int timeoutMs) throws IOException {
+        StructPollfd pfd = this.mPollFds[0];
+        pfd.revents = 0;
+        try {
+            if (Os.poll(this.mPollFds, timeoutMs) <= 0) {
+                return false;
+            }
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.EINTR) {
+                return false;
+            }
+            throw new IOException("poll failed", e);
+        }
+        int revents = pfd.revents;
+        if ((revents & OsConstants.POLLIN) != 0) {
+            return true;
+        }
+        if ((revents & (OsConstants.POLLERR | OsConstants.POLLHUP | OsConstants.POLLNVAL)) != 0) {
+            throw new IOException("serial port closed (revents=" + revents + ")");
+        }
+        return false;
     }
 
     public InputStream getInputStream() {
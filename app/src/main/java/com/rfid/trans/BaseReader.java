@@ -3,102 +3,130 @@ package com.rfid.trans;
 import android.util.Log;
 import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
 import androidx.vectordrawable.graphics.drawable.PathInterpolatorCompat;
-import kotlin.UByte;
 
 /* loaded from: classes3.dex */
 public class BaseReader {
+    private static final String TAG = "BaseReader";
+    private static final int RX_NEED_MORE = -1;
+    private static final long INVENTORY_TIMEOUT_MARGIN = 2000;
+    /** reCmd of the frames the module pushes on its own in active (real-time) work mode. */
+    private static final int ACTIVE_MODE_DATA = 0xEE;
+    private static final int CMD_SET_WORK_MODE = 0x76;
+    public static final byte WORK_MODE_ANSWER = 0;
+    public static final byte WORK_MODE_ACTIVE = 1;
     private TagCallback callback;
-    private MessageTran msg = new MessageTran();
+    private final MessageTran msg;
     private long maxScanTime = 2000;
     private int[] recvLength = new int[1];
     private byte[] recvBuff = new byte[AccessibilityNodeInfoCompat.EXTRA_DATA_TEXT_CHARACTER_LOCATION_ARG_MAX_LENGTH];
     private int logswitch = 0;
     private String resultError = "";
+    private final FrameAssembler rx = new FrameAssembler(4096);
+    private final byte[] pcScratch = new byte[2];
+    private EpcTable dedup = null;
+    private volatile TagFilter filter = null;
+    private volatile long filteredReads = 0;
+    private boolean suppressRepeats = false;
+    private long summaryIntervalNanos = 0;
+    private long lastSummaryNanos = 0;
+    private volatile long crcErrorTotal = 0;
+    /** TID bytes each record of the running Inventory_G2 carries after its EPC; 0 for EPC only. */
+    private int inventoryTidBytes = 0;
 
-    private void getCRC(byte[] bArr, int i) {
-        int i2 = 65535;
-        int i3 = 0;
-        while (i3 < i) {
-            try {
-                i2 ^= bArr[i3] & UByte.MAX_VALUE;
-                for (int i4 = 0; i4 < 8; i4++) {
-                    i2 = (i2 & 1) != 0 ? (i2 >> 1) ^ 33800 : i2 >> 1;
-                }
-                i3++;
-            } catch (Exception unused) {
-                return;
-            }
-        }
-        bArr[i3] = (byte) (i2 & 255);
-        bArr[i3 + 1] = (byte) ((i2 >> 8) & 255);
+    public BaseReader() {
+        this(new SerialTransport());
     }
 
-    private boolean CheckCRC(byte[] bArr, int i) {
-        try {
-            byte[] bArr2 = new byte[256];
-            System.arraycopy(bArr, 0, bArr2, 0, i);
-            getCRC(bArr2, i);
-            if (bArr2[i + 1] == 0) {
-                if (bArr2[i] == 0) {
-                    return true;
-                }
-            }
-        } catch (Exception unused) {
+    /** Drives the module over {@code transport}, e.g. an in-process emulator in tests. */
+    public BaseReader(Transport transport) {
+        this.msg = new MessageTran(transport);
+    }
+
+    private void getCRC(byte[] bArr, int i) {
+        if (i >= 0 && i + 2 <= bArr.length) {
+            ProtocolCodec.appendCrc(bArr, 0, i);
         }
-        return false;
     }
 
+    /** Hex of {@code bArr[i, i2)}; null for a null or empty array or a bad range. */
     public String bytesToHexString(byte[] bArr, int i, int i2) {
-        StringBuilder sb = new StringBuilder("");
-        if (bArr != null) {
-            try {
-                if (bArr.length > 0) {
-                    while (i < i2) {
-                        String hexString = Integer.toHexString(bArr[i] & UByte.MAX_VALUE);
-                        if (hexString.length() == 1) {
-                            sb.append(0);
-                        }
-                        sb.append(hexString);
-                        i++;
-                    }
-                    return sb.toString().toUpperCase();
-                }
-            } catch (Exception unused) {
-            }
+        if (bArr == null || bArr.length == 0 || i < 0 || i2 > bArr.length || i > i2) {
+            return null;
         }
-        return null;
+        return HexCodec.toHex(bArr, i, i2 - i);
     }
 
+    /** Bytes of hex {@code str}, a trailing odd digit ignored; null if empty or not hex. */
     public byte[] hexStringToBytes(String str) {
-        if (str != null) {
-            try {
-                if (!str.equals("")) {
-                    String upperCase = str.toUpperCase();
-                    int length = upperCase.length() / 2;
-                    char[] charArray = upperCase.toCharArray();
-                    byte[] bArr = new byte[length];
-                    for (int i = 0; i < length; i++) {
-                        int i2 = i * 2;
-                        bArr[i] = (byte) (charToByte(charArray[i2 + 1]) | (charToByte(charArray[i2]) << 4));
-                    }
-                    return bArr;
-                }
-            } catch (Exception unused) {
-            }
+        if (str == null) {
+            return null;
         }
-        return null;
-    }
-
-    private byte charToByte(char c) {
-        return (byte) "0123456789ABCDEF".indexOf(c);
+        int chars = str.length() & ~1;
+        if (chars == 0) {
+            return null;
+        }
+        byte[] bArr = new byte[chars / 2];
+        return HexCodec.decode(str, 0, chars, bArr, 0) < 0 ? null : bArr;
     }
 
     public void SetCallBack(TagCallback tagCallback) {
         this.callback = tagCallback;
     }
 
+    /**
+     * Routes reads through {@code table}: the first sighting of an EPC is reported at
+     * once, repeat reads are only counted and reported every {@code summaryIntervalMs}
+     * as one ReadTag per EPC carrying the number of reads since its last report. With
+     * a null table every read is reported again.
+     */
+    public void SetTagDedup(EpcTable table, int summaryIntervalMs) {
+        this.dedup = table;
+        this.suppressRepeats = table != null;
+        this.summaryIntervalNanos = summaryIntervalMs * 1_000_000L;
+        this.lastSummaryNanos = System.nanoTime();
+    }
+
+    /**
+     * Counts every read in {@code table} (distinct tags, per-tag statistics) while
+     * still reporting each one; a null table stops the counting.
+     */
+    public void SetTagTable(EpcTable table) {
+        this.dedup = table;
+        this.suppressRepeats = false;
+    }
+
+    /** Reports the reads counted by the dedup table since their last report. */
+    public void FlushTagSummaries() {
+        EpcTable table = this.dedup;
+        TagCallback tagCallback = this.callback;
+        this.lastSummaryNanos = System.nanoTime();
+        if (table == null || tagCallback == null || !this.suppressRepeats) {
+            return;
+        }
+        for (int e = 0, n = table.size(); e < n; e++) {
+            int pending = table.unreportedReads(e);
+            if (pending > 0) {
+                table.markReported(e);
+                ReadTag tag = new ReadTag();
+                tag.epc = table.key(e);
+                tag.tidKey = table.tidKey(e);
+                tag.rssi = table.lastRssi(e);
+                tag.antId = table.antenna(e);
+                tag.readCount = pending;
+                tagCallback.tagCallback(tag);
+            }
+        }
+    }
+
+    private void summarizeIfDue() {
+        if (this.suppressRepeats && System.nanoTime() - this.lastSummaryNanos >= this.summaryIntervalNanos) {
+            FlushTagSummaries();
+        }
+    }
+
     public int Connect(String str, int i, int i2) {
         this.logswitch = i2;
+        this.msg.setTrace(i2 == 1);
         return this.msg.open(str, i);
     }
 
@@ -106,112 +134,299 @@ public class BaseReader {
         return this.msg.close();
     }
 
+    /** Opens the port again at {@code baudRate}, for after the module switched to it with {@link #SetBaudRate}. */
+    public int Reconnect(int baudRate) {
+        return this.msg.reopen(baudRate);
+    }
+
+    /** Rate the port was last opened at. */
+    public int GetBaudRate() {
+        return this.msg.getBaudRate();
+    }
+
+    /** Bytes received from the module since creation; link utilization takes differences of it. */
+    public long GetReceivedByteCount() {
+        return this.msg.getReceivedBytes();
+    }
+
     private int SendCMD(byte[] bArr) {
-        if (this.logswitch == 1) {
-            Log.d("Send", bytesToHexString(bArr, 0, (bArr[0] & UByte.MAX_VALUE) + 1));
-        }
         return this.msg.Write(bArr);
     }
 
-    private int GetCMDData(byte[] bArr, int[] iArr, int i, int i2) {
-        int length;
-        int i3;
-        byte[] bArr2 = new byte[2000];
-        long currentTimeMillis = System.currentTimeMillis();
-        while (true) {
-            int i4 = 0;
-            while (System.currentTimeMillis() - currentTimeMillis < i2) {
-                try {
-                    byte[] Read = this.msg.Read();
-                    if (Read != null && (length = Read.length) != 0) {
-                        int i5 = length + i4;
-                        byte[] bArr3 = new byte[i5];
-                        System.arraycopy(bArr2, 0, bArr3, 0, i4);
-                        System.arraycopy(Read, 0, bArr3, i4, length);
-                        int i6 = 0;
-                        while (true) {
-                            i3 = i5 - i6;
-                            if (i3 <= 4) {
-                                break;
-                            }
-                            int i7 = bArr3[i6];
-                            if ((i7 & 255) >= 4) {
-                                byte b = bArr3[i6 + 2];
-                                if ((b & UByte.MAX_VALUE) == i || ((bArr3[i6 + 3] & UByte.MAX_VALUE) == 254 && (b & UByte.MAX_VALUE) == 0)) {
-                                    int i8 = i7 & 255;
-                                    if (i5 < i6 + i8 + 1) {
-                                        break;
-                                    }
-                                    int i9 = i8 + 1;
-                                    byte[] bArr4 = new byte[i9];
-                                    System.arraycopy(bArr3, i6, bArr4, 0, i9);
-                                    if (CheckCRC(bArr4, i9)) {
-                                        System.arraycopy(bArr4, 0, bArr, 0, i9);
-                                        iArr[0] = i8 + 2;
-                                        return 0;
-                                    }
-                                }
-                            }
-                            i6++;
-                        }
-                        if (i5 > i6) {
-                            System.arraycopy(bArr3, i6, bArr2, 0, i3);
-                            i4 = i3;
-                        }
-                    }
-                } catch (Exception e) {
-                    e.toString();
-                    return 48;
+    /**
+     * Waits for the reply to {@code cmd} and copies it to the start of
+     * {@code bArr}, where the command methods expect it.
+     */
+    private int GetCMDData(byte[] bArr, int[] iArr, int cmd, int timeout) {
+        this.rx.reset();
+        long deadline = System.nanoTime() + timeout * 1_000_000L;
+        try {
+            while (pumpRx(deadline)) {
+                int off = this.rx.nextFrame(cmd);
+                reportCrcErrors(cmd);
+                if (off >= 0) {
+                    int n = this.rx.frameLength();
+                    System.arraycopy(this.rx.array(), off, bArr, 0, n);
+                    iArr[0] = n + 1;
+                    this.rx.consumeFrame();
+                    return 0;
                 }
             }
-            return 48;
+        } catch (Exception e) {
+            Log.e(TAG, "GetCMDData: " + e);
         }
+        return 48;
     }
 
-    /* JADX WARN: Code restructure failed: missing block: B:73:0x010e, code lost:
-    
-        if (r25[0] <= 0) goto L57;
+    /**
+     * Collects the answer to an inventory command, which the module may split
+     * across several frames (status 0x03 means more frames follow). Each frame
+     * is decoded in place inside the shared {@link FrameAssembler}; tag records
+     * are copied into {@code epcList} as {@code [len][epc...][rssi]} and reported
+     * through the callback as they arrive. Returns 0 once the round is complete.
      */
-    /* JADX WARN: Code restructure failed: missing block: B:74:0x0110, code lost:
-    
-        return 0;
+    private int GetInventoryData(byte comAddr, int cmd, byte[] epcList, int[] cardNum, int[] epcLength, int scanTime) {
+        cardNum[0] = 0;
+        epcLength[0] = 0;
+        this.rx.reset();
+        long timeout = (scanTime & 0xFF) * 100L + INVENTORY_TIMEOUT_MARGIN;
+        long deadline = System.nanoTime() + timeout * 1_000_000L;
+        try {
+            while (pumpRx(deadline)) {
+                int off;
+                while ((off = this.rx.nextFrame(cmd)) >= 0) {
+                    int result = decodeInventoryFrame(this.rx.array(), off, epcList, cardNum, epcLength);
+                    this.rx.consumeFrame();
+                    if (result != RX_NEED_MORE) {
+                        reportCrcErrors(cmd);
+                        summarizeIfDue();
+                        return result;
+                    }
+                }
+                reportCrcErrors(cmd);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "GetInventoryData: " + e);
+        }
+        return 48;
+    }
+
+    /**
+     * Decodes one CRC-checked inventory frame starting at {@code off}:
+     * {@code Len Adr reCmd Status Ant Num [EPCLen EPC RSSI]... CRC16}. When the
+     * command asked for TID (TidLen > 0), records with bit 7 of EPCLen set carry
+     * {@code EPC TID} in the low 7 bits' worth of bytes, TID last; records without
+     * it are EPC only. Records are copied to {@code epcList} as received.
      */
-    /* JADX WARN: Code restructure failed: missing block: B:75:0x0111, code lost:
-    
-        return r0;
+    private int decodeInventoryFrame(byte[] b, int off, byte[] epcList, int[] cardNum, int[] epcLength) {
+        int len = b[off] & 0xFF;
+        if ((b[off + 2] & 0xFF) == 0) {
+            return 0xFE;
+        }
+        int status = b[off + 3] & 0xFF;
+        if (status != 0x01 && status != 0x02 && status != 0x03 && status != 0x04) {
+            return status == 0xFB ? 0 : status;
+        }
+        if (len < 7) {
+            return status == 0x03 ? RX_NEED_MORE : 0;
+        }
+        int ant = b[off + 4] & 0xFF;
+        int num = b[off + 5] & 0xFF;
+        int p = off + 6;
+        int end = off + len - 1;
+        for (int n = 0; n < num && p < end; n++) {
+            int dataLen = b[p] & 0xFF;
+            int tidLen = 0;
+            if ((dataLen & 0x80) != 0 && this.inventoryTidBytes > 0) {
+                dataLen &= 0x7F;
+                tidLen = Math.min(this.inventoryTidBytes, dataLen);
+            }
+            int recLen = dataLen + 2;
+            if (p + recLen > end) {
+                break;
+            }
+            int rssi = b[p + 1 + dataLen] & 0xFF;
+            if (epcList != null && epcLength[0] + recLen <= epcList.length) {
+                System.arraycopy(b, p, epcList, epcLength[0], recLen);
+                epcLength[0] += recLen;
+            }
+            cardNum[0]++;
+            dispatchTag(b, p + 1, dataLen - tidLen, rssi, ant, tidLen);
+            p += recLen;
+        }
+        return status == 0x03 ? RX_NEED_MORE : 0;
+    }
+
+    /**
+     * Sleeps until more bytes arrive and appends them to {@link #rx}. Returns false
+     * once {@code deadline} (a {@link System#nanoTime()} value) has passed.
      */
-    /* JADX WARN: Code restructure failed: missing block: B:86:0x0153, code lost:
-    
-        if (r10 <= r6) goto L75;
+    private boolean pumpRx(long deadline) {
+        while (true) {
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMs <= 0) {
+                return false;
+            }
+            if (this.msg.drainTo(this.rx, remainingMs) > 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Switches the module to active work mode: it then inventories continuously on
+     * its own, with no gap between rounds, and pushes every tag it singulates.
+     * Collect them with {@link #ReadActiveModeData(int[], int)} and end the stream
+     * with {@link #StopActiveInventory(byte)}.
      */
-    /* JADX WARN: Code restructure failed: missing block: B:87:0x0155, code lost:
-    
-        r0 = 0;
-        java.lang.System.arraycopy(r11, r6, r2, 0, r8);
-        r6 = r8;
+    public int StartActiveInventory(byte comAddr) {
+        return SetWorkMode(comAddr, WORK_MODE_ACTIVE);
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for streamed tag frames, {@code Len Adr EE Status
+     * Ant EPCLen EPC RSSI CRC16}, and reports each tag through the callback. Returns
+     * 0 as soon as at least one frame was decoded or the wait ran out (a quiet field
+     * is not an error); {@code cardNum[0]} holds the number of tags reported. Returns
+     * 48 if the link is closed.
      */
-    /* JADX WARN: Code restructure failed: missing block: B:97:0x015b, code lost:
-    
-        r0 = 0;
-        r6 = 0;
+    public int ReadActiveModeData(int[] cardNum, int timeoutMs) {
+        cardNum[0] = 0;
+        if (!this.msg.isOpen()) {
+            return 48;
+        }
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        try {
+            do {
+                int off;
+                while ((off = this.rx.nextFrame(ACTIVE_MODE_DATA)) >= 0) {
+                    decodeActiveFrame(this.rx.array(), off, cardNum);
+                    this.rx.consumeFrame();
+                }
+                reportCrcErrors(ACTIVE_MODE_DATA);
+                if (cardNum[0] > 0) {
+                    break;
+                }
+            } while (pumpRx(deadline));
+        } catch (Exception e) {
+            Log.e(TAG, "ReadActiveModeData: " + e);
+        }
+        summarizeIfDue();
+        return 0;
+    }
+
+    /**
+     * Puts the module back in answer mode. Tags streamed before the reply arrives are
+     * still decoded and reported rather than discarded with the receive buffer.
      */
-    /*
-        Code decompiled incorrectly, please refer to instructions dump.
-        To view partially-correct add '--show-bad-code' argument
-    */
-    private int GetInventoryData(byte r22, int r23, byte[] r24, int[] r25, int[] r26, int r27) {
-        /*
-            Method dump skipped, instructions count: 389
-            To view this dump add '--comments-level debug' option
-        */
-        throw new UnsupportedOperationException("Method not decompiled: com.rfid.trans.BaseReader.GetInventoryData(byte, int, byte[], int[], int[], int):int");
+    public int StopActiveInventory(byte comAddr) {
+        byte[] bArr = {5, comAddr, CMD_SET_WORK_MODE, WORK_MODE_ANSWER, 0, 0};
+        getCRC(bArr, 5 - 1);
+        SendCMD(bArr);
+        int[] cardNum = new int[1];
+        long deadline = System.nanoTime() + 1000 * 1_000_000L;
+        try {
+            do {
+                int off;
+                while ((off = this.rx.nextFrame(CMD_SET_WORK_MODE, ACTIVE_MODE_DATA)) >= 0) {
+                    byte[] b = this.rx.array();
+                    if ((b[off + 2] & 0xFF) == ACTIVE_MODE_DATA) {
+                        decodeActiveFrame(b, off, cardNum);
+                        this.rx.consumeFrame();
+                        continue;
+                    }
+                    int status = b[off + 3] & 0xFF;
+                    this.rx.consumeFrame();
+                    reportCrcErrors(CMD_SET_WORK_MODE);
+                    this.rx.reset();
+                    return status;
+                }
+                reportCrcErrors(CMD_SET_WORK_MODE);
+            } while (pumpRx(deadline));
+        } catch (Exception e) {
+            Log.e(TAG, "StopActiveInventory: " + e);
+        }
+        return 48;
+    }
+
+    private void decodeActiveFrame(byte[] b, int off, int[] cardNum) {
+        int len = b[off] & 0xFF;
+        if ((b[off + 2] & 0xFF) != ACTIVE_MODE_DATA || b[off + 3] != 0 || len < 8) {
+            return;
+        }
+        int ant = b[off + 4] & 0xFF;
+        int epcLen = b[off + 5] & 0xFF;
+        if (6 + epcLen + 1 > len - 1) {
+            return;
+        }
+        cardNum[0]++;
+        dispatchTag(b, off + 6, epcLen, b[off + 6 + epcLen] & 0xFF, ant, 0);
+    }
+
+    /** Frames rejected by CRC since connecting; round statistics take differences of it. */
+    public long GetCrcErrorCount() {
+        return this.crcErrorTotal;
+    }
+
+    private void reportCrcErrors(int cmd) {
+        int errors = this.rx.takeCrcErrors();
+        this.crcErrorTotal += errors;
+        TagCallback tagCallback = this.callback;
+        if (errors > 0 && tagCallback != null) {
+            tagCallback.CRCErrorCallBack(errors);
+        }
+    }
+
+    /** Reports the EPC at {@code b[off, off + len)}, followed by {@code tidLen} bytes of TID. */
+    private void dispatchTag(byte[] b, int off, int len, int rssi, int ant, int tidLen) {
+        TagFilter tagFilter = this.filter;
+        if (tagFilter != null && !tagFilter.matches(b, off, len)) {
+            this.filteredReads++;
+            return;
+        }
+        EpcTable table = this.dedup;
+        int e = -1;
+        if (table != null) {
+            e = table.record(b, off, len, rssi, ant, System.currentTimeMillis());
+            if (tidLen > 0) {
+                table.recordTid(e, b, off + len, tidLen);
+            }
+            if (this.suppressRepeats) {
+                if (table.readCount(e) > 1) {
+                    return;
+                }
+                table.markReported(e);
+            }
+        }
+        TagCallback tagCallback = this.callback;
+        if (tagCallback == null) {
+            return;
+        }
+        ReadTag tag = new ReadTag();
+        if (e >= 0) {
+            // The table's keys are built once per tag, not per read.
+            tag.epc = table.key(e);
+            tag.tidKey = tidLen > 0 ? table.tidKey(e) : null;
+        } else {
+            tag.epc = EpcKey.of(b, off, len);
+            tag.tidKey = tidLen > 0 ? EpcKey.of(b, off + len, tidLen) : null;
+        }
+        tag.rssi = rssi;
+        tag.antId = ant;
+        tagCallback.tagCallback(tag);
     }
 
+
     public int GetReaderInformation(byte[] bArr, byte[] bArr2, byte[] bArr3, byte[] bArr4, byte[] bArr5, byte[] bArr6, byte[] bArr7, byte[] bArr8, byte[] bArr9, byte[] bArr10, byte[] bArr11, byte[] bArr12, byte[] bArr13) {
+        return GetReaderInformation(bArr, bArr2, bArr3, bArr4, bArr5, bArr6, bArr7, bArr8, bArr9, bArr10, bArr11, bArr12, bArr13, 1000);
+    }
+
+    /** As above, giving up after {@code timeoutMs}; short timeouts let a probe move on from a silent port. */
+    public int GetReaderInformation(byte[] bArr, byte[] bArr2, byte[] bArr3, byte[] bArr4, byte[] bArr5, byte[] bArr6, byte[] bArr7, byte[] bArr8, byte[] bArr9, byte[] bArr10, byte[] bArr11, byte[] bArr12, byte[] bArr13, int timeoutMs) {
         byte[] bArr14 = {4, bArr[0], 33, 0, 0};
         getCRC(bArr14, 4 - 1);
         SendCMD(bArr14);
-        if (GetCMDData(this.recvBuff, this.recvLength, 33, 1000) != 0) {
+        if (GetCMDData(this.recvBuff, this.recvLength, 33, timeoutMs) != 0) {
             return 48;
         }
         byte[] bArr15 = this.recvBuff;
@@ -227,7 +442,7 @@ public class BaseReader {
         bArr5[0] = (byte) (((b2 & 192) >> 6) | ((b & 192) >> 4));
         bArr8[0] = bArr15[10];
         bArr9[0] = bArr15[11];
-        this.maxScanTime = (bArr9[0] & UByte.MAX_VALUE) * 100;
+        this.maxScanTime = (bArr9[0] & 0xFF) * 100;
         bArr10[0] = bArr15[12];
         bArr11[0] = bArr15[13];
         bArr12[0] = bArr15[14];
@@ -240,7 +455,7 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 37, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -255,7 +470,7 @@ public class BaseReader {
         if (bArr[0] == 0) {
             bArr[0] = this.recvBuff[4];
         }
-        return this.recvBuff[3] & UByte.MAX_VALUE;
+        return this.recvBuff[3] & 0xFF;
     }
 
     public int Inventory_G2(byte b, byte b2, byte b3, byte b4, byte b5, byte b6, byte b7, int i, byte[] bArr, int[] iArr, int[] iArr2) {
@@ -265,17 +480,65 @@ public class BaseReader {
         } else {
             bArr2 = new byte[]{11, b, 1, b2, b3, b4, b5, b6, b7, (byte) i, 0, 0};
         }
+        this.inventoryTidBytes = (b5 & 0xFF) * 2;
         getCRC(bArr2, bArr2[0] - 1);
         SendCMD(bArr2);
         return GetInventoryData(b, 1, bArr, iArr, iArr2, i);
     }
 
+    /**
+     * Inventory_G2 preceded by a Gen2 Select on {@code filter}, so only tags whose
+     * EPC matches it take part in the round:
+     * {@code Len Adr 01 Q Session MaskMem MaskAdr(2) MaskLen MaskData TidAdr TidLen Target Ant ScanTime CRC16}.
+     * Status 0xFE or 0xFF means the module does not take the masked form; see
+     * {@link #SetTagFilter} for filtering in software instead.
+     */
+    public int Inventory_G2ByMask(byte addr, byte q, byte session, TagFilter filter, byte tidAdr, byte tidLen,
+            byte target, byte ant, int scanTime, byte[] out, int[] tagCount, int[] dataLength) {
+        int maskBytes = (filter.bits() + 7) / 8;
+        int n = maskBytes + 16;
+        byte[] cmd = new byte[n];
+        cmd[0] = (byte) (n - 1);
+        cmd[1] = addr;
+        cmd[2] = 0x01;
+        cmd[3] = q;
+        cmd[4] = session;
+        cmd[5] = (byte) TagFilter.MEM_EPC;
+        cmd[6] = (byte) (filter.bankBitAddress() >>> 8);
+        cmd[7] = (byte) filter.bankBitAddress();
+        cmd[8] = (byte) filter.bits();
+        int p = 9 + filter.copyMask(cmd, 9);
+        cmd[p++] = tidAdr;
+        cmd[p++] = tidLen;
+        cmd[p++] = target;
+        cmd[p++] = ant;
+        cmd[p] = (byte) scanTime;
+        this.inventoryTidBytes = (tidLen & 0xFF) * 2;
+        getCRC(cmd, n - 2);
+        SendCMD(cmd);
+        return GetInventoryData(addr, 1, out, tagCount, dataLength, scanTime);
+    }
+
+    /**
+     * Drops reads whose EPC does not match {@code filter} before they are counted
+     * or reported, e.g. in active mode, which has no Select, or with a module that
+     * refuses {@link #Inventory_G2ByMask}. Null lets every read through.
+     */
+    public void SetTagFilter(TagFilter filter) {
+        this.filter = filter;
+    }
+
+    /** Reads dropped by the {@link #SetTagFilter} filter since connecting. */
+    public long GetFilteredReadCount() {
+        return this.filteredReads;
+    }
+
     public int SetRfPower(byte b, byte b2) {
         byte[] bArr = {5, b, 47, b2, 0, 0};
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 47, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -285,7 +548,7 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 48, 1000) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -295,7 +558,7 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 107, 1000) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -305,7 +568,7 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 36, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -315,7 +578,7 @@ public class BaseReader {
         getCRC(bArr, 6 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 34, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -325,7 +588,7 @@ public class BaseReader {
         getCRC(bArr, 7 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 63, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -342,7 +605,7 @@ public class BaseReader {
         if (b2 == 0) {
             bArr[0] = bArr3[4];
         }
-        return b2 & UByte.MAX_VALUE;
+        return b2 & 0xFF;
     }
 
     public int SetBeepNotification(byte b, byte b2) {
@@ -350,7 +613,7 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 64, 400) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -381,7 +644,7 @@ public class BaseReader {
             if (b11 == 0) {
                 bArr6[0] = 0;
                 System.arraycopy(bArr8, 4, bArr5, 0, b5 * 2);
-            } else if ((b11 & UByte.MAX_VALUE) == 252) {
+            } else if ((b11 & 0xFF) == 252) {
                 bArr6[0] = bArr8[4];
             }
             b9 = this.recvBuff[3];
@@ -389,7 +652,7 @@ public class BaseReader {
             if (b7 == 0) {
                 return 255;
             }
-            int i3 = b7 & UByte.MAX_VALUE;
+            int i3 = b7 & 0xFF;
             if (i3 % 8 == 0) {
                 i = i3 / 8;
             } else {
@@ -400,7 +663,7 @@ public class BaseReader {
             bArr9[1] = b;
             bArr9[2] = 2;
             bArr9[3] = b10;
-            if ((b10 & UByte.MAX_VALUE) == 255) {
+            if ((b10 & 0xFF) == 255) {
                 b10 = 0;
             }
             int i4 = b10 * 2;
@@ -424,12 +687,12 @@ public class BaseReader {
             if (b12 == 0) {
                 bArr6[0] = 0;
                 System.arraycopy(bArr10, 4, bArr5, 0, b5 * 2);
-            } else if ((b12 & UByte.MAX_VALUE) == 252) {
+            } else if ((b12 & 0xFF) == 252) {
                 bArr6[0] = bArr10[4];
             }
             b9 = this.recvBuff[3];
         }
-        return b9 & UByte.MAX_VALUE;
+        return b9 & 0xFF;
     }
 
     public int ExtReadData_G2(byte b, byte b2, byte[] bArr, byte b3, byte[] bArr2, byte b4, byte[] bArr3, byte[] bArr4, byte[] bArr5) {
@@ -440,7 +703,7 @@ public class BaseReader {
         bArr6[1] = b;
         bArr6[2] = 21;
         bArr6[3] = b5;
-        if ((b5 & UByte.MAX_VALUE) == 255) {
+        if ((b5 & 0xFF) == 255) {
             b5 = 0;
         }
         int i2 = b5 * 2;
@@ -460,10 +723,133 @@ public class BaseReader {
         if (b6 == 0) {
             bArr5[0] = 0;
             System.arraycopy(bArr7, 4, bArr4, 0, b4 * 2);
-        } else if ((b6 & UByte.MAX_VALUE) == 252) {
+        } else if ((b6 & 0xFF) == 252) {
             bArr5[0] = bArr7[4];
         }
-        return this.recvBuff[3] & UByte.MAX_VALUE;
+        return this.recvBuff[3] & 0xFF;
+    }
+
+    /**
+     * ReadData_G2 (0x02) addressed by EPC, for bulk jobs that read many tags in a
+     * row: the command is assembled in {@code cmd}, which the caller keeps between
+     * tags (at least {@code epcLen + 13} bytes), nothing is hex-encoded, and the
+     * reply is awaited for {@code timeoutMs} instead of the fixed 3 s.
+     * {@code epcLen} must be even. On success {@code words} words are copied to
+     * {@code out} at {@code outOff}; on 0xFC the tag's error code is left in
+     * {@code errorCode[0]}. Returns the module status, or 48 if no reply came.
+     */
+    public int ReadTagMemory(byte addr, byte[] epc, int epcOff, int epcLen, int mem, int wordPtr, int words,
+            byte[] password, byte[] cmd, byte[] out, int outOff, byte[] errorCode, int timeoutMs) {
+        int n = epcLen + 13;
+        cmd[0] = (byte) (n - 1);
+        cmd[1] = addr;
+        cmd[2] = 0x02;
+        cmd[3] = (byte) (epcLen / 2);
+        System.arraycopy(epc, epcOff, cmd, 4, epcLen);
+        cmd[epcLen + 4] = (byte) mem;
+        cmd[epcLen + 5] = (byte) wordPtr;
+        cmd[epcLen + 6] = (byte) words;
+        System.arraycopy(password, 0, cmd, epcLen + 7, 4);
+        return memoryCommand(cmd, n, 0x02, out, outOff, words * 2, errorCode, timeoutMs);
+    }
+
+    /**
+     * As {@link #ReadTagMemory}, but selects the tag whose bank {@code maskMem}
+     * matches {@code mask} from bit {@code maskBitAdr} for {@code maskBits} bits,
+     * e.g. its TID. {@code cmd} needs {@code maskBytes + 17} bytes.
+     */
+    public int ReadTagMemoryByMask(byte addr, int maskMem, int maskBitAdr, int maskBits, byte[] mask, int maskOff,
+            int mem, int wordPtr, int words, byte[] password, byte[] cmd, byte[] out, int outOff, byte[] errorCode,
+            int timeoutMs) {
+        int maskBytes = (maskBits + 7) / 8;
+        int n = maskBytes + 17;
+        cmd[0] = (byte) (n - 1);
+        cmd[1] = addr;
+        cmd[2] = 0x02;
+        cmd[3] = (byte) 0xFF;
+        cmd[4] = (byte) mem;
+        cmd[5] = (byte) wordPtr;
+        cmd[6] = (byte) words;
+        System.arraycopy(password, 0, cmd, 7, 4);
+        putMask(cmd, 11, maskMem, maskBitAdr, maskBits, mask, maskOff);
+        return memoryCommand(cmd, n, 0x02, out, outOff, words * 2, errorCode, timeoutMs);
+    }
+
+    /**
+     * WriteData_G2 (0x03) of {@code words} words from {@code data} at {@code dataOff}
+     * to the tag selected by mask, as {@link #ReadTagMemoryByMask} selects it.
+     * {@code cmd} needs {@code words * 2 + maskBytes + 17} bytes.
+     */
+    public int WriteTagMemoryByMask(byte addr, int maskMem, int maskBitAdr, int maskBits, byte[] mask, int maskOff,
+            int mem, int wordPtr, byte[] data, int dataOff, int words, byte[] password, byte[] cmd, byte[] errorCode,
+            int timeoutMs) {
+        int maskBytes = (maskBits + 7) / 8;
+        int n = words * 2 + maskBytes + 17;
+        cmd[0] = (byte) (n - 1);
+        cmd[1] = addr;
+        cmd[2] = 0x03;
+        cmd[3] = (byte) words;
+        cmd[4] = (byte) 0xFF;
+        cmd[5] = (byte) mem;
+        cmd[6] = (byte) wordPtr;
+        System.arraycopy(data, dataOff, cmd, 7, words * 2);
+        int p = 7 + words * 2;
+        System.arraycopy(password, 0, cmd, p, 4);
+        putMask(cmd, p + 4, maskMem, maskBitAdr, maskBits, mask, maskOff);
+        return memoryCommand(cmd, n, 0x03, null, 0, 0, errorCode, timeoutMs);
+    }
+
+    /**
+     * Writes a new EPC into the tag selected by mask. {@code pcEpc} holds a PC word
+     * followed by the EPC; its PC bytes are filled in here. The tag's PC is read first
+     * and only its length field (bits 15..11) is ours: when that already matches, only
+     * the EPC words are written, from word 2; otherwise the PC is written with the new
+     * length and the UMI, XI and NSI/AFI bits the tag had. {@code cmd} needs
+     * {@code pcEpc.length + maskBytes + 17} bytes.
+     */
+    public int WriteEpcByMask(byte addr, int maskMem, int maskBitAdr, int maskBits, byte[] mask, int maskOff,
+            byte[] pcEpc, byte[] password, byte[] cmd, byte[] errorCode, int timeoutMs) {
+        byte[] pc = this.pcScratch;
+        int status = ReadTagMemoryByMask(addr, maskMem, maskBitAdr, maskBits, mask, maskOff, 1, 1, 1, password, cmd,
+                pc, 0, errorCode, timeoutMs);
+        if (status != 0) {
+            return status;
+        }
+        int words = pcEpc.length / 2;
+        int lengthBits = ((words - 1) << 3) & 0xF8;
+        pcEpc[0] = (byte) (lengthBits | (pc[0] & 0x07));
+        pcEpc[1] = pc[1];
+        if ((pc[0] & 0xF8) == lengthBits) {
+            return WriteTagMemoryByMask(addr, maskMem, maskBitAdr, maskBits, mask, maskOff, 1, 2, pcEpc, 2,
+                    words - 1, password, cmd, errorCode, timeoutMs);
+        }
+        return WriteTagMemoryByMask(addr, maskMem, maskBitAdr, maskBits, mask, maskOff, 1, 1, pcEpc, 0, words,
+                password, cmd, errorCode, timeoutMs);
+    }
+
+    /** {@code MaskMem MaskAdr(2, bits) MaskLen(bits) MaskData} at {@code p}. */
+    private static void putMask(byte[] cmd, int p, int maskMem, int maskBitAdr, int maskBits, byte[] mask, int maskOff) {
+        cmd[p] = (byte) maskMem;
+        cmd[p + 1] = (byte) (maskBitAdr >>> 8);
+        cmd[p + 2] = (byte) maskBitAdr;
+        cmd[p + 3] = (byte) maskBits;
+        System.arraycopy(mask, maskOff, cmd, p + 4, (maskBits + 7) / 8);
+    }
+
+    /** Sends the {@code n}-byte frame in {@code cmd} and decodes the status reply of a tag-memory command. */
+    private int memoryCommand(byte[] cmd, int n, int reCmd, byte[] out, int outOff, int outLen, byte[] errorCode,
+            int timeoutMs) {
+        ProtocolCodec.appendCrc(cmd, 0, n - 2);
+        if (this.msg.Write(cmd, n) < 0 || GetCMDData(this.recvBuff, this.recvLength, reCmd, timeoutMs) != 0) {
+            return 48;
+        }
+        int status = this.recvBuff[3] & 0xFF;
+        if (status == 0 && outLen > 0) {
+            System.arraycopy(this.recvBuff, 4, out, outOff, outLen);
+        } else if (status == 0xFC) {
+            errorCode[0] = this.recvBuff[4];
+        }
+        return status;
     }
 
     public int WriteData_G2(byte b, byte b2, byte b3, byte[] bArr, byte b4, byte b5, byte[] bArr2, byte[] bArr3, byte b6, byte[] bArr4, byte b7, byte[] bArr5, byte b8, byte[] bArr6) {
@@ -493,15 +879,15 @@ public class BaseReader {
             byte b10 = bArr8[3];
             if (b10 == 0) {
                 bArr6[0] = 0;
-            } else if ((b10 & UByte.MAX_VALUE) == 252) {
+            } else if ((b10 & 0xFF) == 252) {
                 bArr6[0] = bArr8[4];
             }
-            return b10 & UByte.MAX_VALUE;
+            return b10 & 0xFF;
         }
         if (b7 == 0) {
             return 255;
         }
-        int i5 = b7 & UByte.MAX_VALUE;
+        int i5 = b7 & 0xFF;
         if (i5 % 8 == 0) {
             i = i5 / 8;
         } else {
@@ -514,7 +900,7 @@ public class BaseReader {
         bArr9[2] = 3;
         bArr9[3] = b2;
         bArr9[4] = b9;
-        if ((b9 & UByte.MAX_VALUE) == 255) {
+        if ((b9 & 0xFF) == 255) {
             b9 = 0;
         }
         int i7 = b9 * 2;
@@ -538,10 +924,10 @@ public class BaseReader {
         byte b11 = bArr10[3];
         if (b11 == 0) {
             bArr6[0] = 0;
-        } else if ((b11 & UByte.MAX_VALUE) == 252) {
+        } else if ((b11 & 0xFF) == 252) {
             bArr6[0] = bArr10[4];
         }
-        return b11 & UByte.MAX_VALUE;
+        return b11 & 0xFF;
     }
 
     public int ExtWriteData_G2(byte b, byte b2, byte b3, byte[] bArr, byte b4, byte[] bArr2, byte[] bArr3, byte[] bArr4, byte[] bArr5) {
@@ -553,7 +939,7 @@ public class BaseReader {
         bArr6[2] = 22;
         bArr6[3] = b2;
         bArr6[4] = b5;
-        if ((b5 & UByte.MAX_VALUE) == 255) {
+        if ((b5 & 0xFF) == 255) {
             b5 = 0;
         }
         int i2 = b5 * 2;
@@ -573,10 +959,10 @@ public class BaseReader {
         byte b6 = bArr7[3];
         if (b6 == 0) {
             bArr5[0] = 0;
-        } else if ((b6 & UByte.MAX_VALUE) == 252) {
+        } else if ((b6 & 0xFF) == 252) {
             bArr5[0] = bArr7[4];
         }
-        return b6 & UByte.MAX_VALUE;
+        return b6 & 0xFF;
     }
 
     public int WriteEPC_G2(byte b, byte b2, byte[] bArr, byte[] bArr2, byte[] bArr3) {
@@ -597,10 +983,10 @@ public class BaseReader {
         byte b3 = bArr5[3];
         if (b3 == 0) {
             bArr3[0] = 0;
-        } else if ((b3 & UByte.MAX_VALUE) == 252) {
+        } else if ((b3 & 0xFF) == 252) {
             bArr3[0] = bArr5[4];
         }
-        return b3 & UByte.MAX_VALUE;
+        return b3 & 0xFF;
     }
 
     public int Lock_G2(byte b, byte b2, byte[] bArr, byte b3, byte b4, byte[] bArr2, byte[] bArr3) {
@@ -623,10 +1009,10 @@ public class BaseReader {
         byte b5 = bArr5[3];
         if (b5 == 0) {
             bArr3[0] = 0;
-        } else if ((b5 & UByte.MAX_VALUE) == 252) {
+        } else if ((b5 & 0xFF) == 252) {
             bArr3[0] = bArr5[4];
         }
-        return b5 & UByte.MAX_VALUE;
+        return b5 & 0xFF;
     }
 
     public int Kill_G2(byte b, byte b2, byte[] bArr, byte[] bArr2, byte[] bArr3) {
@@ -647,10 +1033,10 @@ public class BaseReader {
         byte b3 = bArr5[3];
         if (b3 == 0) {
             bArr3[0] = 0;
-        } else if ((b3 & UByte.MAX_VALUE) == 252) {
+        } else if ((b3 & 0xFF) == 252) {
             bArr3[0] = bArr5[4];
         }
-        return b3 & UByte.MAX_VALUE;
+        return b3 & 0xFF;
     }
 
     public int MeasureReturnLoss(byte b, byte[] bArr, byte b2, byte[] bArr2) {
@@ -670,7 +1056,7 @@ public class BaseReader {
         if (b3 == 0) {
             bArr2[0] = bArr4[4];
         }
-        return b3 & UByte.MAX_VALUE;
+        return b3 & 0xFF;
     }
 
     public int MeasureTemperature(byte b, byte[] bArr) {
@@ -686,7 +1072,7 @@ public class BaseReader {
             bArr[0] = bArr3[4];
             bArr[1] = bArr3[5];
         }
-        return b2 & UByte.MAX_VALUE;
+        return b2 & 0xFF;
     }
 
     public int SetCheckAnt(byte b, byte b2) {
@@ -694,7 +1080,7 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 102, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -704,7 +1090,7 @@ public class BaseReader {
         getCRC(bArr2, 9 - 1);
         SendCMD(bArr2);
         if (GetCMDData(this.recvBuff, this.recvLength, 117, 500) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -717,7 +1103,7 @@ public class BaseReader {
             return 48;
         }
         System.arraycopy(this.recvBuff, 4, bArr, 0, 6);
-        return this.recvBuff[3] & UByte.MAX_VALUE;
+        return this.recvBuff[3] & 0xFF;
     }
 
     public int SetWorkMode(byte b, byte b2) {
@@ -725,17 +1111,25 @@ public class BaseReader {
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
         if (GetCMDData(this.recvBuff, this.recvLength, 118, 1000) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
 
     public int SetBaudRate(byte b, byte b2) {
+        return SetBaudRate(b, b2, 1000);
+    }
+
+    /**
+     * As above, giving up after {@code timeoutMs}. The module answers at the old rate
+     * and then switches; the port stays at the old rate until {@link #Reconnect}.
+     */
+    public int SetBaudRate(byte b, byte b2, int timeoutMs) {
         byte[] bArr = {5, b, 40, b2, 0, 0};
         getCRC(bArr, 5 - 1);
         SendCMD(bArr);
-        if (GetCMDData(this.recvBuff, this.recvLength, 40, 1000) == 0) {
-            return this.recvBuff[3] & UByte.MAX_VALUE;
+        if (GetCMDData(this.recvBuff, this.recvLength, 40, timeoutMs) == 0) {
+            return this.recvBuff[3] & 0xFF;
         }
         return 48;
     }
@@ -0,0 +1,93 @@
+package com.rfid.trans;
+
+import com.rfid.InventoryTagMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distinct tags of an inventory, readable from any thread while it runs. The
+ * thread that owns the {@link EpcTable} publishes into it once per round with
+ * {@link #update(EpcTable)}, which only touches the entries read since the last
+ * update; each of those is replaced by a fresh, never-modified
+ * {@link InventoryTagMap}, so readers see either the old or the new state of a
+ * tag and never a half-written one. Entries are keyed by {@link EpcKey}; the
+ * EPC string of an entry, for display, is built once.
+ */
+public final class ConcurrentTagTable implements Iterable<InventoryTagMap> {
+
+    private final ConcurrentHashMap<EpcKey, InventoryTagMap> tags = new ConcurrentHashMap<>();
+
+    // Owned by the updating thread: per EpcTable entry, the reads published.
+    private int[] publishedReads = new int[256];
+    private int published = 0;
+
+    /** Publishes the entries of {@code table} read since the previous call. */
+    public void update(EpcTable table) {
+        int n = table.size();
+        if (n < this.published) {
+            // The table was cleared under us; its entry numbers start over.
+            resetIndex();
+        }
+        if (n > this.publishedReads.length) {
+            this.publishedReads = Arrays.copyOf(this.publishedReads, Math.max(n, this.publishedReads.length * 2));
+        }
+        for (int e = 0; e < n; e++) {
+            int reads = table.readCount(e);
+            if (e < this.published && reads == this.publishedReads[e]) {
+                continue;
+            }
+            EpcKey key = table.key(e);
+            InventoryTagMap tag = new InventoryTagMap();
+            tag.strEPC = key.toString();
+            tag.nReadCount = reads;
+            tag.strRSSI = Integer.toString(table.lastRssi(e));
+            tag.antenna = table.antenna(e);
+            this.tags.put(key, tag);
+            this.publishedReads[e] = reads;
+        }
+        this.published = n;
+    }
+
+    public int size() {
+        return this.tags.size();
+    }
+
+    /** Latest published state of the tag {@code epc}, or null. */
+    public InventoryTagMap get(EpcKey epc) {
+        return this.tags.get(epc);
+    }
+
+    /** Like {@link #get(EpcKey)}, by hex EPC. */
+    public InventoryTagMap get(String epc) {
+        EpcKey key = EpcKey.fromHex(epc);
+        return key == null ? null : this.tags.get(key);
+    }
+
+    /** The tags published so far, in no particular order. */
+    public List<InventoryTagMap> snapshot() {
+        return new ArrayList<>(this.tags.values());
+    }
+
+    /**
+     * Weakly consistent: never fails on concurrent updates, and reflects some of
+     * those made while iterating.
+     */
+    @Override
+    public Iterator<InventoryTagMap> iterator() {
+        return Collections.unmodifiableCollection(this.tags.values()).iterator();
+    }
+
+    /** Forgets every tag; call from the updating thread, with the EpcTable cleared too. */
+    public void clear() {
+        resetIndex();
+        this.tags.clear();
+    }
+
+    private void resetIndex() {
+        this.published = 0;
+    }
+}
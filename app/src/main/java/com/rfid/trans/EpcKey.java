@@ -0,0 +1,111 @@
+package com.rfid.trans;
+
+import java.util.Arrays;
+
+/**
+ * An EPC (or TID) as its bytes, for keying maps and passing tags around without
+ * hex strings. Immutable; equality compares the bytes and the hash is computed
+ * once. {@link #toString()} gives the upper-case hex, built on first use, for the
+ * edges that need text: display, the database and exports.
+ */
+public final class EpcKey implements Comparable<EpcKey> {
+
+    private final byte[] bytes;
+    private final int hash;
+    private String hex;
+
+    private EpcKey(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    /** Key of a copy of {@code b[off, off + len)}. */
+    public static EpcKey of(byte[] b, int off, int len) {
+        return new EpcKey(Arrays.copyOfRange(b, off, off + len));
+    }
+
+    public static EpcKey of(byte[] b) {
+        return of(b, 0, b.length);
+    }
+
+    /** Key of the hex EPC {@code s}, or null if it is not whole bytes of hex digits. */
+    public static EpcKey fromHex(CharSequence s) {
+        byte[] b = HexCodec.fromHex(s);
+        return b == null ? null : new EpcKey(b);
+    }
+
+    public int length() {
+        return this.bytes.length;
+    }
+
+    public byte byteAt(int i) {
+        return this.bytes[i];
+    }
+
+    /** Writes the bytes to {@code dst} at {@code off} and returns their number. */
+    public int copyTo(byte[] dst, int off) {
+        System.arraycopy(this.bytes, 0, dst, off, this.bytes.length);
+        return this.bytes.length;
+    }
+
+    public byte[] toByteArray() {
+        return this.bytes.clone();
+    }
+
+    /** Whether {@code b[off, off + len)} holds this key's bytes. */
+    public boolean matches(byte[] b, int off, int len) {
+        if (len != this.bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (this.bytes[i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EpcKey)) {
+            return false;
+        }
+        EpcKey other = (EpcKey) o;
+        return this.hash == other.hash && Arrays.equals(this.bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /** Orders by length, then bytes unsigned; the same order as their hex strings of equal length. */
+    @Override
+    public int compareTo(EpcKey o) {
+        if (this.bytes.length != o.bytes.length) {
+            return this.bytes.length - o.bytes.length;
+        }
+        for (int i = 0; i < this.bytes.length; i++) {
+            int c = (this.bytes[i] & 0xFF) - (o.bytes[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Upper-case hex of the bytes. */
+    @Override
+    public String toString() {
+        String s = this.hex;
+        if (s == null) {
+            // Racing threads each build an equal string; either may be kept.
+            s = HexCodec.toHex(this.bytes);
+            this.hex = s;
+        }
+        return s;
+    }
+}
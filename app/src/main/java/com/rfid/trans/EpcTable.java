@@ -0,0 +1,301 @@
+package com.rfid.trans;
+
+import java.util.Arrays;
+
+/**
+ * Per-session table of distinct EPCs, keyed on the raw EPC bytes as they sit in
+ * the receive buffer. EPCs up to 16 bytes (96-bit EPCs included) are packed into
+ * two longs; longer ones keep a copy of their bytes. Entries are dense and their
+ * statistics (read count, peak and last RSSI, first and last sighting, antenna)
+ * live in parallel primitive arrays, found through an open-addressing index with
+ * linear probing. The TID, when the inventory reads it, is kept per entry as well.
+ *
+ * <p>Recording a tag that is already in the table allocates nothing, so repeat
+ * reads cost a hash probe instead of a String and a ReadTag. The {@link EpcKey}
+ * of an entry is built once, when first asked for.
+ *
+ * <p>Not thread-safe; the thread that decodes inventory frames owns it.
+ */
+public final class EpcTable {
+    private static final int PACKED_MAX = 16;
+
+    private int[] index;
+    private int size = 0;
+
+    private int[] hashes;
+    private int[] epcLen;
+    private long[] k0;
+    private long[] k1;
+    private byte[][] wide;
+    private byte[][] tids;
+    private EpcKey[] keys;
+    private EpcKey[] tidKeys;
+    private int[] reads;
+    private int[] reported;
+    private int[] peakRssi;
+    private int[] lastRssi;
+    private int[] antenna;
+    private long[] firstSeen;
+    private long[] lastSeen;
+
+    public EpcTable() {
+        this(256);
+    }
+
+    public EpcTable(int expectedTags) {
+        int entries = Math.max(16, expectedTags);
+        this.index = new int[tableSizeFor(entries)];
+        allocate(entries);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        Arrays.fill(this.index, 0);
+        Arrays.fill(this.wide, 0, this.size, null);
+        Arrays.fill(this.tids, 0, this.size, null);
+        Arrays.fill(this.keys, 0, this.size, null);
+        Arrays.fill(this.tidKeys, 0, this.size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Counts one sighting of {@code b[off, off + len)} and returns its entry. The
+     * entry is new when {@link #readCount(int)} is 1 afterwards.
+     */
+    public int record(byte[] b, int off, int len, int rssi, int ant, long nowMillis) {
+        if ((this.size + 1) * 2 > this.index.length) {
+            rehash(this.index.length * 2);
+        }
+        long a = 0;
+        long c = 0;
+        int h;
+        if (len <= PACKED_MAX) {
+            int split = Math.min(len, 8);
+            for (int i = 0; i < split; i++) {
+                a = (a << 8) | (b[off + i] & 0xFF);
+            }
+            for (int i = split; i < len; i++) {
+                c = (c << 8) | (b[off + i] & 0xFF);
+            }
+            h = mix(a * 0x9E3779B97F4A7C15L + c + len);
+        } else {
+            h = hashBytes(b, off, len);
+        }
+        int mask = this.index.length - 1;
+        int slot = h & mask;
+        int e;
+        while ((e = this.index[slot] - 1) >= 0) {
+            if (this.hashes[e] == h && this.epcLen[e] == len
+                    && (len <= PACKED_MAX ? this.k0[e] == a && this.k1[e] == c : wideEquals(e, b, off, len))) {
+                this.reads[e]++;
+                this.lastRssi[e] = rssi;
+                if (rssi > this.peakRssi[e]) {
+                    this.peakRssi[e] = rssi;
+                }
+                this.antenna[e] = ant;
+                this.lastSeen[e] = nowMillis;
+                return e;
+            }
+            slot = (slot + 1) & mask;
+        }
+        e = this.size;
+        if (e == this.reads.length) {
+            allocate(e * 2);
+        }
+        this.index[slot] = e + 1;
+        this.size++;
+        this.hashes[e] = h;
+        this.epcLen[e] = len;
+        this.k0[e] = a;
+        this.k1[e] = c;
+        this.wide[e] = len <= PACKED_MAX ? null : Arrays.copyOfRange(b, off, off + len);
+        this.tids[e] = null;
+        this.keys[e] = null;
+        this.tidKeys[e] = null;
+        this.reads[e] = 1;
+        this.reported[e] = 0;
+        this.peakRssi[e] = rssi;
+        this.lastRssi[e] = rssi;
+        this.antenna[e] = ant;
+        this.firstSeen[e] = nowMillis;
+        this.lastSeen[e] = nowMillis;
+        return e;
+    }
+
+    public int readCount(int e) {
+        return this.reads[e];
+    }
+
+    /** Reads of entry {@code e} not yet passed downstream. */
+    public int unreportedReads(int e) {
+        return this.reads[e] - this.reported[e];
+    }
+
+    public void markReported(int e) {
+        this.reported[e] = this.reads[e];
+    }
+
+    public int peakRssi(int e) {
+        return this.peakRssi[e];
+    }
+
+    public int lastRssi(int e) {
+        return this.lastRssi[e];
+    }
+
+    public int antenna(int e) {
+        return this.antenna[e];
+    }
+
+    public long firstSeen(int e) {
+        return this.firstSeen[e];
+    }
+
+    public long lastSeen(int e) {
+        return this.lastSeen[e];
+    }
+
+    public int epcLength(int e) {
+        return this.epcLen[e];
+    }
+
+    /** Writes the EPC of entry {@code e} to {@code dst} at {@code off} and returns its length. */
+    public int copyEpc(int e, byte[] dst, int off) {
+        int len = this.epcLen[e];
+        if (len > PACKED_MAX) {
+            System.arraycopy(this.wide[e], 0, dst, off, len);
+            return len;
+        }
+        int split = Math.min(len, 8);
+        long a = this.k0[e];
+        for (int i = split - 1; i >= 0; i--) {
+            dst[off + i] = (byte) a;
+            a >>>= 8;
+        }
+        long c = this.k1[e];
+        for (int i = len - 1; i >= split; i--) {
+            dst[off + i] = (byte) c;
+            c >>>= 8;
+        }
+        return len;
+    }
+
+    /** EPC of entry {@code e} as a key; the same instance on every call. */
+    public EpcKey key(int e) {
+        EpcKey key = this.keys[e];
+        if (key == null) {
+            byte[] epc = new byte[this.epcLen[e]];
+            copyEpc(e, epc, 0);
+            key = EpcKey.of(epc);
+            this.keys[e] = key;
+        }
+        return key;
+    }
+
+    /** Keeps the TID read with entry {@code e}; copied only the first time, or if it changes. */
+    public void recordTid(int e, byte[] b, int off, int len) {
+        byte[] tid = this.tids[e];
+        if (tid == null || tid.length != len || !regionEquals(tid, b, off, len)) {
+            this.tids[e] = Arrays.copyOfRange(b, off, off + len);
+            this.tidKeys[e] = null;
+        }
+    }
+
+    /** Writes the TID of entry {@code e} to {@code dst} at {@code off}; returns its length, 0 if none was read. */
+    public int copyTid(int e, byte[] dst, int off) {
+        byte[] tid = this.tids[e];
+        if (tid == null) {
+            return 0;
+        }
+        System.arraycopy(tid, 0, dst, off, tid.length);
+        return tid.length;
+    }
+
+    /** TID of entry {@code e} as a key, or null if none was read; cached like {@link #key(int)}. */
+    public EpcKey tidKey(int e) {
+        byte[] tid = this.tids[e];
+        if (tid == null) {
+            return null;
+        }
+        EpcKey key = this.tidKeys[e];
+        if (key == null) {
+            key = EpcKey.of(tid);
+            this.tidKeys[e] = key;
+        }
+        return key;
+    }
+
+    private boolean wideEquals(int e, byte[] b, int off, int len) {
+        return regionEquals(this.wide[e], b, off, len);
+    }
+
+    private static boolean regionEquals(byte[] key, byte[] b, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            if (key[i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hashBytes(byte[] b, int off, int len) {
+        long h = len;
+        for (int i = 0; i < len; i++) {
+            h = h * 31 + (b[off + i] & 0xFF);
+        }
+        return mix(h);
+    }
+
+    private static int mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int tableSizeFor(int entries) {
+        int n = 16;
+        while (n < entries * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private void rehash(int newSize) {
+        int[] table = new int[newSize];
+        int mask = newSize - 1;
+        for (int e = 0; e < this.size; e++) {
+            int slot = this.hashes[e] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = e + 1;
+        }
+        this.index = table;
+    }
+
+    private void allocate(int capacity) {
+        this.hashes = grow(this.hashes, capacity);
+        this.epcLen = grow(this.epcLen, capacity);
+        this.k0 = this.k0 == null ? new long[capacity] : Arrays.copyOf(this.k0, capacity);
+        this.k1 = this.k1 == null ? new long[capacity] : Arrays.copyOf(this.k1, capacity);
+        this.wide = this.wide == null ? new byte[capacity][] : Arrays.copyOf(this.wide, capacity);
+        this.tids = this.tids == null ? new byte[capacity][] : Arrays.copyOf(this.tids, capacity);
+        this.keys = this.keys == null ? new EpcKey[capacity] : Arrays.copyOf(this.keys, capacity);
+        this.tidKeys = this.tidKeys == null ? new EpcKey[capacity] : Arrays.copyOf(this.tidKeys, capacity);
+        this.reads = grow(this.reads, capacity);
+        this.reported = grow(this.reported, capacity);
+        this.peakRssi = grow(this.peakRssi, capacity);
+        this.lastRssi = grow(this.lastRssi, capacity);
+        this.antenna = grow(this.antenna, capacity);
+        this.firstSeen = this.firstSeen == null ? new long[capacity] : Arrays.copyOf(this.firstSeen, capacity);
+        this.lastSeen = this.lastSeen == null ? new long[capacity] : Arrays.copyOf(this.lastSeen, capacity);
+    }
+
+    private static int[] grow(int[] a, int capacity) {
+        return a == null ? new int[capacity] : Arrays.copyOf(a, capacity);
+    }
+}
@@ -0,0 +1,166 @@
+package com.rfid.trans;
+
+/**
+ * Reassembles length-prefixed reader frames ({@code Len Adr reCmd Status ... CRC16})
+ * out of arbitrarily split serial chunks.
+ *
+ * <p>Bytes are kept in a fixed ring. The first {@link #MAX_FRAME} bytes of the ring
+ * are mirrored past its end, so any frame starting inside the ring is contiguous in
+ * {@link #array()} and can be CRC-checked and decoded in place through the
+ * offset/length view returned by {@link #nextFrame(int)}. Nothing is allocated after
+ * construction.
+ *
+ * <p>Not thread-safe; one reader drains it at a time.
+ */
+public class FrameAssembler {
+    /** Longest possible frame: a one-byte length prefix plus up to 255 bytes. */
+    public static final int MAX_FRAME = 256;
+    private static final int MIN_LEN = 5;
+
+    private final byte[] buf;
+    private final int capacity;
+    private int head = 0;
+    private int count = 0;
+    private int frameLength = 0;
+    private int crcErrors = 0;
+
+    public FrameAssembler(int capacity) {
+        if (capacity < MAX_FRAME) {
+            throw new IllegalArgumentException("capacity < " + MAX_FRAME);
+        }
+        this.capacity = capacity;
+        this.buf = new byte[capacity + MAX_FRAME];
+    }
+
+    /** Backing array; frame offsets returned by {@link #nextFrame(int)} index into it. */
+    public byte[] array() {
+        return this.buf;
+    }
+
+    public int available() {
+        return this.count;
+    }
+
+    public void reset() {
+        this.head = 0;
+        this.count = 0;
+        this.frameLength = 0;
+    }
+
+    /**
+     * Appends received bytes. If they do not fit, everything buffered is dropped
+     * first so the stream can resynchronise on the next frame; returns false then.
+     */
+    public boolean append(byte[] src, int off, int len) {
+        boolean kept = true;
+        if (this.count + len > this.capacity) {
+            reset();
+            kept = false;
+            if (len > this.capacity) {
+                off += len - this.capacity;
+                len = this.capacity;
+            }
+        }
+        int tail = (this.head + this.count) % this.capacity;
+        int first = Math.min(len, this.capacity - tail);
+        write(tail, src, off, first);
+        if (first < len) {
+            write(0, src, off + first, len - first);
+        }
+        this.count += len;
+        return kept;
+    }
+
+    private void write(int at, byte[] src, int off, int len) {
+        System.arraycopy(src, off, this.buf, at, len);
+        if (at < MAX_FRAME) {
+            int mirrored = Math.min(len, MAX_FRAME - at);
+            System.arraycopy(src, off, this.buf, this.capacity + at, mirrored);
+        }
+    }
+
+    /**
+     * Locates the next complete, CRC-valid frame answering {@code cmd} (or the
+     * module's illegal-command reply). Bytes in front of it are discarded. Returns
+     * the frame offset into {@link #array()}, with its total length available from
+     * {@link #frameLength()}, or -1 if more data is needed. Call {@link #consumeFrame()}
+     * once the frame has been decoded.
+     */
+    public int nextFrame(int cmd) {
+        return nextFrame(cmd, cmd);
+    }
+
+    /**
+     * Like {@link #nextFrame(int)}, but accepts frames for either command; used while
+     * the module streams unsolicited frames and a command reply can land among them.
+     */
+    public int nextFrame(int cmd, int otherCmd) {
+        while (this.count >= MIN_LEN) {
+            int len = this.buf[this.head] & 0xFF;
+            if (len < MIN_LEN || !answers(this.head, cmd, otherCmd)) {
+                skip(1);
+                continue;
+            }
+            if (this.count < len + 1) {
+                // A corrupted length byte can claim more data than will ever arrive;
+                // jump to a later frame if one is already complete.
+                int next = findComplete(cmd, otherCmd);
+                if (next < 0) {
+                    return -1;
+                }
+                skip(next);
+                continue;
+            }
+            if (!ProtocolCodec.verify(this.buf, this.head, len + 1)) {
+                this.crcErrors++;
+                skip(1);
+                continue;
+            }
+            this.frameLength = len + 1;
+            return this.head;
+        }
+        return -1;
+    }
+
+    /** Total length (length prefix included) of the frame last returned by {@link #nextFrame(int)}. */
+    public int frameLength() {
+        return this.frameLength;
+    }
+
+    public void consumeFrame() {
+        skip(this.frameLength);
+        this.frameLength = 0;
+    }
+
+    /** Returns the number of frames rejected by CRC since the last call, and clears it. */
+    public int takeCrcErrors() {
+        int n = this.crcErrors;
+        this.crcErrors = 0;
+        return n;
+    }
+
+    private boolean answers(int at, int cmd, int otherCmd) {
+        int reCmd = this.buf[at + 2] & 0xFF;
+        return reCmd == cmd || reCmd == otherCmd || (reCmd == 0 && (this.buf[at + 3] & 0xFF) == 0xFE);
+    }
+
+    private int findComplete(int cmd, int otherCmd) {
+        for (int skipped = 1; this.count - skipped >= MIN_LEN; skipped++) {
+            int at = (this.head + skipped) % this.capacity;
+            int len = this.buf[at] & 0xFF;
+            if (len >= MIN_LEN && len + 1 <= this.count - skipped && answers(at, cmd, otherCmd)
+                    && ProtocolCodec.verify(this.buf, at, len + 1)) {
+                return skipped;
+            }
+        }
+        return -1;
+    }
+
+    private void skip(int n) {
+        this.head = (this.head + n) % this.capacity;
+        this.count -= n;
+        if (this.count == 0) {
+            this.head = 0;
+        }
+    }
+}
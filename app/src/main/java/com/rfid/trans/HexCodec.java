@@ -0,0 +1,81 @@
+package com.rfid.trans;
+
+import java.util.Arrays;
+
+/**
+ * Hex text for EPCs, TIDs and frames, upper case. Works on array slices and can
+ * write into caller-owned buffers, so a decoder loop can convert without
+ * allocating; digits are looked up in tables rather than formatted or searched
+ * per nibble. Lower-case input is accepted.
+ */
+public final class HexCodec {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    /** Value of an ASCII hex digit, -1 for any other character below 128. */
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /** Writes {@code src[off, off + len)} as {@code 2 * len} digits into {@code dst} at {@code dstOff}. */
+    public static int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+        for (int i = 0; i < len; i++) {
+            int v = src[off + i] & 0xFF;
+            dst[dstOff++] = DIGITS[v >>> 4];
+            dst[dstOff++] = DIGITS[v & 0x0F];
+        }
+        return len * 2;
+    }
+
+    public static String toHex(byte[] src, int off, int len) {
+        char[] out = new char[len * 2];
+        encode(src, off, len, out, 0);
+        return new String(out);
+    }
+
+    public static String toHex(byte[] src) {
+        return toHex(src, 0, src.length);
+    }
+
+    /**
+     * Parses the {@code chars} digits of {@code s} from {@code off} into {@code dst}
+     * at {@code dstOff}; returns the bytes written, or -1 if {@code chars} is odd or
+     * a character is not a hex digit, in which case {@code dst} may be partly written.
+     */
+    public static int decode(CharSequence s, int off, int chars, byte[] dst, int dstOff) {
+        if ((chars & 1) != 0) {
+            return -1;
+        }
+        for (int i = 0; i < chars; i += 2) {
+            int hi = value(s.charAt(off + i));
+            int lo = value(s.charAt(off + i + 1));
+            if (hi < 0 || lo < 0) {
+                return -1;
+            }
+            dst[dstOff++] = (byte) ((hi << 4) | lo);
+        }
+        return chars / 2;
+    }
+
+    /** The bytes of {@code s}, or null if it is null, empty, of odd length or not all hex digits. */
+    public static byte[] fromHex(CharSequence s) {
+        if (s == null || s.length() == 0) {
+            return null;
+        }
+        byte[] out = new byte[s.length() / 2];
+        return decode(s, 0, s.length(), out, 0) < 0 ? null : out;
+    }
+
+    /** Value of hex digit {@code c}, or -1. */
+    public static int value(char c) {
+        return c < 128 ? VALUES[c] : -1;
+    }
+}
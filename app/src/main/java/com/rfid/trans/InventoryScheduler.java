@@ -0,0 +1,145 @@
+package com.rfid.trans;
+
+import com.rfid.InventoryTagResult;
+
+/**
+ * Picks session and target for each inventory command and keeps per-strategy
+ * metrics, so strategies can be compared on the same stockroom.
+ *
+ * <ul>
+ * <li>{@link Strategy#COUNT_ONCE}: S2 or S3, whose inventoried flag outlives the
+ * round, so a tag that has been read stops answering and the rest of the field gets
+ * the air time. Tags are swept from A to B; once two rounds in a row turn up no new
+ * tag, the sweep is done and the target flips, so the next sweep reads the tags
+ * back from B to A and picks up any that arrived since. The total read rate is not
+ * used: it stays high while a sweep re-reads tags that are already counted. Each
+ * target is held for a minimum number of rounds, and that dwell doubles (up to a
+ * cap) after every sweep that found nothing new, so a fully counted field is
+ * re-swept less and less often instead of flipping every few rounds.</li>
+ * <li>{@link Strategy#MONITOR}: S0 on target A. Flags reset between commands, so
+ * every tag in range answers every round; suited to locating tags and following
+ * RSSI.</li>
+ * </ul>
+ *
+ * <p>Synchronized, so metrics and strategy can be read and changed from any thread
+ * while the inventory loop runs.
+ */
+public class InventoryScheduler {
+
+    public enum Strategy {
+        COUNT_ONCE,
+        MONITOR,
+    }
+
+    /** Totals for one strategy since the scheduler was created. */
+    public static class Metrics {
+        public int rounds;
+        public long reads;
+        public int newTags;
+        public int flips;
+        public long elapsedMs;
+        /** Time spent with this strategy when its last new tag turned up. */
+        public long lastNewTagMs;
+
+        /** New tags per second up to the last new one: how fast the field was counted. */
+        public double countRate() {
+            return this.lastNewTagMs > 0 ? this.newTags * 1000.0 / this.lastNewTagMs : 0;
+        }
+    }
+
+    private static final int FLIP_PATIENCE = 2;
+    private static final int MIN_DWELL_ROUNDS = 4;
+    private static final int MAX_DWELL_ROUNDS = 64;
+
+    private final Metrics[] metrics = new Metrics[Strategy.values().length];
+    private Strategy strategy;
+    private final int countSession;
+    private byte target = 0;
+    private int roundsOnTarget = 0;
+    private int sweepNewTags = 0;
+    private int quietRounds = 0;
+    private int dwellRounds = MIN_DWELL_ROUNDS;
+
+    /** {@code countSession} (2 or 3) is the session {@link Strategy#COUNT_ONCE} uses. */
+    public InventoryScheduler(Strategy strategy, int countSession) {
+        for (int i = 0; i < this.metrics.length; i++) {
+            this.metrics[i] = new Metrics();
+        }
+        this.countSession = countSession == 3 ? 3 : 2;
+        setStrategy(strategy);
+    }
+
+    /** Scheduler matching a legacy ReaderParameter.Session: S2/S3 count, S0/S1 monitor. */
+    public static InventoryScheduler forSession(int session) {
+        return new InventoryScheduler(session > 1 ? Strategy.COUNT_ONCE : Strategy.MONITOR, session);
+    }
+
+    public synchronized void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+        this.target = 0;
+        this.roundsOnTarget = 0;
+        this.sweepNewTags = 0;
+        this.quietRounds = 0;
+        this.dwellRounds = MIN_DWELL_ROUNDS;
+    }
+
+    public synchronized Strategy getStrategy() {
+        return this.strategy;
+    }
+
+    public synchronized int session() {
+        return this.strategy == Strategy.COUNT_ONCE ? this.countSession : 0;
+    }
+
+    /** 0 for target A, 1 for B. */
+    public synchronized byte target() {
+        return this.target;
+    }
+
+    /**
+     * Accounts the round just run with {@link #session()} and {@link #target()}; uses
+     * nCount, NewNum (tags never read before in this run) and nTime.
+     */
+    public synchronized void onRound(InventoryTagResult round) {
+        Metrics m = this.metrics[this.strategy.ordinal()];
+        m.rounds++;
+        m.reads += round.nCount;
+        m.elapsedMs += round.nTime;
+        if (round.NewNum > 0) {
+            m.newTags += round.NewNum;
+            m.lastNewTagMs = m.elapsedMs;
+        }
+        if (this.strategy != Strategy.COUNT_ONCE) {
+            return;
+        }
+        this.roundsOnTarget++;
+        if (round.NewNum > 0) {
+            this.sweepNewTags += round.NewNum;
+            this.quietRounds = 0;
+        } else {
+            this.quietRounds++;
+        }
+        if (this.quietRounds >= FLIP_PATIENCE && this.roundsOnTarget >= this.dwellRounds) {
+            this.dwellRounds = this.sweepNewTags > 0 ? MIN_DWELL_ROUNDS
+                    : Math.min(this.dwellRounds * 2, MAX_DWELL_ROUNDS);
+            this.target = (byte) (1 - this.target);
+            this.roundsOnTarget = 0;
+            this.sweepNewTags = 0;
+            this.quietRounds = 0;
+            m.flips++;
+        }
+    }
+
+    /** Copy of the totals for {@code strategy}. */
+    public synchronized Metrics metrics(Strategy strategy) {
+        Metrics m = this.metrics[strategy.ordinal()];
+        Metrics copy = new Metrics();
+        copy.rounds = m.rounds;
+        copy.reads = m.reads;
+        copy.newTags = m.newTags;
+        copy.flips = m.flips;
+        copy.elapsedMs = m.elapsedMs;
+        copy.lastNewTagMs = m.lastNewTagMs;
+        return copy;
+    }
+}
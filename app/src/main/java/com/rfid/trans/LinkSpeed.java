@@ -0,0 +1,130 @@
+package com.rfid.trans;
+
+import android.util.Log;
+
+/**
+ * Raises the serial link to the fastest rate the module and the port both carry
+ * cleanly. In dense fields the link, not the air interface, caps the reads: at
+ * 115200 baud a 12-byte EPC record takes 1.2 ms to send, about as long as the
+ * Gen2 slot that read it.
+ *
+ * <p>{@link #negotiate} tries the rates from the fastest down. For each it asks
+ * the module to switch with {@link BaseReader#SetBaudRate}, reopens the port at
+ * the new rate and sends {@link #ECHO_QUERIES} GetReaderInformation queries. Every
+ * reply must pass its CRC and report the same settings as before the switch. On
+ * any failure the module is brought back to the rate it started at before the
+ * next rate is tried. A module that refuses a rate code costs one command.
+ */
+public final class LinkSpeed {
+
+    /** Rates above the 115200 default to try, fastest first. */
+    public static final int[] UPGRADES = {921600, 460800, 230400};
+    /** Queries a new rate must answer, all with a valid CRC. */
+    public static final int ECHO_QUERIES = 8;
+
+    private static final String TAG = "LinkSpeed";
+    /** SetBaudRate's codes: rate of code i, 0 for codes it does not use. 7 and up only on later firmware. */
+    private static final int[] RATES = {9600, 19200, 38400, 0, 0, 57600, 115200, 230400, 460800, 921600};
+    /** Time the module gets after its reply to retune its UART. */
+    private static final int SWITCH_SETTLE_MS = 10;
+    /** Tries to get the command back through a link that garbles half its frames: 8 leave 1 in 256 stranded. */
+    private static final int RESTORE_ATTEMPTS = 8;
+
+    private LinkSpeed() {
+    }
+
+    /** Rate of SetBaudRate's {@code code}, or 0 if it has none. */
+    public static int rate(int code) {
+        return code >= 0 && code < RATES.length ? RATES[code] : 0;
+    }
+
+    /** SetBaudRate's code for {@code baudRate}, or -1 if it has none. */
+    public static int code(int baudRate) {
+        for (int i = 0; i < RATES.length; i++) {
+            if (RATES[i] == baudRate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the module behind {@code reader}, which answered as {@code info}, to the
+     * fastest of {@code rates} above its current one that passes the echo test.
+     * Returns the module's reply at the rate the link ended on: {@code info} itself
+     * if none passed. Returns null, with the port closed, only if the module stopped
+     * answering at both the old and the new rate.
+     */
+    public static ReaderInfo negotiate(BaseReader reader, ReaderInfo info, int[] rates) {
+        if (code(info.baudRate) < 0) {
+            return info;
+        }
+        for (int rate : rates) {
+            int code = code(rate);
+            if (rate <= info.baudRate || code < 0) {
+                continue;
+            }
+            int status = reader.SetBaudRate(info.comAddr, (byte) code, ReaderProbe.REPLY_TIMEOUT_MS);
+            if (status != 0 && status != 48) {
+                // Refused, so still at the old rate.
+                continue;
+            }
+            // No reply may still mean it switched: set the port to the new rate either way and see.
+            pause(SWITCH_SETTLE_MS);
+            ReaderInfo fast = reader.Reconnect(rate) == 0 ? echo(reader, info, rate) : null;
+            if (fast != null) {
+                Log.i(TAG, info + " -> " + rate);
+                return fast;
+            }
+            Log.w(TAG, rate + " failed the echo test on " + info);
+            if (!restore(reader, info, rate)) {
+                reader.DisConnect();
+                return null;
+            }
+        }
+        return info;
+    }
+
+    /** The last of {@link #ECHO_QUERIES} replies at {@code rate}, or null if one failed or differed. */
+    private static ReaderInfo echo(BaseReader reader, ReaderInfo before, int rate) {
+        ReaderInfo reply = null;
+        for (int i = 0; i < ECHO_QUERIES; i++) {
+            reply = ReaderInfo.query(reader, before.port, rate, ReaderProbe.REPLY_TIMEOUT_MS, 1);
+            if (reply == null || !reply.sameModule(before)) {
+                return null;
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Brings the module back to {@code info}'s rate from {@code rate}, where it most
+     * likely is, the port still open there. The command back is sent over the link
+     * that just failed, so it is retried. Returns whether the module answers at the
+     * old rate again, which it also does if it never left.
+     */
+    private static boolean restore(BaseReader reader, ReaderInfo info, int rate) {
+        for (int i = 0; i < RESTORE_ATTEMPTS; i++) {
+            if (i > 0 && reader.Reconnect(rate) != 0) {
+                break;
+            }
+            reader.SetBaudRate(info.comAddr, (byte) code(info.baudRate), ReaderProbe.REPLY_TIMEOUT_MS);
+            pause(SWITCH_SETTLE_MS);
+            if (reader.Reconnect(info.baudRate) != 0) {
+                return false;
+            }
+            if (ReaderInfo.query(reader, info.port, info.baudRate, ReaderProbe.REPLY_TIMEOUT_MS, 2) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void pause(int ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
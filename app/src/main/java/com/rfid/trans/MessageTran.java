@@ -1,141 +1,230 @@
 package com.rfid.trans;
 
 import android.util.Log;
-import com.rfid.serialport.SerialPort;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.security.InvalidParameterException;
-import kotlin.UByte;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-/* loaded from: classes3.dex */
+/**
+ * Link to the UHF module over a {@link Transport}. A single receive thread sleeps
+ * in the transport's blocking read (poll(2) on the serial port) and reads into a
+ * fixed pool of chunk buffers which it queues; command and
+ * inventory code waits on that queue with a deadline and drains it into its
+ * {@link FrameAssembler}, so both sides are idle until data arrives. When the consumer falls behind
+ * and the pool runs dry, the oldest queued chunk is recycled, since a stale partial
+ * reply is useless to the next command anyway.
+ */
 public class MessageTran {
-    private InputStream mInStream = null;
-    private OutputStream mOutStream = null;
-    private SerialPort mSerialPort = null;
-    private boolean connected = false;
+    private static final String TAG = "MessageTran";
+    private static final int CHUNK_SIZE = 512;
+    private static final int POOL_SIZE = 16;
+    /** Upper bound on how long close() can go unnoticed by the receive thread. */
+    private static final int POLL_INTERVAL_MS = 250;
+
+    private final Transport transport;
+    private volatile boolean connected = false;
+    private volatile boolean trace = false;
+    private volatile Thread rxThread = null;
+    private final ArrayBlockingQueue<Chunk> free = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final ArrayBlockingQueue<Chunk> ready = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private volatile String port = null;
+    private volatile int baudRate = 0;
+
+    private static final class Chunk {
+        final byte[] data = new byte[CHUNK_SIZE];
+        int length;
+    }
+
+    public MessageTran() {
+        this(new SerialTransport());
+    }
+
+    public MessageTran(Transport transport) {
+        this.transport = transport;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            this.free.add(new Chunk());
+        }
+    }
 
     public boolean isOpen() {
         return this.connected;
     }
 
+    /** Hex-dumps every chunk sent and received to logcat; no string is built while off. */
+    public void setTrace(boolean enabled) {
+        this.trace = enabled;
+    }
+
+    public boolean isTraceEnabled() {
+        return this.trace;
+    }
+
+    /** Bytes discarded because nobody drained the receive queue in time. */
+    public long getDroppedBytes() {
+        return this.droppedBytes.get();
+    }
+
+    /** Bytes received since creation, whether or not anybody read them. */
+    public long getReceivedBytes() {
+        return this.receivedBytes.get();
+    }
+
+    /** Rate the link was last opened at. */
+    public int getBaudRate() {
+        return this.baudRate;
+    }
+
     public int open(String str, int i) {
-        try {
-            this.mSerialPort = new SerialPort(new File(str), i, 0);
-        } catch (IOException | SecurityException | InvalidParameterException unused) {
-        }
-        SerialPort serialPort = this.mSerialPort;
-        if (serialPort == null) {
+        if (this.transport.open(str, i) != 0) {
             return -1;
         }
-        this.mInStream = serialPort.getInputStream();
-        this.mOutStream = this.mSerialPort.getOutputStream();
+        this.port = str;
+        this.baudRate = i;
+        recycleQueued();
         this.connected = true;
+        Thread thread = new Thread(this::receiveLoop, "UHF-Rx");
+        thread.setDaemon(true);
+        this.rxThread = thread;
+        thread.start();
         return 0;
     }
 
     public int close() {
-        if (this.mInStream != null) {
-            try {
-                SerialPort serialPort = this.mSerialPort;
-                if (serialPort != null) {
-                    serialPort.close();
-                    this.mSerialPort = null;
-                }
-                this.mInStream.close();
-                this.mOutStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
         this.connected = false;
+        Thread thread = this.rxThread;
+        this.rxThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        this.transport.close();
+        recycleQueued();
         return 0;
     }
 
-    public byte[] Read() {
-        if (!this.connected) {
-            return null;
+    /** Closes the link and opens the same port at {@code baudRate}; -1 if it never was open or will not open. */
+    public int reopen(int baudRate) {
+        String str = this.port;
+        if (str == null) {
+            return -1;
+        }
+        Thread thread = this.rxThread;
+        close();
+        if (thread != null) {
+            // The old receive thread must be gone before the new one reads, or it takes the new bytes too.
+            try {
+                thread.join(2L * POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        return open(str, baudRate);
+    }
+
+    private void receiveLoop() {
         try {
-            byte[] bArr = new byte[2560];
-            int read = this.mInStream.read(bArr);
-            if (read > 0) {
-                byte[] bArr2 = new byte[read];
-                System.arraycopy(bArr, 0, bArr2, 0, read);
-                Log.d("Recv", bytesToHexString(bArr2, 0, read));
-                return bArr2;
+            while (this.connected && this.rxThread == Thread.currentThread()) {
+                Chunk chunk = this.free.poll();
+                if (chunk == null) {
+                    chunk = this.ready.poll();
+                    if (chunk != null) {
+                        this.droppedBytes.addAndGet(chunk.length);
+                    } else {
+                        chunk = this.free.take();
+                    }
+                }
+                int n = this.transport.read(chunk.data, 0, CHUNK_SIZE, POLL_INTERVAL_MS);
+                if (n <= 0) {
+                    this.free.offer(chunk);
+                    if (n < 0) {
+                        break;
+                    }
+                    continue;
+                }
+                chunk.length = n;
+                this.receivedBytes.addAndGet(n);
+                if (this.trace) {
+                    Log.d("Recv", bytesToHexString(chunk.data, 0, n));
+                }
+                this.ready.offer(chunk);
+            }
+        } catch (IOException | InterruptedException e) {
+            if (this.connected) {
+                Log.e(TAG, "receive loop stopped: " + e);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return null;
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for received data, then moves every queued
+     * chunk into {@code rx} and returns the chunks to the pool. Returns the number
+     * of bytes appended, 0 on timeout.
+     */
+    public int drainTo(FrameAssembler rx, long timeoutMs) {
+        Chunk chunk;
+        try {
+            chunk = timeoutMs > 0 ? this.ready.poll(timeoutMs, TimeUnit.MILLISECONDS) : this.ready.poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        int total = 0;
+        for (; chunk != null; chunk = this.ready.poll()) {
+            rx.append(chunk.data, 0, chunk.length);
+            total += chunk.length;
+            this.free.offer(chunk);
+        }
+        return total;
+    }
+
+    private void recycleQueued() {
+        Chunk chunk;
+        while ((chunk = this.ready.poll()) != null) {
+            this.free.offer(chunk);
+        }
     }
 
     public int Write(byte[] bArr) {
-        if (!this.connected) {
+        if (bArr.length != (bArr[0] & 255) + 1) {
             return -1;
         }
-        int length = bArr.length;
-        int i = bArr[0];
-        if (length != (i & 255) + 1) {
+        return Write(bArr, bArr.length);
+    }
+
+    /** Sends the frame at the start of {@code bArr}, which may be a larger reusable buffer. */
+    public int Write(byte[] bArr, int length) {
+        if (!this.connected) {
             return -1;
         }
-        int i2 = (i & 255) + 1;
-        try {
-            byte[] bArr2 = new byte[i2];
-            System.arraycopy(bArr, 0, bArr2, 0, i2);
-            this.mOutStream.flush();
-            this.mOutStream.write(bArr2);
-            return 0;
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (length != (bArr[0] & 255) + 1 || length > bArr.length) {
             return -1;
         }
+        if (this.trace) {
+            Log.d("Send", bytesToHexString(bArr, 0, length));
+        }
+        return this.transport.write(bArr, 0, length);
     }
 
+    /** Hex of {@code bArr[i, i2)}; null for a null or empty array or a bad range. */
     public String bytesToHexString(byte[] bArr, int i, int i2) {
-        StringBuilder sb = new StringBuilder("");
-        if (bArr != null) {
-            try {
-                if (bArr.length > 0) {
-                    while (i < i2) {
-                        String hexString = Integer.toHexString(bArr[i] & UByte.MAX_VALUE);
-                        if (hexString.length() == 1) {
-                            sb.append(0);
-                        }
-                        sb.append(hexString);
-                        i++;
-                    }
-                    return sb.toString().toUpperCase();
-                }
-            } catch (Exception unused) {
-            }
+        if (bArr == null || bArr.length == 0 || i < 0 || i2 > bArr.length || i > i2) {
+            return null;
         }
-        return null;
+        return HexCodec.toHex(bArr, i, i2 - i);
     }
 
+    /** Bytes of hex {@code str}, a trailing odd digit ignored; null if empty or not hex. */
     public byte[] hexStringToBytes(String str) {
-        if (str != null) {
-            try {
-                if (!str.equals("")) {
-                    String upperCase = str.toUpperCase();
-                    int length = upperCase.length() / 2;
-                    char[] charArray = upperCase.toCharArray();
-                    byte[] bArr = new byte[length];
-                    for (int i = 0; i < length; i++) {
-                        int i2 = i * 2;
-                        bArr[i] = (byte) (charToByte(charArray[i2 + 1]) | (charToByte(charArray[i2]) << 4));
-                    }
-                    return bArr;
-                }
-            } catch (Exception unused) {
-            }
+        if (str == null) {
+            return null;
         }
-        return null;
-    }
-
-    private byte charToByte(char c) {
-        return (byte) "0123456789ABCDEF".indexOf(c);
+        int chars = str.length() & ~1;
+        if (chars == 0) {
+            return null;
+        }
+        byte[] bArr = new byte[chars / 2];
+        return HexCodec.decode(str, 0, chars, bArr, 0) < 0 ? null : bArr;
     }
 }
@@ -1,8 +1,6 @@
 package com.rfid.trans;
 
 import com.gg.reader.api.utils.BitBuffer;
-import com.gg.reader.api.utils.HexUtils;
-import kotlin.UByte;
 
 /* loaded from: classes3.dex */
 public class PcUtils {
@@ -12,7 +10,7 @@ public class PcUtils {
         allocateDynamic.position(16);
         byte[] bArr = new byte[2];
         allocateDynamic.get(bArr);
-        return HexUtils.bytes2HexString(bArr);
+        return HexCodec.toHex(bArr);
     }
 
     public static String getGbPc(int i) {
@@ -21,7 +19,7 @@ public class PcUtils {
         allocateDynamic.position(16);
         byte[] bArr = new byte[2];
         allocateDynamic.get(bArr);
-        return HexUtils.bytes2HexString(bArr);
+        return HexCodec.toHex(bArr);
     }
 
     public static String padLeft(String str, int i, char c) {
@@ -47,7 +45,7 @@ public class PcUtils {
     }
 
     public static int byteArrayToInt(byte[] bArr) {
-        return ((bArr[0] & UByte.MAX_VALUE) << 24) | (bArr[3] & UByte.MAX_VALUE) | ((bArr[2] & UByte.MAX_VALUE) << 8) | ((bArr[1] & UByte.MAX_VALUE) << 16);
+        return ((bArr[0] & 0xFF) << 24) | (bArr[3] & 0xFF) | ((bArr[2] & 0xFF) << 8) | ((bArr[1] & 0xFF) << 16);
     }
 
     public static byte[] intToByteArray(int i) {
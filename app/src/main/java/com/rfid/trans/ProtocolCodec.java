@@ -0,0 +1,48 @@
+package com.rfid.trans;
+
+/**
+ * CRC-16 used by the UHF reader protocol (reflected polynomial 0x8408, initial
+ * value 0xFFFF, no final XOR), transmitted LSB first after the frame body.
+ *
+ * <p>All methods work on an (array, offset, length) view so frames can be signed
+ * and verified where they sit, without copying.
+ */
+public final class ProtocolCodec {
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x8408 : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private ProtocolCodec() {
+    }
+
+    public static int crc16(byte[] b, int off, int len) {
+        int crc = 0xFFFF;
+        for (int i = off, end = off + len; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /** Writes the CRC of {@code b[off, off + len)} into the two bytes that follow it. */
+    public static void appendCrc(byte[] b, int off, int len) {
+        int crc = crc16(b, off, len);
+        b[off + len] = (byte) crc;
+        b[off + len + 1] = (byte) (crc >>> 8);
+    }
+
+    /**
+     * Checks a whole frame, trailing CRC included: running the CRC over it leaves
+     * a zero residue when the frame is intact.
+     */
+    public static boolean verify(byte[] b, int off, int len) {
+        return len >= 2 && crc16(b, off, len) == 0;
+    }
+}
@@ -0,0 +1,108 @@
+package com.rfid.trans;
+
+import com.rfid.InventoryTagResult;
+
+/**
+ * Chooses the Gen2 Q (2^Q slots per frame) for the next inventory command.
+ *
+ * <p>In fixed mode Q never changes. In adaptive mode it follows the statistics of
+ * each round ({@link InventoryTagResult}). A round that ended before its scan time
+ * read everyone who answered, so the tags found (plus frames lost to CRC errors) is
+ * the population, and Q is set to about log2 of it, where slotted ALOHA is most
+ * efficient. A round that used its whole scan time says nothing about the
+ * population; Q then climbs in single steps towards the best read rate, starting
+ * upwards since collisions are the usual cause. Q is capped so that a frame fits in
+ * the scan time, and empty rounds let it fall back to its minimum.
+ */
+public class QController {
+    public static final int MIN_Q = 0;
+    public static final int MAX_Q = 15;
+    /** Conservative air time of an empty Gen2 slot. */
+    private static final int MIN_SLOT_MICROS = 100;
+
+    private final boolean adaptive;
+    private final int minQ;
+    private final int maxQ;
+    private int q;
+    private double population;
+    private double lastRate = -1;
+    private int direction = 1;
+
+    /** Fixed Q. */
+    public QController(int q) {
+        this(false, q, q, q);
+    }
+
+    /** Adaptive Q in {@code [minQ, maxQ]}, starting at {@code initialQ}. */
+    public QController(boolean adaptive, int initialQ, int minQ, int maxQ) {
+        this.adaptive = adaptive;
+        this.minQ = clamp(minQ, MIN_Q, MAX_Q);
+        this.maxQ = clamp(maxQ, this.minQ, MAX_Q);
+        this.q = clamp(initialQ, this.minQ, this.maxQ);
+        this.population = 1 << this.q;
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    public int currentQ() {
+        return this.q;
+    }
+
+    /** Current estimate of the tags answering each round. */
+    public int estimatedPopulation() {
+        return (int) Math.round(this.population);
+    }
+
+    /**
+     * Feeds the statistics of the round just run with {@code scanTime} (in 100 ms
+     * units) and returns the Q to use for the next one.
+     */
+    public int update(InventoryTagResult round, int scanTime) {
+        if (!this.adaptive || round.result != 0) {
+            return this.q;
+        }
+        int found = round.nCount + round.nCrcErrors;
+        int target;
+        if (round.nTime >= scanTime * 100L) {
+            // The round was cut short, so the population is unknown: climb towards
+            // the Q with the best read rate, turning back when a step made it worse.
+            double rate = found / (double) round.nTime;
+            if (this.lastRate >= 0 && rate < this.lastRate) {
+                this.direction = -this.direction;
+            }
+            this.lastRate = rate;
+            target = this.q + this.direction;
+            this.population = 1 << clamp(target, MIN_Q, MAX_Q);
+        } else {
+            // Everyone who answered was read: the tags found are the population.
+            // Averaged with the previous estimate so one odd round cannot swing Q far.
+            this.lastRate = -1;
+            this.direction = 1;
+            this.population = (this.population + found) / 2;
+            target = this.population < 1 ? this.minQ
+                    : (int) Math.round(Math.log(this.population) / Math.log(2));
+        }
+        this.q = clamp(target, this.minQ, Math.max(this.minQ, Math.min(this.maxQ, budgetQ(scanTime))));
+        return this.q;
+    }
+
+    /**
+     * Largest Q whose frame can still be walked within the scan time even if every
+     * slot is empty; beyond it a round never completes, which would otherwise read
+     * as congestion and push Q up further.
+     */
+    private static int budgetQ(int scanTime) {
+        long slots = scanTime * 100_000L / MIN_SLOT_MICROS;
+        int q = 0;
+        while (q < MAX_Q && (2L << q) <= slots) {
+            q++;
+        }
+        return q;
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
+}
@@ -3,6 +3,20 @@ package com.rfid.trans;
 /* loaded from: classes3.dex */
 public class ReadTag {
     public int antId;
-    public String epcId;
+    public EpcKey epc;
+    /** TID bank read in the same inventory round, or null when the round did not ask for it. */
+    public EpcKey tidKey;
     public int rssi;
+    /** Reads this report stands for; above 1 for dedup summaries (see BaseReader.SetTagDedup). */
+    public int readCount = 1;
+
+    /** Hex of {@link #epc}, for display and storage; built on first use. */
+    public String getEpcId() {
+        return this.epc == null ? null : this.epc.toString();
+    }
+
+    /** Hex of {@link #tidKey}, or null. */
+    public String getTid() {
+        return this.tidKey == null ? null : this.tidKey.toString();
+    }
 }
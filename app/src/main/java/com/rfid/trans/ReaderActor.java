@@ -0,0 +1,215 @@
+package com.rfid.trans;
+
+import android.util.Log;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one thread that talks to a {@link BaseReader}. The reader has a single
+ * receive buffer and link, so two commands in flight at once corrupt each other's
+ * replies; callers submit their commands here instead and the actor runs them one
+ * at a time. Commands run by {@link Priority}, in submission order within one, so
+ * a control command queued while an inventory runs goes out right after the
+ * current round, without stopping the inventory.
+ *
+ * <p>Every command may have a deadline: one still queued when its deadline passes
+ * is not sent and completes with {@link #STATUS_EXPIRED}, since a setting the user
+ * changed seconds ago is better dropped than applied late.
+ *
+ * <p>A module in active mode answers no commands. While {@link #setStreaming}
+ * hooks are set, the actor pauses the stream before a command of any priority
+ * above {@link Priority#INVENTORY} and resumes it once none is left.
+ */
+public final class ReaderActor {
+
+    /** Command not sent: still queued at its deadline. */
+    public static final int STATUS_EXPIRED = 0x101;
+    /** Command not sent: the actor was closed first. Same as the reader's "no reply". */
+    public static final int STATUS_CLOSED = 48;
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final String TAG = "ReaderActor";
+
+    /** Highest first. */
+    public enum Priority {
+        /** Connecting, disconnecting, leaving active mode. */
+        URGENT,
+        /** Settings and tag access: power, antenna, beep, reads and writes. */
+        CONTROL,
+        /** Inventory rounds and stream reads, which fill every gap between the others. */
+        INVENTORY,
+    }
+
+    public interface Command {
+        /** Runs on the actor thread with the reader to itself; returns the module status. */
+        int run(BaseReader reader);
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final Priority priority;
+        final long seq;
+        final long deadlineNanos;
+        final Command command;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Task(Priority priority, long seq, long deadlineNanos, Command command) {
+            this.priority = priority;
+            this.seq = seq;
+            this.deadlineNanos = deadlineNanos;
+            this.command = command;
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            int c = this.priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(this.seq, o.seq);
+        }
+    }
+
+    private final BaseReader reader;
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final Task poison = new Task(Priority.URGENT, Long.MAX_VALUE, 0, null);
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private volatile long expired = 0;
+
+    // Set by commands on the actor thread; pause is also read by isStreaming().
+    private volatile Command pause = null;
+    private Command resume = null;
+    private boolean paused = false;
+
+    public ReaderActor(BaseReader reader) {
+        this.reader = reader;
+        this.thread = new Thread(this::loop, "uhf-reader");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues {@code command}; the future completes with its status, with
+     * {@link #STATUS_EXPIRED} if it was still queued {@code deadlineMs} from now
+     * ({@link #NO_DEADLINE} waits as long as it takes), or with
+     * {@link #STATUS_CLOSED}. Cancelling the future takes a queued command back.
+     */
+    public CompletableFuture<Integer> submit(Priority priority, long deadlineMs, Command command) {
+        long deadline = deadlineMs == NO_DEADLINE ? 0 : System.nanoTime() + deadlineMs * 1_000_000L;
+        Task task = new Task(priority, this.seq.getAndIncrement(), deadline, command);
+        if (this.closed) {
+            task.result.complete(STATUS_CLOSED);
+            return task.result;
+        }
+        this.queue.add(task);
+        // Closed meanwhile: the actor may have drained the queue already.
+        if (this.closed && this.queue.remove(task)) {
+            task.result.complete(STATUS_CLOSED);
+        }
+        return task.result;
+    }
+
+    /**
+     * {@link #submit} and wait. From a command, i.e. on the actor thread, runs
+     * {@code command} at once instead, as waiting there would never end.
+     */
+    public int call(Priority priority, long deadlineMs, Command command) {
+        if (Thread.currentThread() == this.thread) {
+            return command.run(this.reader);
+        }
+        CompletableFuture<Integer> result = submit(priority, deadlineMs, command);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            return STATUS_CLOSED;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * From a command: the module now streams (non-null hooks) or answers commands
+     * (null). {@code pause} must put it in answer mode and {@code resume} back in
+     * active mode; if {@code resume} fails, streaming ends, see {@link #isStreaming()}.
+     */
+    public void setStreaming(Command pause, Command resume) {
+        this.pause = pause;
+        this.resume = resume;
+        this.paused = false;
+    }
+
+    /** Whether the module is streaming, or paused to be resumed. */
+    public boolean isStreaming() {
+        return this.pause != null;
+    }
+
+    /** Commands dropped at their deadline since the actor started. */
+    public long getExpiredCount() {
+        return this.expired;
+    }
+
+    /**
+     * Runs the commands already queued at {@link Priority#URGENT}, then ends the
+     * thread; every other command completes with {@link #STATUS_CLOSED}.
+     */
+    public void close() {
+        this.closed = true;
+        this.queue.add(this.poison);
+    }
+
+    private void loop() {
+        while (true) {
+            Task task;
+            try {
+                task = this.queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (task == this.poison) {
+                for (Task t; (t = this.queue.poll()) != null; ) {
+                    t.result.complete(STATUS_CLOSED);
+                }
+                return;
+            }
+            if (task.result.isDone()) {
+                continue;
+            }
+            if (task.deadlineNanos != 0 && System.nanoTime() - task.deadlineNanos > 0) {
+                this.expired++;
+                task.result.complete(STATUS_EXPIRED);
+                continue;
+            }
+            Command pauseHook = this.pause;
+            if (pauseHook != null && !this.paused && task.priority != Priority.INVENTORY) {
+                this.paused = true;
+                runHook(pauseHook, "pause");
+            }
+            try {
+                task.result.complete(task.command.run(this.reader));
+            } catch (Throwable e) {
+                task.result.completeExceptionally(e);
+            }
+            if (this.paused) {
+                Task next = this.queue.peek();
+                if (next == null || next.priority == Priority.INVENTORY) {
+                    this.paused = false;
+                    if (runHook(this.resume, "resume") != 0) {
+                        setStreaming(null, null);
+                    }
+                }
+            }
+        }
+    }
+
+    private int runHook(Command hook, String name) {
+        try {
+            return hook.run(this.reader);
+        } catch (Exception e) {
+            Log.e(TAG, name + ": " + e);
+            return STATUS_CLOSED;
+        }
+    }
+}
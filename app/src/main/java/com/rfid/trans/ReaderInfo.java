@@ -0,0 +1,103 @@
+package com.rfid.trans;
+
+/**
+ * Where a module answered and the settings it reported, from one
+ * {@link BaseReader#GetReaderInformation} reply. {@link #configure} brings those
+ * settings to what the app wants with only the commands that change something,
+ * so a module that kept its configuration costs no commands at all.
+ */
+public final class ReaderInfo {
+
+    /** Address every module answers to, whatever its own. */
+    public static final byte BROADCAST = (byte) 0xFF;
+    /** Setting left as the module has it. */
+    public static final int KEEP = -1;
+
+    public final String port;
+    public final int baudRate;
+    /** The module's own address, for the commands after this one. */
+    public final byte comAddr;
+    /** Firmware version, major in the high byte. */
+    public final int version;
+    public final int band;
+    public final int maxFre;
+    public final int minFre;
+    /** dBm. */
+    public final int power;
+    public final int antenna;
+
+    private ReaderInfo(String port, int baudRate, byte comAddr, int version, int band, int maxFre, int minFre,
+            int power, int antenna) {
+        this.port = port;
+        this.baudRate = baudRate;
+        this.comAddr = comAddr;
+        this.version = version;
+        this.band = band;
+        this.maxFre = maxFre;
+        this.minFre = minFre;
+        this.power = power;
+        this.antenna = antenna;
+    }
+
+    /**
+     * Asks the module behind {@code reader}, connected on {@code port} at
+     * {@code baudRate}, up to {@code attempts} times with a {@code timeoutMs}
+     * wait each; null if it never answered.
+     */
+    public static ReaderInfo query(BaseReader reader, String port, int baudRate, int timeoutMs, int attempts) {
+        byte[] addr = new byte[1];
+        byte[] version = new byte[2];
+        byte[] band = new byte[1];
+        byte[] maxFre = new byte[1];
+        byte[] minFre = new byte[1];
+        byte[] power = new byte[1];
+        byte[] antenna = new byte[1];
+        for (int i = 0; i < attempts; i++) {
+            addr[0] = BROADCAST;
+            int result = reader.GetReaderInformation(addr, version, new byte[1], new byte[1], band, maxFre, minFre,
+                    power, new byte[1], antenna, new byte[1], new byte[1], new byte[1], timeoutMs);
+            if (result == 0) {
+                return new ReaderInfo(port, baudRate, addr[0], ((version[0] & 0xFF) << 8) | (version[1] & 0xFF),
+                        band[0], maxFre[0], minFre[0], power[0] & 0xFF, antenna[0] & 0xFF);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies {@code power} (dBm), {@code antenna} and the region ({@code band},
+     * {@code maxFre}, {@code minFre}), each {@link #KEEP} to leave it, sending only
+     * those that differ from this reply. Returns 0, or the status of the first
+     * command the module refused; the rest are not sent.
+     */
+    public int configure(BaseReader reader, int power, int antenna, int band, int maxFre, int minFre) {
+        if (band != KEEP && (band != this.band || maxFre != this.maxFre || minFre != this.minFre)) {
+            int result = reader.SetRegion(this.comAddr, band, maxFre, minFre);
+            if (result != 0) {
+                return result;
+            }
+        }
+        if (power != KEEP && power != this.power) {
+            int result = reader.SetRfPower(this.comAddr, (byte) power);
+            if (result != 0) {
+                return result;
+            }
+        }
+        if (antenna != KEEP && antenna != this.antenna) {
+            return reader.SetAntennaMultiplexing(this.comAddr, (byte) 1, (byte) 0, (byte) antenna);
+        }
+        return 0;
+    }
+
+    /** Whether {@code o} reports the same module and settings, wherever it answered. */
+    boolean sameModule(ReaderInfo o) {
+        return o.comAddr == this.comAddr && o.version == this.version && o.band == this.band
+                && o.maxFre == this.maxFre && o.minFre == this.minFre && o.power == this.power
+                && o.antenna == this.antenna;
+    }
+
+    @Override
+    public String toString() {
+        return this.port + "@" + this.baudRate + " addr " + (this.comAddr & 0xFF);
+    }
+}
@@ -2,6 +2,8 @@ package com.rfid.trans;
 
 /* loaded from: classes3.dex */
 public class ReaderParameter {
+    /** Let a {@link QController} adapt Q between rounds, starting from {@link #QValue}. */
+    public boolean AdaptiveQ;
     public int Antenna;
     public byte ComAddr;
     public int Interval;
@@ -0,0 +1,123 @@
+package com.rfid.trans;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Finds the serial port and baud rate a module answers on. Ports are probed in
+ * parallel, one thread each, since a silent port costs a whole reply timeout;
+ * each thread walks the baud rates in order, as one port cannot be opened at two
+ * rates at once. Every attempt is one {@link BaseReader#GetReaderInformation}
+ * with a {@link #REPLY_TIMEOUT_MS} wait instead of the usual second.
+ *
+ * <p>{@link #find} only tries the ports it is given and the {@link #KNOWN_PORTS}
+ * of the handhelds. It never walks every serial device: a probe writes a command
+ * frame at five baud rates, which another peripheral on that UART (a scanner, a
+ * modem, a printer) could take for its own input.
+ */
+public final class ReaderProbe {
+
+    /** Factory rate first, then those {@link LinkSpeed} may have left it at, then the slower ones. */
+    public static final int[] BAUD_RATES = {115200, 921600, 460800, 230400, 57600, 38400, 19200, 9600};
+    /** UHF ports of the handhelds in use. */
+    public static final String[] KNOWN_PORTS = {"/dev/ttyS4", "/dev/ttyS3", "/dev/ttyS2"};
+    /** The 18-byte reply takes 19 ms at 9600 baud; the rest is the module's turnaround. */
+    public static final int REPLY_TIMEOUT_MS = 80;
+
+    private final Supplier<Transport> transports;
+
+    /** {@code transports} must give a new, closed transport per call. */
+    public ReaderProbe(Supplier<Transport> transports) {
+        this.transports = transports;
+    }
+
+    /**
+     * The module on {@code preferred} ports (e.g. a cached port, then a model's
+     * default) or one of {@link #KNOWN_PORTS}. Null if none answered.
+     */
+    public ReaderInfo find(String... preferred) {
+        Set<String> ports = new LinkedHashSet<>();
+        for (String port : preferred) {
+            if (port != null) {
+                ports.add(port);
+            }
+        }
+        for (String port : KNOWN_PORTS) {
+            ports.add(port);
+        }
+        return probe(new ArrayList<>(ports), BAUD_RATES);
+    }
+
+    /**
+     * Probes {@code ports} in parallel, each at {@code baudRates} in order, and
+     * returns the first module that answered, or null. The other threads stop at
+     * their next attempt; the winner's port is closed again for the caller to open.
+     */
+    public ReaderInfo probe(List<String> ports, int[] baudRates) {
+        if (ports.isEmpty()) {
+            return null;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(ports.size(), r -> {
+            Thread thread = new Thread(r, "uhf-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<ReaderInfo> done = new ExecutorCompletionService<>(executor);
+        AtomicBoolean found = new AtomicBoolean(false);
+        try {
+            for (String port : ports) {
+                done.submit(() -> probePort(port, baudRates, found));
+            }
+            for (int i = 0; i < ports.size(); i++) {
+                ReaderInfo info = done.take().get();
+                if (info != null) {
+                    return info;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // E.g. UnsatisfiedLinkError without the serial library: the caller reports that, not "not found".
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            return null;
+        } finally {
+            found.set(true);
+            executor.shutdown();
+        }
+    }
+
+    private ReaderInfo probePort(String port, int[] baudRates, AtomicBoolean found) {
+        for (int baudRate : baudRates) {
+            if (found.get()) {
+                return null;
+            }
+            BaseReader reader = new BaseReader(this.transports.get());
+            if (reader.Connect(port, baudRate, 0) != 0) {
+                // No such device, or not ours to open: no rate will do.
+                return null;
+            }
+            try {
+                ReaderInfo info = ReaderInfo.query(reader, port, baudRate, REPLY_TIMEOUT_MS, 1);
+                if (info != null && found.compareAndSet(false, true)) {
+                    return info;
+                }
+            } finally {
+                reader.DisConnect();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.rfid.trans;
+
+import com.rfid.InventoryTagResult;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last {@code capacity} inventory rounds, for an inventory thread to record
+ * into while UI code reads. Recording claims a sequence number and publishes an
+ * immutable copy of the round into its slot, overwriting the oldest; readers
+ * take no lock either, and skip a slot whose sequence number shows it was
+ * overwritten or not yet published while they walked past it. Memory is bounded
+ * by the capacity however long the inventory runs.
+ *
+ * <p>Besides snapshots it answers rolling rates over the last seconds, from the
+ * time each round was recorded.
+ */
+public final class RoundStatsRing implements Iterable<InventoryTagResult> {
+
+    // Indices into the sums of sum().
+    private static final int READS = 0;
+    private static final int NEW_TAGS = 1;
+    private static final int CRC_ERRORS = 2;
+    private static final int RX_BYTES = 3;
+    private static final int SUMS = 4;
+
+    private static final class Entry {
+        final long seq;
+        final long recordedNanos;
+        final InventoryTagResult round;
+
+        Entry(long seq, long recordedNanos, InventoryTagResult round) {
+            this.seq = seq;
+            this.recordedNanos = recordedNanos;
+            this.round = round;
+        }
+    }
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong next = new AtomicLong();
+    private volatile long floor = 0;
+
+    public RoundStatsRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /** Records a copy of {@code round}; the caller may reuse it afterwards. */
+    public void add(InventoryTagResult round) {
+        long seq = this.next.getAndIncrement();
+        this.slots.set((int) (seq % this.capacity), new Entry(seq, System.nanoTime(), copyOf(round)));
+    }
+
+    /** Rounds recorded since creation or the last {@link #clear()}, including those overwritten. */
+    public long recorded() {
+        return this.next.get() - this.floor;
+    }
+
+    /** Rounds currently held, at most the capacity. */
+    public int size() {
+        return (int) Math.min(this.capacity, recorded());
+    }
+
+    /** Forgets every round recorded so far. */
+    public void clear() {
+        this.floor = this.next.get();
+    }
+
+    /** Copies of the rounds held, oldest first. */
+    public List<InventoryTagResult> snapshot() {
+        long end = this.next.get();
+        long start = Math.max(this.floor, end - this.capacity);
+        List<InventoryTagResult> out = new ArrayList<>((int) (end - start));
+        for (long s = start; s < end; s++) {
+            Entry e = this.slots.get((int) (s % this.capacity));
+            if (e != null && e.seq == s) {
+                out.add(copyOf(e.round));
+            }
+        }
+        return out;
+    }
+
+    /** Iterates over a {@link #snapshot()}, so it never fails on concurrent recording. */
+    @Override
+    public Iterator<InventoryTagResult> iterator() {
+        return snapshot().iterator();
+    }
+
+    /** Tag reads per second over the last {@code windowMs}. */
+    public double readsPerSecond(long windowMs) {
+        long[] sums = new long[SUMS];
+        long covered = sum(windowMs, System.nanoTime(), sums);
+        return covered > 0 ? sums[READS] * 1e9 / covered : 0;
+    }
+
+    /** Tags seen for the first time per second over the last {@code windowMs}. */
+    public double newTagsPerSecond(long windowMs) {
+        long[] sums = new long[SUMS];
+        long covered = sum(windowMs, System.nanoTime(), sums);
+        return covered > 0 ? sums[NEW_TAGS] * 1e9 / covered : 0;
+    }
+
+    /** Share of frames that failed their CRC over the last {@code windowMs}, 0 to 1. */
+    public double crcErrorRate(long windowMs) {
+        long[] sums = new long[SUMS];
+        sum(windowMs, System.nanoTime(), sums);
+        long frames = sums[READS] + sums[CRC_ERRORS];
+        return frames > 0 ? (double) sums[CRC_ERRORS] / frames : 0;
+    }
+
+    /** Bytes received from the module per second over the last {@code windowMs}. */
+    public double rxBytesPerSecond(long windowMs) {
+        long[] sums = new long[SUMS];
+        long covered = sum(windowMs, System.nanoTime(), sums);
+        return covered > 0 ? sums[RX_BYTES] * 1e9 / covered : 0;
+    }
+
+    /**
+     * Adds up the rounds recorded within the window into {@code sums} and returns
+     * the nanoseconds they cover: the whole window, or less when the history is
+     * shorter.
+     */
+    long sum(long windowMs, long nowNanos, long[] sums) {
+        long horizon = nowNanos - windowMs * 1_000_000L;
+        long end = this.next.get();
+        long start = Math.max(this.floor, end - this.capacity);
+        long oldest = nowNanos;
+        for (long s = end - 1; s >= start; s--) {
+            Entry e = this.slots.get((int) (s % this.capacity));
+            if (e == null || e.seq != s) {
+                continue;
+            }
+            if (e.recordedNanos < horizon) {
+                break;
+            }
+            sums[READS] += e.round.nCount;
+            sums[NEW_TAGS] += e.round.NewNum;
+            sums[CRC_ERRORS] += e.round.nCrcErrors;
+            sums[RX_BYTES] += e.round.nRxBytes;
+            oldest = e.recordedNanos - e.round.nTime * 1_000_000L;
+        }
+        return nowNanos - Math.max(horizon, oldest);
+    }
+
+    private static InventoryTagResult copyOf(InventoryTagResult r) {
+        InventoryTagResult c = new InventoryTagResult();
+        c.NewNum = r.NewNum;
+        c.QValue = r.QValue;
+        c.TotalTime = r.TotalTime;
+        c.nCount = r.nCount;
+        c.nCrcErrors = r.nCrcErrors;
+        c.nRxBytes = r.nRxBytes;
+        c.nTime = r.nTime;
+        c.result = r.result;
+        c.speed = r.speed;
+        return c;
+    }
+}
@@ -0,0 +1,84 @@
+package com.rfid.trans;
+
+import com.rfid.serialport.SerialPort;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.InvalidParameterException;
+
+/** {@link Transport} over a tty device through the native {@link SerialPort}. */
+public class SerialTransport implements Transport {
+    private SerialPort mSerialPort = null;
+    private InputStream mInStream = null;
+    private OutputStream mOutStream = null;
+    private volatile boolean open = false;
+
+    @Override
+    public int open(String port, int baudRate) {
+        try {
+            this.mSerialPort = new SerialPort(new File(port), baudRate, 0);
+        } catch (IOException | SecurityException | InvalidParameterException unused) {
+        }
+        SerialPort serialPort = this.mSerialPort;
+        if (serialPort == null) {
+            return -1;
+        }
+        this.mInStream = serialPort.getInputStream();
+        this.mOutStream = serialPort.getOutputStream();
+        this.open = true;
+        return 0;
+    }
+
+    @Override
+    public int close() {
+        this.open = false;
+        if (this.mInStream != null) {
+            try {
+                SerialPort serialPort = this.mSerialPort;
+                if (serialPort != null) {
+                    serialPort.close();
+                    this.mSerialPort = null;
+                }
+                this.mInStream.close();
+                this.mOutStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len) {
+        OutputStream out = this.mOutStream;
+        if (!this.open || out == null) {
+            return -1;
+        }
+        try {
+            out.write(b, off, len);
+            return 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len, int timeoutMs) throws IOException {
+        SerialPort port = this.mSerialPort;
+        InputStream in = this.mInStream;
+        if (!this.open || port == null || in == null) {
+            return -1;
+        }
+        if (!port.poll(timeoutMs)) {
+            return 0;
+        }
+        return in.read(b, off, len);
+    }
+}
@@ -0,0 +1,246 @@
+package com.rfid.trans;
+
+import com.rfid.InventoryTagResult;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes new EPCs into tags identified by TID, as the tags come into the field.
+ * Tags are discovered with EPC+TID inventory rounds (see
+ * {@link BaseReader#Inventory_G2} with TidLen), swept with
+ * {@link InventoryScheduler.Strategy#COUNT_ONCE} so a tag answers once per sweep
+ * and finished tags stop taking air time. Every tag seen whose TID has a pending
+ * job is written by TID mask with {@link BaseReader#WriteEpcByMask}, which keeps
+ * the tag's own PC bits and changes only the length field, then read back the same
+ * way. A job is done once the read-back EPC and PC length match; a
+ * failed write or verify is retried by mask, without waiting to see the tag again,
+ * after an exponential backoff, up to {@code maxAttempts}. A tag that already
+ * carries its target EPC, e.g. because the acknowledgement of an earlier write was
+ * lost, is only verified.
+ *
+ * <p>Not thread-safe; runs on the thread that owns the reader. The reader's tag
+ * callback is invoked for the inventory rounds as usual, so callers that do not
+ * want these reads reported should clear it first.
+ */
+public class TagCommissioner {
+
+    /** Status of a write that was acknowledged but read back different. */
+    public static final int STATUS_VERIFY_FAILED = 0x100;
+
+    static final int BACKOFF_BASE_MS = 50;
+    static final int BACKOFF_MAX_MS = 2000;
+    static final int WRITE_TIMEOUT_MS = 1000;
+    static final int READ_TIMEOUT_MS = 500;
+    private static final int MEM_EPC = 1;
+    private static final int MEM_TID = 2;
+    private static final int SCAN_TIME = 3;
+
+    public interface Listener {
+        /** Final outcome of one job: status 0 once the tag verified with its new EPC. */
+        void onTagWritten(byte[] tid, byte[] epc, int status, int attempts);
+
+        /** After every write attempt and at the end. */
+        void onProgress(Progress progress);
+    }
+
+    /** Job totals so far. */
+    public static class Progress {
+        public int total;
+        public int encoded;
+        public int failed;
+        public int attempts;
+        public int verifyFailures;
+        public int rounds;
+        public long elapsedMs;
+
+        /** Tags encoded and verified per minute. */
+        public double tagsPerMinute() {
+            return this.elapsedMs > 0 ? this.encoded * 60_000.0 / this.elapsedMs : 0;
+        }
+    }
+
+    private static final class Job {
+        final EpcKey key;
+        final byte[] tid;
+        final byte[] epc;
+        /**
+         * PC word followed by the EPC. The PC's length field (bits 15..11) is set
+         * here; its other bits are taken from the tag on every write.
+         */
+        final byte[] pcEpc;
+        int attempts = 0;
+        int lastStatus = 0;
+        long notBeforeNanos = 0;
+        boolean seen = false;
+        boolean alreadyWritten = false;
+
+        Job(byte[] tid, byte[] epc) {
+            this.key = EpcKey.of(tid);
+            this.tid = tid;
+            this.epc = epc;
+            this.pcEpc = new byte[epc.length + 2];
+            this.pcEpc[0] = (byte) ((epc.length / 2) << 3);
+            System.arraycopy(epc, 0, this.pcEpc, 2, epc.length);
+        }
+    }
+
+    private final BaseReader reader;
+    private final byte address;
+    private final byte[] cmd = new byte[256];
+    private final byte[] readBack = new byte[128];
+    private final byte[] errorCode = new byte[1];
+    private final byte[] inventoryData = new byte[8192];
+    private byte[] password = new byte[4];
+
+    public TagCommissioner(BaseReader reader, byte address) {
+        this.reader = reader;
+        this.address = address;
+    }
+
+    /**
+     * Writes {@code epcs.get(i)} into the tag with TID {@code tids.get(i)}. TIDs must
+     * all have the length of the first; EPCs an even length of up to 62 bytes.
+     * Returns when every job is encoded or failed, or once {@code cancellation}
+     * says so (checked between tags).
+     */
+    public Progress run(List<byte[]> tids, List<byte[]> epcs, byte[] password, int maxAttempts, Listener listener,
+            TagMemoryReader.Cancellation cancellation) {
+        this.password = password;
+        Progress progress = new Progress();
+        progress.total = tids.size();
+        int tidBytes = tids.isEmpty() ? 0 : tids.get(0).length;
+        Map<EpcKey, Job> pending = new HashMap<>();
+        for (int i = 0; i < tids.size(); i++) {
+            byte[] tid = tids.get(i);
+            byte[] epc = epcs.get(i);
+            if (tid.length != tidBytes || tidBytes % 2 != 0 || epc.length == 0 || epc.length % 2 != 0
+                    || epc.length > 62) {
+                progress.failed++;
+                listener.onTagWritten(tid, epc, 0xFF, 0);
+                continue;
+            }
+            Job job = new Job(tid, epc);
+            pending.put(job.key, job);
+        }
+        QController qController = new QController(true, 4, QController.MIN_Q, QController.MAX_Q);
+        InventoryScheduler scheduler = new InventoryScheduler(InventoryScheduler.Strategy.COUNT_ONCE, 2);
+        InventoryTagResult round = new InventoryTagResult();
+        List<Job> seen = new ArrayList<>();
+        int[] tagCount = new int[1];
+        int[] dataLength = new int[1];
+        long start = System.nanoTime();
+        while (!pending.isEmpty() && !cancellation.isCancelled()) {
+            int q = qController.currentQ();
+            long roundStart = System.nanoTime();
+            this.reader.Inventory_G2(this.address, (byte) q, (byte) scheduler.session(), (byte) 0,
+                    (byte) (tidBytes / 2), scheduler.target(), (byte) 0, SCAN_TIME, this.inventoryData, tagCount,
+                    dataLength);
+            progress.rounds++;
+            round.nTime = (System.nanoTime() - roundStart) / 1_000_000L;
+            round.nCount = tagCount[0];
+            round.QValue = q;
+            round.NewNum = collectSeen(this.inventoryData, dataLength[0], tidBytes, pending, seen);
+            qController.update(round, SCAN_TIME);
+            scheduler.onRound(round);
+
+            for (int k = 0; k < seen.size() && !cancellation.isCancelled(); k++) {
+                Job job = seen.get(k);
+                if (System.nanoTime() < job.notBeforeNanos) {
+                    continue;
+                }
+                attempt(job, progress);
+                if (job.lastStatus == 0 || job.attempts >= maxAttempts) {
+                    pending.remove(job.key);
+                    seen.remove(k--);
+                    if (job.lastStatus == 0) {
+                        progress.encoded++;
+                    } else {
+                        progress.failed++;
+                    }
+                    listener.onTagWritten(job.tid, job.epc, job.lastStatus, job.attempts);
+                } else {
+                    long backoffMs = Math.min(BACKOFF_MAX_MS, (long) BACKOFF_BASE_MS << (job.attempts - 1));
+                    job.notBeforeNanos = System.nanoTime() + backoffMs * 1_000_000L;
+                }
+                progress.elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+                listener.onProgress(progress);
+            }
+        }
+        progress.elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        listener.onProgress(progress);
+        return progress;
+    }
+
+    /**
+     * Queues the jobs of tags in {@code data}, the records of one EPC+TID round, that
+     * were not seen before; returns how many.
+     */
+    private static int collectSeen(byte[] data, int end, int tidBytes, Map<EpcKey, Job> pending, List<Job> seen) {
+        int found = 0;
+        int p = 0;
+        while (p < end) {
+            int dataLen = data[p] & 0xFF;
+            boolean hasTid = (dataLen & 0x80) != 0;
+            dataLen &= 0x7F;
+            int record = p;
+            p += dataLen + 2;
+            if (!hasTid || dataLen < tidBytes) {
+                continue;
+            }
+            int epcLen = dataLen - tidBytes;
+            Job job = pending.get(EpcKey.of(data, record + 1 + epcLen, tidBytes));
+            if (job == null || job.seen) {
+                continue;
+            }
+            job.seen = true;
+            job.alreadyWritten = epcLen == job.epc.length && regionEquals(data, record + 1, job.epc, 0, epcLen);
+            seen.add(job);
+            found++;
+        }
+        return found;
+    }
+
+    /**
+     * One write (skipped while the tag is known to carry its EPC already) and
+     * read-back; leaves 0 in lastStatus only if verified.
+     */
+    private void attempt(Job job, Progress progress) {
+        job.attempts++;
+        progress.attempts++;
+        int words = job.pcEpc.length / 2;
+        int tidBits = job.tid.length * 8;
+        if (!job.alreadyWritten) {
+            int status = this.reader.WriteEpcByMask(this.address, MEM_TID, 0, tidBits, job.tid, 0, job.pcEpc,
+                    this.password, this.cmd, this.errorCode, WRITE_TIMEOUT_MS);
+            if (status != 0) {
+                job.lastStatus = status;
+                return;
+            }
+        }
+        int status = this.reader.ReadTagMemoryByMask(this.address, MEM_TID, 0, tidBits, job.tid, 0,
+                MEM_EPC, 1, words, this.password, this.cmd, this.readBack, 0, this.errorCode, READ_TIMEOUT_MS);
+        if (status != 0) {
+            job.lastStatus = status;
+            return;
+        }
+        job.alreadyWritten = false;
+        // Only the PC's length field is ours; the tag may own the other PC bits.
+        boolean verified = (this.readBack[0] & 0xF8) == (job.pcEpc[0] & 0xF8)
+                && regionEquals(this.readBack, 2, job.pcEpc, 2, job.epc.length);
+        if (!verified) {
+            progress.verifyFailures++;
+        }
+        job.lastStatus = verified ? 0 : STATUS_VERIFY_FAILED;
+    }
+
+    private static boolean regionEquals(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
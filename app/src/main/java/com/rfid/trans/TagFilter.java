@@ -0,0 +1,129 @@
+package com.rfid.trans;
+
+import java.util.Arrays;
+
+/**
+ * A run of EPC bits a tag must carry to be read: the mask of a Gen2 Select, which
+ * the module sends ahead of each inventory round so that other tags never answer
+ * (see {@link BaseReader#Inventory_G2ByMask}), and the same test applied to reads
+ * in software where the module cannot select (see {@link BaseReader#SetTagFilter}).
+ * Bit 0 is the first bit of the EPC, i.e. bit 0x20 of the EPC bank after the
+ * StoredCRC and PC words. Immutable.
+ */
+public final class TagFilter {
+
+    public static final int MEM_EPC = 1;
+    /** Bank bit address of the first EPC bit. */
+    public static final int EPC_BANK_OFFSET = 0x20;
+    /** Longest mask the Select of the inventory command carries. */
+    public static final int MAX_BITS = 255;
+
+    /** SGTIN-96 header. */
+    public static final int HEADER_SGTIN_96 = 0x30;
+    // SGTIN partition: company prefix bits by partition value, for 12 down to 6 digits.
+    private static final int[] PARTITION_PREFIX_BITS = {40, 37, 34, 30, 27, 24, 20};
+    /** First EPC bit of the SGTIN partition; header (8) and filter (3) come before it. */
+    private static final int SGTIN_PARTITION_BIT = 11;
+
+    private final int epcBitOffset;
+    private final int bits;
+    private final byte[] mask;
+
+    /**
+     * Tags whose EPC has the first {@code bits} bits of {@code mask} (most significant
+     * bit first) from EPC bit {@code epcBitOffset}.
+     */
+    public TagFilter(int epcBitOffset, int bits, byte[] mask) {
+        if (epcBitOffset < 0 || bits <= 0 || bits > MAX_BITS || mask.length * 8 < bits) {
+            throw new IllegalArgumentException("mask of " + bits + " bits at " + epcBitOffset);
+        }
+        this.epcBitOffset = epcBitOffset;
+        this.bits = bits;
+        this.mask = Arrays.copyOf(mask, (bits + 7) / 8);
+    }
+
+    /** Tags whose EPC starts with the 8-bit {@code header}, e.g. {@link #HEADER_SGTIN_96}. */
+    public static TagFilter epcHeader(int header) {
+        return new TagFilter(0, 8, new byte[] {(byte) header});
+    }
+
+    /**
+     * SGTIN-96 tags of the GS1 company prefix {@code digits} (6 to 12 digits): matches
+     * the partition and the prefix, whatever the header's filter value.
+     */
+    public static TagFilter sgtinCompanyPrefix(String digits) {
+        int partition = 12 - digits.length();
+        if (partition < 0 || partition >= PARTITION_PREFIX_BITS.length || !digits.chars().allMatch(Character::isDigit)) {
+            throw new IllegalArgumentException("company prefix " + digits);
+        }
+        int prefixBits = PARTITION_PREFIX_BITS[partition];
+        int bits = 3 + prefixBits;
+        long value = ((long) partition << prefixBits) | Long.parseLong(digits);
+        byte[] mask = new byte[(bits + 7) / 8];
+        // Left-align the value in the mask.
+        long aligned = value << (mask.length * 8 - bits);
+        for (int i = mask.length - 1; i >= 0; i--) {
+            mask[i] = (byte) aligned;
+            aligned >>>= 8;
+        }
+        return new TagFilter(SGTIN_PARTITION_BIT, bits, mask);
+    }
+
+    public int epcBitOffset() {
+        return this.epcBitOffset;
+    }
+
+    /** Bit address of the mask in the EPC bank, for the Select. */
+    public int bankBitAddress() {
+        return EPC_BANK_OFFSET + this.epcBitOffset;
+    }
+
+    public int bits() {
+        return this.bits;
+    }
+
+    /** Writes the {@code (bits + 7) / 8} mask bytes to {@code dst} at {@code off}; returns their number. */
+    public int copyMask(byte[] dst, int off) {
+        System.arraycopy(this.mask, 0, dst, off, this.mask.length);
+        return this.mask.length;
+    }
+
+    /** Whether the EPC at {@code epc[off, off + len)} matches. */
+    public boolean matches(byte[] epc, int off, int len) {
+        return this.epcBitOffset + this.bits <= len * 8
+                && bitsEqual(epc, off * 8 + this.epcBitOffset, this.mask, 0, this.bits);
+    }
+
+    /** Whether {@code bits} bits of {@code a} from bit {@code aBit} equal those of {@code b} from bit {@code bBit}. */
+    public static boolean bitsEqual(byte[] a, int aBit, byte[] b, int bBit, int bits) {
+        for (int i = 0; i < bits; i++) {
+            int x = (a[(aBit + i) >>> 3] >>> (7 - ((aBit + i) & 7))) & 1;
+            int y = (b[(bBit + i) >>> 3] >>> (7 - ((bBit + i) & 7))) & 1;
+            if (x != y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TagFilter)) {
+            return false;
+        }
+        TagFilter other = (TagFilter) o;
+        return this.epcBitOffset == other.epcBitOffset && this.bits == other.bits
+                && Arrays.equals(this.mask, other.mask);
+    }
+
+    @Override
+    public int hashCode() {
+        return (this.epcBitOffset * 31 + this.bits) * 31 + Arrays.hashCode(this.mask);
+    }
+
+    /** E.g. {@code EPC[11+43]=...} with the mask in hex. */
+    @Override
+    public String toString() {
+        return "EPC[" + this.epcBitOffset + "+" + this.bits + "]=" + HexCodec.toHex(this.mask);
+    }
+}
@@ -0,0 +1,164 @@
+package com.rfid.trans;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the same memory range (TID, user, ...) from every tag of a population, one
+ * {@link BaseReader#ReadTagMemory} per tag. The module serves one command at a time,
+ * so the next command goes out as soon as the previous reply is decoded, built in
+ * the same reused buffer, with no hex round trips in between.
+ *
+ * <p>Reply timeouts adapt to the link: a smoothed round-trip time and its deviation
+ * are kept as TCP does, and the timeout is {@code srtt + 4 * rttvar}, clamped to
+ * {@link #MIN_TIMEOUT_MS}..{@link #MAX_TIMEOUT_MS}, so a lost reply costs tens of
+ * milliseconds rather than the legacy 3 s. Tags that fail a pass are retried after
+ * it, when the field may have settled, for up to {@code maxPasses} passes.
+ *
+ * <p>Not thread-safe; runs on the thread that owns the reader, which must not be
+ * inventorying at the same time.
+ */
+public class TagMemoryReader {
+
+    public static final int MEM_RESERVED = 0;
+    public static final int MEM_EPC = 1;
+    public static final int MEM_TID = 2;
+    public static final int MEM_USER = 3;
+
+    /** Module status for a tag that did not answer the access. */
+    public static final int STATUS_NO_TAG = 0xFB;
+
+    static final int MIN_TIMEOUT_MS = 30;
+    static final int MAX_TIMEOUT_MS = 3000;
+
+    public interface Listener {
+        /**
+         * Final outcome for one tag: status 0 with its memory in {@code data}, or the
+         * last status once its passes are used up ({@code data} is then null).
+         */
+        void onTagMemory(byte[] epc, int status, byte[] data, int attempts);
+
+        /** After every tag attempted. */
+        void onProgress(Progress progress);
+    }
+
+    /** Job totals so far. */
+    public static class Progress {
+        public int total;
+        public int read;
+        public int failed;
+        public int pass;
+        public int attempts;
+        public int timeouts;
+        public int timeoutMs;
+        public long elapsedMs;
+
+        /** Tags completed (read or given up) per second. */
+        public double tagsPerSecond() {
+            return this.elapsedMs > 0 ? (this.read + this.failed) * 1000.0 / this.elapsedMs : 0;
+        }
+    }
+
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private final BaseReader reader;
+    private final byte address;
+    private final byte[] cmd = new byte[256];
+    private final byte[] errorCode = new byte[1];
+    private double srttMs = -1;
+    private double rttVarMs = 0;
+
+    public TagMemoryReader(BaseReader reader, byte address) {
+        this.reader = reader;
+        this.address = address;
+    }
+
+    /**
+     * Reads {@code words} words from {@code wordPtr} of bank {@code mem} on every tag
+     * in {@code epcs} and returns the totals. Stops early, between tags, once
+     * {@code cancellation} says so.
+     */
+    public Progress run(List<byte[]> epcs, int mem, int wordPtr, int words, byte[] password, int maxPasses,
+            Listener listener, Cancellation cancellation) {
+        Progress progress = new Progress();
+        progress.total = epcs.size();
+        byte[] out = new byte[words * 2];
+        int[] pendingIdx = new int[epcs.size()];
+        int[] lastStatus = new int[epcs.size()];
+        int pending = 0;
+        for (int i = 0; i < epcs.size(); i++) {
+            byte[] epc = epcs.get(i);
+            if (epc.length % 2 != 0 || epc.length + 13 > this.cmd.length) {
+                progress.failed++;
+                listener.onTagMemory(epc, 0xFF, null, 0);
+                continue;
+            }
+            pendingIdx[pending++] = i;
+        }
+        long start = System.nanoTime();
+        for (int pass = 1; pass <= maxPasses && pending > 0; pass++) {
+            progress.pass = pass;
+            int retry = 0;
+            for (int k = 0; k < pending; k++) {
+                if (cancellation.isCancelled()) {
+                    return progress;
+                }
+                int i = pendingIdx[k];
+                byte[] epc = epcs.get(i);
+                int timeout = timeoutMs();
+                long sent = System.nanoTime();
+                int status = this.reader.ReadTagMemory(this.address, epc, 0, epc.length, mem, wordPtr, words,
+                        password, this.cmd, out, 0, this.errorCode, timeout);
+                long rtt = (System.nanoTime() - sent) / 1_000_000L;
+                progress.attempts++;
+                if (status == 48) {
+                    progress.timeouts++;
+                    // Back off so a slow link is not mistaken for a lossy one.
+                    this.srttMs = Math.min(MAX_TIMEOUT_MS, Math.max(this.srttMs, timeout));
+                } else {
+                    sampleRtt(rtt);
+                }
+                lastStatus[i] = status;
+                if (status == 0) {
+                    progress.read++;
+                    listener.onTagMemory(epc, 0, Arrays.copyOf(out, out.length), pass);
+                } else {
+                    pendingIdx[retry++] = i;
+                }
+                progress.timeoutMs = timeoutMs();
+                progress.elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+                listener.onProgress(progress);
+            }
+            pending = retry;
+        }
+        for (int k = 0; k < pending; k++) {
+            int i = pendingIdx[k];
+            progress.failed++;
+            listener.onTagMemory(epcs.get(i), lastStatus[i], null, maxPasses);
+        }
+        progress.elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        listener.onProgress(progress);
+        return progress;
+    }
+
+    private void sampleRtt(long rttMs) {
+        if (this.srttMs < 0) {
+            this.srttMs = rttMs;
+            this.rttVarMs = rttMs / 2.0;
+        } else {
+            this.rttVarMs = 0.75 * this.rttVarMs + 0.25 * Math.abs(this.srttMs - rttMs);
+            this.srttMs = 0.875 * this.srttMs + 0.125 * rttMs;
+        }
+    }
+
+    /** Reply timeout for the next command. */
+    int timeoutMs() {
+        if (this.srttMs < 0) {
+            return MAX_TIMEOUT_MS;
+        }
+        long t = Math.round(this.srttMs + 4 * this.rttVarMs);
+        return (int) Math.max(MIN_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, t));
+    }
+}
@@ -0,0 +1,27 @@
+package com.rfid.trans;
+
+import java.io.IOException;
+
+/**
+ * Byte link between {@link MessageTran} and a reader module. The production
+ * implementation is {@link SerialTransport}; the tests run the driver over an emulator
+ * of the module that speaks the same framed protocol in-process.
+ */
+public interface Transport {
+    /** Returns 0 on success, -1 if the link could not be opened. */
+    int open(String port, int baudRate);
+
+    int close();
+
+    boolean isOpen();
+
+    /** Returns 0 once all {@code len} bytes are handed to the link, -1 on failure. */
+    int write(byte[] b, int off, int len);
+
+    /**
+     * Blocks for at most {@code timeoutMs} until data is available and reads it into
+     * {@code b}. Returns the number of bytes read, 0 on timeout and -1 once the link
+     * has been closed.
+     */
+    int read(byte[] b, int off, int len, int timeoutMs) throws IOException;
+}
@@ -8,9 +8,11 @@ import com.seretail.inventarios.data.local.dao.InventarioDao
 import com.seretail.inventarios.data.local.dao.LoteDao
 import com.seretail.inventarios.data.local.dao.ProductoDao
 import com.seretail.inventarios.data.local.dao.RegistroDao
+import com.seretail.inventarios.data.local.dao.RfidSessionStatsDao
 import com.seretail.inventarios.data.local.dao.RfidTagDao
 import com.seretail.inventarios.data.local.dao.SucursalDao
 import com.seretail.inventarios.data.local.dao.SyncQueueDao
+import com.seretail.inventarios.data.local.dao.TagWriteDao
 import com.seretail.inventarios.data.local.dao.UserDao
 import com.seretail.inventarios.data.local.entity.ActivoFijoRegistroEntity
 import com.seretail.inventarios.data.local.entity.ActivoFijoSessionEntity
@@ -23,7 +25,9 @@ import com.seretail.inventarios.data.local.entity.ProductoEntity
 import com.seretail.inventarios.data.local.entity.StatusEntity
 import com.seretail.inventarios.data.local.entity.SucursalEntity
 import com.seretail.inventarios.data.local.entity.SyncQueueEntity
+import com.seretail.inventarios.data.local.entity.TagWriteEntity
 import com.seretail.inventarios.data.local.entity.TraspasoEntity
+import com.seretail.inventarios.data.local.entity.RfidSessionStatsEntity
 import com.seretail.inventarios.data.local.entity.RfidTagEntity
 import com.seretail.inventarios.data.local.entity.UserEntity
 
@@ -43,8 +47,10 @@ import com.seretail.inventarios.data.local.entity.UserEntity
         StatusEntity::class,
         SyncQueueEntity::class,
         RfidTagEntity::class,
+        TagWriteEntity::class,
+        RfidSessionStatsEntity::class,
     ],
-    version = 6,
+    version = 11,
     exportSchema = true,
 )
 abstract class AppDatabase : RoomDatabase() {
@@ -58,4 +64,6 @@ abstract class AppDatabase : RoomDatabase() {
     abstract fun registroDao(): RegistroDao
     abstract fun syncQueueDao(): SyncQueueDao
     abstract fun rfidTagDao(): RfidTagDao
+    abstract fun tagWriteDao(): TagWriteDao
+    abstract fun rfidSessionStatsDao(): RfidSessionStatsDao
 }
@@ -6,7 +6,7 @@ import androidx.sqlite.db.SupportSQLiteDatabase
 /**
  * Room database migrations for SER Inventarios.
  *
- * Current version: 6 (baseline — all prior versions used destructive migration).
+ * Current version: 11 (6 is the baseline — all prior versions used destructive migration).
  * All future schema changes MUST add a migration here and bump the version in AppDatabase.
  *
  * To add a migration:
@@ -28,17 +28,95 @@ object Migrations {
         }
     }
 
+    /** rfid_tags.tid: TID read together with the EPC. */
+    val MIGRATION_6_7 = object : Migration(6, 7) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE rfid_tags ADD COLUMN tid TEXT")
+        }
+    }
+
+    /** tag_writes: per-tag outcome of EPC commissioning by TID. */
+    val MIGRATION_7_8 = object : Migration(7, 8) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("""
+                CREATE TABLE IF NOT EXISTS `tag_writes` (
+                    `id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                    `session_id` INTEGER NOT NULL,
+                    `registro_id` INTEGER,
+                    `tid` TEXT NOT NULL,
+                    `epc` TEXT NOT NULL,
+                    `status` TEXT NOT NULL,
+                    `attempts` INTEGER NOT NULL,
+                    `error_code` INTEGER,
+                    `timestamp` TEXT NOT NULL
+                )
+            """.trimIndent())
+        }
+    }
+
+    /** rfid_session_stats: performance summary of every RFID scan. */
+    val MIGRATION_8_9 = object : Migration(8, 9) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("""
+                CREATE TABLE IF NOT EXISTS `rfid_session_stats` (
+                    `id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                    `session_id` INTEGER NOT NULL,
+                    `device` TEXT NOT NULL,
+                    `mode` TEXT NOT NULL,
+                    `power_dbm` INTEGER NOT NULL,
+                    `duration_ms` INTEGER NOT NULL,
+                    `total_reads` INTEGER NOT NULL,
+                    `unique_tags` INTEGER NOT NULL,
+                    `avg_reads_per_second` REAL NOT NULL,
+                    `peak_reads_per_second` REAL NOT NULL,
+                    `crc_errors` INTEGER NOT NULL,
+                    `latency_p50_ms` INTEGER,
+                    `latency_p90_ms` INTEGER,
+                    `latency_p99_ms` INTEGER,
+                    `dropped_reads` INTEGER NOT NULL,
+                    `deferred_batches` INTEGER NOT NULL,
+                    `db_lag_p90_ms` INTEGER,
+                    `timestamp` TEXT NOT NULL
+                )
+            """.trimIndent())
+        }
+    }
+
+    /** rfid_session_stats: reader outages during the scan and the time they cost. */
+    val MIGRATION_9_10 = object : Migration(9, 10) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE rfid_session_stats ADD COLUMN outages INTEGER NOT NULL DEFAULT 0")
+            db.execSQL("ALTER TABLE rfid_session_stats ADD COLUMN downtime_ms INTEGER NOT NULL DEFAULT 0")
+        }
+    }
+
+    /** rfid_tags: one row per session and EPC, indexed for the batched read upserts. */
+    val MIGRATION_10_11 = object : Migration(10, 11) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            // Fold duplicates, if any, into the oldest row before the index forbids them.
+            db.execSQL("""
+                UPDATE rfid_tags SET
+                    read_count = (SELECT SUM(d.read_count) FROM rfid_tags d
+                                  WHERE d.session_id = rfid_tags.session_id AND d.epc = rfid_tags.epc),
+                    matched = (SELECT MAX(d.matched) FROM rfid_tags d
+                               WHERE d.session_id = rfid_tags.session_id AND d.epc = rfid_tags.epc)
+                WHERE id IN (SELECT MIN(id) FROM rfid_tags GROUP BY session_id, epc HAVING COUNT(*) > 1)
+            """.trimIndent())
+            db.execSQL("DELETE FROM rfid_tags WHERE id NOT IN (SELECT MIN(id) FROM rfid_tags GROUP BY session_id, epc)")
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_rfid_tags_session_id_epc` ON `rfid_tags` (`session_id`, `epc`)")
+        }
+    }
+
     // --- Future migrations go here ---
-    // Example:
-    // val MIGRATION_6_7 = object : Migration(6, 7) {
-    //     override fun migrate(db: SupportSQLiteDatabase) {
-    //         db.execSQL("ALTER TABLE productos ADD COLUMN nuevo_campo TEXT")
-    //     }
-    // }
 
     /** All migrations to register with Room. Add new migrations to this array. */
     val ALL: Array<Migration> = arrayOf(
         MIGRATION_1_6,
+        MIGRATION_6_7,
+        MIGRATION_7_8,
+        MIGRATION_8_9,
+        MIGRATION_9_10,
+        MIGRATION_10_11,
     )
 
     /**
@@ -1,5 +1,6 @@
 package com.seretail.inventarios.data.local.dao
 
+import androidx.room.ColumnInfo
 import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
@@ -18,6 +19,9 @@ interface ProductoDao {
     @Query("SELECT * FROM productos WHERE codigo_barras = :codigoBarras LIMIT 1")
     suspend fun findByBarcodeGlobal(codigoBarras: String): ProductoEntity?
 
+    @Query("SELECT id, codigo_barras FROM productos WHERE codigo_barras IN (:codigosBarras)")
+    suspend fun findIdsByBarcodesGlobal(codigosBarras: List<String>): List<BarcodeId>
+
     @Query("SELECT * FROM productos WHERE id = :id")
     suspend fun getById(id: Long): ProductoEntity?
 
@@ -62,3 +66,9 @@ interface ProductoDao {
     @Query("DELETE FROM productos")
     suspend fun deleteAll()
 }
+
+data class BarcodeId(
+    val id: Long,
+    @ColumnInfo(name = "codigo_barras")
+    val codigoBarras: String,
+)
@@ -0,0 +1,19 @@
+package com.seretail.inventarios.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.Query
+import com.seretail.inventarios.data.local.entity.RfidSessionStatsEntity
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface RfidSessionStatsDao {
+    @Query("SELECT * FROM rfid_session_stats WHERE session_id = :sessionId ORDER BY timestamp DESC")
+    fun observeBySession(sessionId: Long): Flow<List<RfidSessionStatsEntity>>
+
+    @Query("SELECT * FROM rfid_session_stats ORDER BY timestamp DESC LIMIT :limit")
+    suspend fun getRecent(limit: Int): List<RfidSessionStatsEntity>
+
+    @Insert
+    suspend fun insert(stats: RfidSessionStatsEntity): Long
+}
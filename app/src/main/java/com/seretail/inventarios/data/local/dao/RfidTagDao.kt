@@ -4,6 +4,7 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import androidx.room.Update
 import com.seretail.inventarios.data.local.entity.RfidTagEntity
 import kotlinx.coroutines.flow.Flow
@@ -16,6 +17,9 @@ interface RfidTagDao {
     @Query("SELECT * FROM rfid_tags WHERE session_id = :sessionId AND epc = :epc LIMIT 1")
     suspend fun findByEpc(sessionId: Long, epc: String): RfidTagEntity?
 
+    @Query("SELECT epc, matched FROM rfid_tags WHERE session_id = :sessionId")
+    suspend fun getStatesBySession(sessionId: Long): List<RfidTagState>
+
     @Query("SELECT COUNT(*) FROM rfid_tags WHERE session_id = :sessionId")
     suspend fun countBySession(sessionId: Long): Int
 
@@ -28,12 +32,52 @@ interface RfidTagDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insert(tag: RfidTagEntity): Long
 
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertNew(tags: List<RfidTagEntity>): List<Long>
+
     @Update
     suspend fun update(tag: RfidTagEntity)
 
+    /** Adds [reads] to the session's tag [epc]; returns 0 if there is no such tag. */
+    @Query("""
+        UPDATE rfid_tags
+        SET read_count = read_count + :reads, rssi = :rssi, tid = COALESCE(:tid, tid), timestamp = :timestamp,
+            matched = MAX(matched, :matched), matched_registro_id = COALESCE(:matchedRegistroId, matched_registro_id)
+        WHERE session_id = :sessionId AND epc = :epc
+    """)
+    suspend fun addReads(
+        sessionId: Long, epc: String, reads: Int, rssi: Int, tid: String?, timestamp: String,
+        matched: Boolean, matchedRegistroId: Long?,
+    ): Int
+
+    /**
+     * Stores a batch of reads in one transaction; each entity carries the reads
+     * since the last batch. Tags in [new] are inserted and those in [seen] have
+     * their counts added to the stored row; a tag in the wrong list, e.g. one
+     * deleted meanwhile, costs one statement more but ends up stored all the same.
+     */
+    @Transaction
+    suspend fun upsertReads(new: List<RfidTagEntity>, seen: List<RfidTagEntity>) {
+        suspend fun add(tag: RfidTagEntity): Int = addReads(
+            tag.sessionId, tag.epc, tag.readCount, tag.rssi, tag.tid, tag.timestamp, tag.matched, tag.matchedRegistroId,
+        )
+        val missing = seen.filter { add(it) == 0 }
+        val all = if (missing.isEmpty()) new else new + missing
+        if (all.isEmpty()) return
+        val ids = insertNew(all)
+        for (i in all.indices) {
+            if (ids[i] == -1L) add(all[i])
+        }
+    }
+
     @Query("DELETE FROM rfid_tags WHERE session_id = :sessionId")
     suspend fun deleteBySession(sessionId: Long)
 
     @Query("DELETE FROM rfid_tags")
     suspend fun deleteAll()
 }
+
+data class RfidTagState(
+    val epc: String,
+    val matched: Boolean,
+)
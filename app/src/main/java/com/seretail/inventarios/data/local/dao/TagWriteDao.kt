@@ -0,0 +1,47 @@
+package com.seretail.inventarios.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.seretail.inventarios.data.local.entity.TagWriteEntity
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface TagWriteDao {
+    @Query("SELECT * FROM tag_writes WHERE session_id = :sessionId ORDER BY timestamp DESC")
+    fun observeBySession(sessionId: Long): Flow<List<TagWriteEntity>>
+
+    /**
+     * Tags of the session read with their TID whose asset has a new tag number not
+     * yet written, i.e. with no successful write for that TID.
+     */
+    @Query("""
+        SELECT t.tid AS tid, r.tag_nuevo AS epc, r.id AS registroId
+        FROM rfid_tags t
+        JOIN activo_fijo_registros r ON r.session_id = t.session_id AND r.codigo_barras = t.epc
+        WHERE t.session_id = :sessionId
+          AND t.tid IS NOT NULL
+          AND r.tag_nuevo IS NOT NULL AND r.tag_nuevo != t.epc
+          AND NOT EXISTS (
+              SELECT 1 FROM tag_writes w
+              WHERE w.session_id = t.session_id AND w.tid = t.tid AND w.status = 'ok'
+          )
+    """)
+    suspend fun getPendingTargets(sessionId: Long): List<TagWriteTarget>
+
+    @Query("SELECT COUNT(*) FROM tag_writes WHERE session_id = :sessionId AND status = 'ok'")
+    suspend fun countWrittenBySession(sessionId: Long): Int
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insert(write: TagWriteEntity): Long
+
+    @Query("DELETE FROM tag_writes WHERE session_id = :sessionId")
+    suspend fun deleteBySession(sessionId: Long)
+}
+
+data class TagWriteTarget(
+    val tid: String,
+    val epc: String,
+    val registroId: Long,
+)
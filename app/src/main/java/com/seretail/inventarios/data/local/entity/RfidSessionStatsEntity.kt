@@ -0,0 +1,50 @@
+package com.seretail.inventarios.data.local.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/** Performance of one RFID scan, to compare devices and sites. */
+@Entity(tableName = "rfid_session_stats")
+data class RfidSessionStatsEntity(
+    @PrimaryKey(autoGenerate = true)
+    val id: Long = 0,
+    @ColumnInfo(name = "session_id")
+    val sessionId: Long,
+    /** Build.MANUFACTURER and Build.MODEL of the handheld. */
+    val device: String,
+    /** InventoryMode name actually used. */
+    val mode: String,
+    @ColumnInfo(name = "power_dbm")
+    val powerDbm: Int,
+    @ColumnInfo(name = "duration_ms")
+    val durationMs: Long,
+    @ColumnInfo(name = "total_reads")
+    val totalReads: Long,
+    @ColumnInfo(name = "unique_tags")
+    val uniqueTags: Int,
+    @ColumnInfo(name = "avg_reads_per_second")
+    val avgReadsPerSecond: Double,
+    @ColumnInfo(name = "peak_reads_per_second")
+    val peakReadsPerSecond: Double,
+    @ColumnInfo(name = "crc_errors")
+    val crcErrors: Long,
+    @ColumnInfo(name = "latency_p50_ms")
+    val latencyP50Ms: Long? = null,
+    @ColumnInfo(name = "latency_p90_ms")
+    val latencyP90Ms: Long? = null,
+    @ColumnInfo(name = "latency_p99_ms")
+    val latencyP99Ms: Long? = null,
+    @ColumnInfo(name = "dropped_reads")
+    val droppedReads: Long,
+    @ColumnInfo(name = "deferred_batches")
+    val deferredBatches: Long,
+    @ColumnInfo(name = "db_lag_p90_ms")
+    val dbLagP90Ms: Long? = null,
+    /** Reader stalls the scan reconnected from, and the time spent reconnecting. */
+    @ColumnInfo(defaultValue = "0")
+    val outages: Int = 0,
+    @ColumnInfo(name = "downtime_ms", defaultValue = "0")
+    val downtimeMs: Long = 0,
+    val timestamp: String,
+)
@@ -2,13 +2,19 @@ package com.seretail.inventarios.data.local.entity
 
 import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 
-@Entity(tableName = "rfid_tags")
+@Entity(
+    tableName = "rfid_tags",
+    indices = [Index(value = ["session_id", "epc"], unique = true)],
+)
 data class RfidTagEntity(
     @PrimaryKey(autoGenerate = true)
     val id: Long = 0,
     val epc: String,
+    /** TID bank, when the tag was read in an EPC+TID inventory. */
+    val tid: String? = null,
     val rssi: Int = 0,
     @ColumnInfo(name = "read_count")
     val readCount: Int = 1,
@@ -0,0 +1,26 @@
+package com.seretail.inventarios.data.local.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/** Outcome of writing [epc] into the tag with [tid] during commissioning. */
+@Entity(tableName = "tag_writes")
+data class TagWriteEntity(
+    @PrimaryKey(autoGenerate = true)
+    val id: Long = 0,
+    @ColumnInfo(name = "session_id")
+    val sessionId: Long,
+    @ColumnInfo(name = "registro_id")
+    val registroId: Long? = null,
+    val tid: String,
+    /** EPC the tag was to be written with. */
+    val epc: String,
+    /** "ok" once read back with [epc], otherwise "failed". */
+    val status: String,
+    val attempts: Int = 0,
+    /** Last module status of a failed write; see TagCommissioner. */
+    @ColumnInfo(name = "error_code")
+    val errorCode: Int? = null,
+    val timestamp: String,
+)
@@ -99,6 +99,7 @@ data class RfidTagUploadRequest(
 @JsonClass(generateAdapter = true)
 data class RfidTagDto(
     val epc: String,
+    val tid: String? = null,
     val rssi: Int,
     @Json(name = "read_count") val readCount: Int,
     val matched: Boolean,
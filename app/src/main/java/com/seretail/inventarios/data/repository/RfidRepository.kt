@@ -1,15 +1,41 @@
 package com.seretail.inventarios.data.repository
 
+import android.os.Build
+import android.util.Log
+import com.rfid.trans.EpcKey
+import com.rfid.trans.HexCodec
 import com.seretail.inventarios.data.local.dao.ProductoDao
+import com.seretail.inventarios.data.local.dao.RfidSessionStatsDao
 import com.seretail.inventarios.data.local.dao.RfidTagDao
+import com.seretail.inventarios.data.local.dao.TagWriteDao
+import com.seretail.inventarios.data.local.entity.RfidSessionStatsEntity
 import com.seretail.inventarios.data.local.entity.RfidTagEntity
+import com.seretail.inventarios.data.local.entity.TagWriteEntity
 import com.seretail.inventarios.data.remote.ApiService
 import com.seretail.inventarios.data.remote.dto.RfidTagDto
 import com.seretail.inventarios.data.remote.dto.RfidTagUploadRequest
+import com.seretail.inventarios.rfid.CommissionEvent
+import com.seretail.inventarios.rfid.FilterGain
+import com.seretail.inventarios.rfid.InventoryMode
+import com.seretail.inventarios.rfid.PowerGovernorState
+import com.seretail.inventarios.rfid.ReaderProfile
+import com.seretail.inventarios.rfid.RfidFilter
 import com.seretail.inventarios.rfid.RfidManager
 import com.seretail.inventarios.rfid.RfidState
+import com.seretail.inventarios.rfid.RfidTelemetryState
+import com.seretail.inventarios.rfid.TagBatch
+import com.seretail.inventarios.rfid.TagMemoryEvent
+import com.seretail.inventarios.util.PreferencesManager
+import kotlinx.coroutines.CoroutineExceptionHandler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.filterIsInstance
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.onEach
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
 import javax.inject.Inject
@@ -19,60 +45,161 @@ import javax.inject.Singleton
 class RfidRepository @Inject constructor(
     private val rfidManager: RfidManager,
     private val rfidTagDao: RfidTagDao,
+    private val tagWriteDao: TagWriteDao,
+    private val sessionStatsDao: RfidSessionStatsDao,
     private val productoDao: ProductoDao,
     private val apiService: ApiService,
+    private val preferencesManager: PreferencesManager,
 ) {
     val rfidState: StateFlow<RfidState> = rfidManager.state
-    val incomingTags = rfidManager.tags
+    /** Batches of reads in arrival order; see [RfidManager.tagBatches]. */
+    val incomingTags: Flow<TagBatch> = rfidManager.tagBatches
+    val powerState: StateFlow<PowerGovernorState> = rfidManager.powerState
+    val telemetry: StateFlow<RfidTelemetryState> = rfidManager.telemetry
+    /** Final figures of each scan as it stops; see [saveSessionSummary]. */
+    val sessionSummaries: Flow<RfidTelemetryState> = rfidManager.sessionSummaries
+    val filterGain: StateFlow<FilterGain?> = rfidManager.filterGain
+
+    /** Background writes; a failure is logged rather than taking the app down. */
+    private val scope = CoroutineScope(
+        SupervisorJob() + Dispatchers.IO + CoroutineExceptionHandler { _, e ->
+            Log.e("RfidRepository", "Background write failed", e)
+        },
+    )
+    private val tagWriter = RfidTagWriter(rfidTagDao, productoDao, scope, ::now, rfidManager::onBatchPersisted)
+    /** Tag counts of the session reads go to, kept current by [recordReads] without querying. */
+    val tagCounts: StateFlow<RfidTagCounts> = tagWriter.counts
 
     fun observeTags(sessionId: Long): Flow<List<RfidTagEntity>> =
         rfidTagDao.observeBySession(sessionId)
 
-    fun connect(serialPort: String = "/dev/ttyS4", baudRate: Int = 115200) {
-        rfidManager.connect(serialPort, baudRate)
+    /**
+     * Connects where the reader answered last time on this device model, probing
+     * for it when it is not there any more, and remembers where it was found.
+     */
+    suspend fun connect() {
+        val saved = ReaderProfile.decode(preferencesManager.rfidReaderProfile(Build.MODEL).first())
+        val found = rfidManager.connect(saved) ?: return
+        if (found != saved) preferencesManager.saveRfidReaderProfile(Build.MODEL, found.encode())
     }
 
     fun disconnect() = rfidManager.disconnect()
-    fun startInventory() = rfidManager.startInventory()
+    fun startInventory(mode: InventoryMode = InventoryMode.CONTINUOUS) = rfidManager.startInventory(mode)
     fun stopInventory() = rfidManager.stopInventory()
     fun setPower(power: Int) = rfidManager.setPower(power)
     fun getPower(): Int = rfidManager.getPower()
+    fun getDroppedReads(): Long = rfidManager.getDroppedReads()
+    fun getExpiredCommands(): Long = rfidManager.getExpiredCommands()
 
-    suspend fun saveOrUpdateTag(sessionId: Long, epc: String, rssi: Int): RfidTagEntity {
-        val existing = rfidTagDao.findByEpc(sessionId, epc)
-        return if (existing != null) {
-            val updated = existing.copy(
-                readCount = existing.readCount + 1,
-                rssi = rssi,
-                timestamp = now(),
-            )
-            rfidTagDao.update(updated)
-            updated
-        } else {
-            val tag = RfidTagEntity(
-                epc = epc,
-                rssi = rssi,
+    /** Reads only tags passing [filter]; see [RfidManager.setTagFilter]. An invalid filter reads every tag. */
+    fun setTagFilter(filter: RfidFilter) = rfidManager.setTagFilter(filter.toTagFilter())
+
+    /** See [RfidManager.measureFilterGain]. */
+    suspend fun measureFilterGain(): FilterGain? = rfidManager.measureFilterGain()
+
+    /** Makes [sessionId] the session of [recordReads] and [tagCounts]. */
+    suspend fun openTagSession(sessionId: Long) = tagWriter.open(sessionId)
+
+    /**
+     * Stores a batch from [incomingTags] in [sessionId], write-behind: it reaches
+     * rfid_tags within [RfidTagWriter.FLUSH_INTERVAL_MS], and its DB write lag
+     * goes to [telemetry] then. Returns how many of its tags are new to the session.
+     */
+    suspend fun recordReads(sessionId: Long, batch: TagBatch): Int = tagWriter.add(sessionId, batch)
+
+    /** Stores the reads [recordReads] still holds, e.g. when a scan stops. */
+    suspend fun flushTags() = tagWriter.flush()
+
+    fun observeSessionStats(sessionId: Long): Flow<List<RfidSessionStatsEntity>> =
+        sessionStatsDao.observeBySession(sessionId)
+
+    suspend fun saveSessionSummary(sessionId: Long, summary: RfidTelemetryState) {
+        if (summary.totalReads == 0L && summary.elapsedMs == 0L) return
+        sessionStatsDao.insert(
+            RfidSessionStatsEntity(
                 sessionId = sessionId,
+                device = "${Build.MANUFACTURER} ${Build.MODEL}",
+                mode = summary.mode?.name ?: "",
+                powerDbm = rfidManager.getPower(),
+                durationMs = summary.elapsedMs,
+                totalReads = summary.totalReads,
+                uniqueTags = summary.uniqueTags,
+                avgReadsPerSecond = if (summary.elapsedMs > 0) summary.totalReads * 1000.0 / summary.elapsedMs else 0.0,
+                peakReadsPerSecond = summary.peakReadsPerSecond,
+                crcErrors = summary.crcErrors,
+                latencyP50Ms = summary.roundLatencyP50Ms,
+                latencyP90Ms = summary.roundLatencyP90Ms,
+                latencyP99Ms = summary.roundLatencyP99Ms,
+                droppedReads = summary.droppedReads,
+                deferredBatches = summary.deferredBatches,
+                dbLagP90Ms = summary.dbWriteLagP90Ms,
+                outages = summary.outages,
+                downtimeMs = summary.downtimeMs,
                 timestamp = now(),
             )
-            val id = rfidTagDao.insert(tag)
-            tag.copy(id = id)
-        }
+        )
     }
 
-    suspend fun matchTagToAsset(tag: RfidTagEntity): Boolean {
-        val product = productoDao.findByBarcodeGlobal(tag.epc)
-        if (product != null) {
-            rfidTagDao.update(tag.copy(matched = true, matchedRegistroId = product.id))
-            return true
+    /** Reads a memory bank range from every tag of the last inventory; see [RfidManager.readTagMemory]. */
+    fun readTagMemory(bank: Int, wordPtr: Int, words: Int): Flow<TagMemoryEvent> =
+        rfidManager.readTagMemory(bank, wordPtr, words)
+
+    fun observeTagWrites(sessionId: Long): Flow<List<TagWriteEntity>> =
+        tagWriteDao.observeBySession(sessionId)
+
+    /**
+     * Writes the new tag number (tag_nuevo) of every asset of the session into its
+     * tag, found by the TID read with its old EPC, and records each outcome in
+     * tag_writes. Tags already written successfully are skipped, so it can be run
+     * again for the ones that failed or were not in the field. Emits the progress.
+     */
+    fun commissionSession(sessionId: Long): Flow<CommissionEvent.Progress> = flow {
+        val jobs = ArrayList<Pair<ByteArray, ByteArray>>()
+        val registros = HashMap<EpcKey, Long>()
+        for (target in tagWriteDao.getPendingTargets(sessionId)) {
+            val tid = EpcKey.fromHex(target.tid)
+            val epc = HexCodec.fromHex(target.epc.trim())
+            if (tid == null || epc == null) {
+                // Not a tag number that can be written; left for the user to correct.
+                tagWriteDao.insert(
+                    TagWriteEntity(
+                        sessionId = sessionId,
+                        registroId = target.registroId,
+                        tid = target.tid,
+                        epc = target.epc,
+                        status = "failed",
+                        errorCode = 0xFF,
+                        timestamp = now(),
+                    )
+                )
+                continue
+            }
+            jobs += tid.toByteArray() to epc
+            registros[tid] = target.registroId
         }
-        return false
+        if (jobs.isEmpty()) return@flow
+        rfidManager.commissionTags(jobs)
+            .onEach { event ->
+                if (event is CommissionEvent.Result) {
+                    tagWriteDao.insert(
+                        TagWriteEntity(
+                            sessionId = sessionId,
+                            registroId = registros[event.tid],
+                            tid = event.tid.toString(),
+                            epc = event.epc.toString(),
+                            status = if (event.status == 0) "ok" else "failed",
+                            attempts = event.attempts,
+                            errorCode = event.status.takeIf { it != 0 },
+                            timestamp = now(),
+                        )
+                    )
+                }
+            }
+            .filterIsInstance<CommissionEvent.Progress>()
+            .collect { emit(it) }
     }
 
-    suspend fun countTags(sessionId: Long): Int = rfidTagDao.countBySession(sessionId)
-    suspend fun countMatched(sessionId: Long): Int = rfidTagDao.countMatchedBySession(sessionId)
-
-    suspend fun clearSession(sessionId: Long) = rfidTagDao.deleteBySession(sessionId)
+    suspend fun clearSession(sessionId: Long) = tagWriter.clear(sessionId)
 
     suspend fun uploadPendingTags(): Result<Int> {
         val unsynced = rfidTagDao.getUnsynced()
@@ -88,6 +215,7 @@ class RfidRepository @Inject constructor(
                     tags = tags.map {
                         RfidTagDto(
                             epc = it.epc,
+                            tid = it.tid,
                             rssi = it.rssi,
                             readCount = it.readCount,
                             matched = it.matched,
@@ -0,0 +1,251 @@
+package com.seretail.inventarios.data.repository
+
+import android.util.Log
+import com.seretail.inventarios.data.local.dao.ProductoDao
+import com.seretail.inventarios.data.local.dao.RfidTagDao
+import com.seretail.inventarios.data.local.entity.RfidTagEntity
+import com.seretail.inventarios.rfid.TagBatch
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/** Tags of [sessionId] as stored plus those still to be, and how many matched a product. */
+data class RfidTagCounts(val sessionId: Long? = null, val total: Int = 0, val matched: Int = 0)
+
+/**
+ * Write-behind stage between the reader's batches and rfid_tags. Reads are
+ * summed per EPC in memory and flushed every [FLUSH_INTERVAL_MS], or as soon as
+ * [MAX_PENDING_TAGS] distinct tags are waiting, in one transaction
+ * ([RfidTagDao.upsertReads]); product matches are looked up once per tag, for a
+ * whole flush at a time. The database sees one statement per distinct tag per
+ * flush however many times each was read.
+ *
+ * The EPCs of the open session are kept in memory, so new tags and [counts]
+ * are known the moment a batch arrives, without querying. Memory state is
+ * guarded by this object's lock, held only to append or swap; [io] orders the
+ * flushes and the session changes around them. A flush the database refuses
+ * goes back to pending and is retried [FLUSH_INTERVAL_MS] later.
+ */
+internal class RfidTagWriter(
+    private val rfidTagDao: RfidTagDao,
+    private val productoDao: ProductoDao,
+    private val scope: CoroutineScope,
+    private val timestamp: () -> String,
+    /** Called once a batch given to [add] is in the database; never for one [clear] drops. */
+    private val onPersisted: (TagBatch) -> Unit,
+) {
+    private class Pending(var reads: Int, var rssi: Int, var tid: String?, val new: Boolean)
+
+    private val io = Mutex()
+    private var sessionId: Long? = null
+    /** EPCs of the session, stored or pending, and whether each matched a product. */
+    private val known = HashMap<String, Boolean>()
+    /** EPCs already looked up among the products since the session was opened. */
+    private val looked = HashSet<String>()
+    private var matched = 0
+    private var pending = LinkedHashMap<String, Pending>()
+    private var pendingBatches = ArrayList<TagBatch>()
+    private var flushJob: Job? = null
+
+    private val _counts = MutableStateFlow(RfidTagCounts())
+    val counts: StateFlow<RfidTagCounts> = _counts
+
+    /**
+     * Makes [sessionId] the session reads go to, flushing the previous one's,
+     * and loads what it has stored. Nothing to do if it is already open.
+     */
+    suspend fun open(sessionId: Long) {
+        if (synchronized(this) { this.sessionId } == sessionId) return
+        flush()
+        io.withLock {
+            val stored = rfidTagDao.getStatesBySession(sessionId)
+            synchronized(this) {
+                this.sessionId = sessionId
+                known.clear()
+                looked.clear()
+                for (tag in stored) known[tag.epc] = tag.matched
+                matched = stored.count { it.matched }
+                publish()
+            }
+        }
+    }
+
+    /**
+     * Buffers [batch] for [sessionId], opening it first if needed. Returns how
+     * many of its tags the session had never seen.
+     */
+    suspend fun add(sessionId: Long, batch: TagBatch): Int {
+        open(sessionId)
+        var newTags = 0
+        var flushNow = false
+        synchronized(this) {
+            // Changed by another caller meanwhile: that one's session wins.
+            if (this.sessionId != sessionId) return 0
+            for (read in batch.tags) {
+                val epc = read.epcId ?: continue
+                val tid = read.tid
+                val entry = pending[epc]
+                if (entry != null) {
+                    entry.reads += read.readCount
+                    entry.rssi = read.rssi
+                    if (tid != null) entry.tid = tid
+                    continue
+                }
+                val isNew = !known.containsKey(epc)
+                if (isNew) {
+                    known[epc] = false
+                    newTags++
+                }
+                pending[epc] = Pending(read.readCount, read.rssi, tid, isNew)
+            }
+            pendingBatches.add(batch)
+            if (newTags > 0) publish()
+            if (pending.size >= MAX_PENDING_TAGS) {
+                flushNow = true
+            } else {
+                scheduleFlush()
+            }
+        }
+        if (flushNow) scope.launch { flush() }
+        return newTags
+    }
+
+    /** Writes whatever is pending. */
+    suspend fun flush() {
+        io.withLock {
+            val session: Long
+            val reads: Map<String, Pending>
+            val batches: List<TagBatch>
+            val lookup: List<String>
+            synchronized(this) {
+                // Not cancelled: it may be the job running this; a late one finds nothing to do.
+                flushJob = null
+                session = sessionId ?: return
+                reads = pending
+                batches = pendingBatches
+                if (reads.isEmpty() && batches.isEmpty()) return
+                pending = LinkedHashMap()
+                pendingBatches = ArrayList()
+                lookup = reads.keys.filter { known[it] != true && looked.add(it) }
+            }
+            val products = HashMap<String, Long>()
+            try {
+                for (chunk in lookup.chunked(MAX_QUERY_ARGS)) {
+                    for (product in productoDao.findIdsByBarcodesGlobal(chunk)) {
+                        products.putIfAbsent(product.codigoBarras, product.id)
+                    }
+                }
+                val now = timestamp()
+                val new = ArrayList<RfidTagEntity>()
+                val seen = ArrayList<RfidTagEntity>()
+                for ((epc, read) in reads) {
+                    val productId = products[epc]
+                    val tag = RfidTagEntity(
+                        epc = epc,
+                        tid = read.tid,
+                        rssi = read.rssi,
+                        readCount = read.reads,
+                        sessionId = session,
+                        timestamp = now,
+                        matched = productId != null,
+                        matchedRegistroId = productId,
+                    )
+                    if (read.new) new.add(tag) else seen.add(tag)
+                }
+                if (new.isNotEmpty() || seen.isNotEmpty()) rfidTagDao.upsertReads(new, seen)
+            } catch (e: Exception) {
+                requeue(session, reads, batches, lookup)
+                if (e is CancellationException) throw e
+                Log.e("RfidTagWriter", "Flush of ${reads.size} tags failed, retrying", e)
+                synchronized(this) { scheduleFlush() }
+                return
+            }
+            if (products.isNotEmpty()) {
+                synchronized(this) {
+                    if (sessionId == session) {
+                        for (epc in products.keys) {
+                            if (known.put(epc, true) != true) matched++
+                        }
+                        publish()
+                    }
+                }
+            }
+            batches.forEach(onPersisted)
+        }
+    }
+
+    /**
+     * Drops what is pending and stored for [sessionId]. The pending batches are
+     * not passed to onPersisted: they never reach the database, so they have no
+     * write lag to report.
+     */
+    suspend fun clear(sessionId: Long) {
+        io.withLock {
+            synchronized(this) {
+                if (this.sessionId == sessionId) {
+                    flushJob?.cancel()
+                    flushJob = null
+                    pending = LinkedHashMap()
+                    pendingBatches = ArrayList()
+                    known.clear()
+                    looked.clear()
+                    matched = 0
+                    publish()
+                }
+            }
+            rfidTagDao.deleteBySession(sessionId)
+        }
+    }
+
+    /** Under the lock: flushes in [FLUSH_INTERVAL_MS] unless a flush is already due. */
+    private fun scheduleFlush() {
+        if (flushJob != null) return
+        flushJob = scope.launch {
+            delay(FLUSH_INTERVAL_MS)
+            flush()
+        }
+    }
+
+    /**
+     * Puts back what a failed flush of [session] had taken, ahead of what arrived
+     * meanwhile, so the reads are summed as if it had never run.
+     */
+    private fun requeue(session: Long, reads: Map<String, Pending>, batches: List<TagBatch>, lookup: List<String>) {
+        synchronized(this) {
+            if (sessionId != session) return
+            val merged = LinkedHashMap(reads)
+            for ((epc, later) in pending) {
+                val entry = merged[epc]
+                if (entry == null) {
+                    merged[epc] = later
+                } else {
+                    entry.reads += later.reads
+                    entry.rssi = later.rssi
+                    if (later.tid != null) entry.tid = later.tid
+                }
+            }
+            pending = merged
+            pendingBatches = ArrayList(batches).apply { addAll(pendingBatches) }
+            looked.removeAll(lookup.toSet())
+        }
+    }
+
+    private fun publish() {
+        _counts.value = RfidTagCounts(sessionId, known.size, matched)
+    }
+
+    companion object {
+        /** Longest a read waits to be stored; the tag list lags the reader by as much. */
+        const val FLUSH_INTERVAL_MS = 500L
+        /** Distinct tags that make a flush due at once. */
+        const val MAX_PENDING_TAGS = 256
+        /** Below SQLite's 999 host parameters per statement on older Android versions. */
+        private const val MAX_QUERY_ARGS = 500
+    }
+}
@@ -1,7 +1,9 @@
 package com.seretail.inventarios.di
 
 import com.seretail.inventarios.data.local.AppDatabase
+import com.seretail.inventarios.data.local.dao.RfidSessionStatsDao
 import com.seretail.inventarios.data.local.dao.RfidTagDao
+import com.seretail.inventarios.data.local.dao.TagWriteDao
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -13,4 +15,10 @@ object RfidModule {
 
     @Provides
     fun provideRfidTagDao(db: AppDatabase): RfidTagDao = db.rfidTagDao()
+
+    @Provides
+    fun provideTagWriteDao(db: AppDatabase): TagWriteDao = db.tagWriteDao()
+
+    @Provides
+    fun provideRfidSessionStatsDao(db: AppDatabase): RfidSessionStatsDao = db.rfidSessionStatsDao()
 }
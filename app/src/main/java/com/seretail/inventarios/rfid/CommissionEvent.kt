@@ -0,0 +1,17 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.EpcKey
+
+sealed class CommissionEvent {
+    /** Final outcome for one tag: [status] 0 once it read back with [epc]. */
+    data class Result(val tid: EpcKey, val epc: EpcKey, val status: Int, val attempts: Int) : CommissionEvent()
+
+    data class Progress(
+        val total: Int,
+        val encoded: Int,
+        val failed: Int,
+        val attempts: Int,
+        val tagsPerMinute: Double,
+        val done: Boolean,
+    ) : CommissionEvent()
+}
@@ -0,0 +1,17 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.ReadTag
+
+enum class InventoryMode {
+    /** One Inventory_G2 round per command; works on every module. */
+    POLLING,
+
+    /** Module in active work mode, streaming tags with no gap between rounds. */
+    CONTINUOUS,
+
+    /**
+     * Polling rounds that also read each tag's TID (TidPtr/TidLen), so [ReadTag.tid]
+     * is filled without a second ReadData pass. Active mode streams EPC only.
+     */
+    EPC_AND_TID,
+}
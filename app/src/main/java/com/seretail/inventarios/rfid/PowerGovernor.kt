@@ -0,0 +1,114 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.BaseReader
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+
+data class PowerGovernorState(
+    /** Power actually applied to the module, in dBm. */
+    val powerDbm: Int,
+    /** Last module temperature read, in °C; null until the first sample. */
+    val temperatureC: Int? = null,
+    /** 0 = unthrottled, up to [PowerGovernor.MAX_LEVEL]. */
+    val level: Int = 0,
+    /** Fraction of time the RF is allowed on. */
+    val dutyCycle: Float = 1f,
+) {
+    val throttled: Boolean get() = level > 0
+}
+
+/**
+ * Keeps long inventories inside the module's thermal budget. Every
+ * [Config.sampleIntervalMs] the inventory loop lets it read the module temperature;
+ * above [Config.warmC] it moves one throttle level up, above [Config.hotC] two,
+ * and once the module has cooled [Config.hysteresisC] below warm it steps back
+ * down. The first levels shave RF power a couple of dB at a time, which costs only
+ * the weakest tags; the last ones keep power and insert off-time between
+ * [Config.onWindowMs] reading windows instead. Steps are at most two levels per
+ * sample, so reads/s degrade gradually instead of the module faulting.
+ *
+ * [sample] and [ensurePower] only run inside commands on the reader's
+ * [com.rfid.trans.ReaderActor], so they drive the reader without racing other
+ * commands; the inventory loop reads the timing from its own thread.
+ */
+class PowerGovernor(private val config: Config = Config()) {
+
+    data class Config(
+        val sampleIntervalMs: Long = 10_000,
+        val warmC: Int = 60,
+        val hotC: Int = 70,
+        val hysteresisC: Int = 6,
+        val minPowerDbm: Int = 10,
+        val onWindowMs: Long = 2_000,
+    )
+
+    private val _state = MutableStateFlow(PowerGovernorState(powerDbm = 0))
+    val state: StateFlow<PowerGovernorState> = _state
+
+    @Volatile private var lastSampleMs = 0L
+    private var appliedPower = -1
+
+    fun isSampleDue(nowMs: Long): Boolean =
+        lastSampleMs == 0L || nowMs - lastSampleMs >= config.sampleIntervalMs
+
+    /** Off-time to insert after each [Config.onWindowMs] of reading, or 0. */
+    val offTimeMs: Long
+        get() {
+            val duty = LEVELS[_state.value.level].second
+            return if (duty >= 1f) 0 else (config.onWindowMs * (1 - duty) / duty).toLong()
+        }
+
+    val onWindowMs: Long get() = config.onWindowMs
+
+    /** Reads the temperature, moves the throttle level and applies the resulting power. */
+    fun sample(reader: BaseReader, requestedPower: Int, nowMs: Long) {
+        lastSampleMs = nowMs
+        val raw = ByteArray(2)
+        val current = _state.value
+        if (reader.MeasureTemperature(0.toByte(), raw) != 0) {
+            ensurePower(reader, requestedPower)
+            return
+        }
+        val celsius = (raw[1].toInt() and 0xFF).let { if (raw[0].toInt() == 0) -it else it }
+        val level = when {
+            celsius >= config.hotC -> current.level + 2
+            celsius >= config.warmC -> current.level + 1
+            celsius <= config.warmC - config.hysteresisC -> current.level - 1
+            else -> current.level
+        }.coerceIn(0, MAX_LEVEL)
+        _state.value = current.copy(temperatureC = celsius, level = level, dutyCycle = LEVELS[level].second)
+        ensurePower(reader, requestedPower)
+    }
+
+    /** Applies [requestedPower] less the current cut, if that is not what the module already has. */
+    fun ensurePower(reader: BaseReader, requestedPower: Int) {
+        val cut = LEVELS[_state.value.level].first
+        val power = if (requestedPower <= config.minPowerDbm) requestedPower
+        else (requestedPower - cut).coerceAtLeast(config.minPowerDbm)
+        if (power == appliedPower) return
+        if (reader.SetRfPower(0.toByte(), power.toByte()) == 0) {
+            appliedPower = power
+            _state.value = _state.value.copy(powerDbm = power)
+        }
+    }
+
+    /** Forgets what was applied, e.g. after a reconnect, so the next call re-sends the power. */
+    fun reset() {
+        lastSampleMs = 0L
+        appliedPower = -1
+    }
+
+    companion object {
+        /** Per level: dB taken off the requested power, and RF duty cycle. */
+        private val LEVELS = listOf(
+            0 to 1f,
+            2 to 1f,
+            4 to 1f,
+            6 to 1f,
+            6 to 0.75f,
+            6 to 0.5f,
+            6 to 0.33f,
+        )
+        val MAX_LEVEL = LEVELS.size - 1
+    }
+}
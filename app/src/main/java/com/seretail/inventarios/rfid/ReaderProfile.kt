@@ -0,0 +1,32 @@
+package com.seretail.inventarios.rfid
+
+/**
+ * Where the reader module answered: serial device, baud rate and its address.
+ * Saved per device model, so the next connect goes straight there instead of
+ * probing; see [RfidManager.connect].
+ */
+data class ReaderProfile(
+    val port: String,
+    val baudRate: Int,
+    val comAddr: Int = 0,
+    /** Whether [baudRate] is the outcome of [com.rfid.trans.LinkSpeed.negotiate], not to be negotiated again. */
+    val linkNegotiated: Boolean = false,
+) {
+    /** For the preferences; see [decode]. */
+    fun encode(): String = "$port|$baudRate|$comAddr|$linkNegotiated"
+
+    companion object {
+        /** The profile [encode] gave [s], or null when [s] is null or not one. */
+        fun decode(s: String?): ReaderProfile? {
+            val parts = s?.split('|') ?: return null
+            // Profiles saved before link negotiation have three fields.
+            if (parts.size !in 3..4 || parts[0].isEmpty()) return null
+            return ReaderProfile(
+                port = parts[0],
+                baudRate = parts[1].toIntOrNull() ?: return null,
+                comAddr = parts[2].toIntOrNull() ?: return null,
+                linkNegotiated = if (parts.size == 3) false else parts[3].toBooleanStrictOrNull() ?: return null,
+            )
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.seretail.inventarios.rfid
+
+/** Why [ReaderWatchdog] gave up on the link. */
+enum class ReaderStall {
+    /** Consecutive commands got no complete reply. */
+    TIMEOUTS,
+
+    /** Nothing received for a while, and the module did not answer when asked. */
+    SILENCE,
+
+    /** Consecutive rounds came in garbled, with more CRC errors than valid reads. */
+    CRC_STORM,
+}
+
+/**
+ * Tells a stalled reader from a quiet field. The inventory loop reports every
+ * command's outcome; once the module browns out or the link stalls the
+ * commands keep failing in the same way, and the watchdog names the stall for
+ * the loop to reconnect on.
+ *
+ * A polling round always gets a reply, an empty field included, so a round
+ * without one makes [needsPing] true at once: a short query tells a lost frame
+ * from a module that is gone far sooner than more full-length rounds would.
+ * [Config.maxTimeouts] such rounds in a row are a stall even if the pings are
+ * answered. A stream stays silent over an empty field, so only
+ * [Config.silenceMs] without a byte asks for a ping. The stall is declared when
+ * the module then does not answer ([onPing]). Only called from the inventory loop.
+ */
+internal class ReaderWatchdog(private val config: Config = Config()) {
+
+    data class Config(
+        val maxTimeouts: Int = 3,
+        val silenceMs: Long = 3_000,
+        val maxGarbledRounds: Int = 5,
+    )
+
+    private var timeouts = 0
+    private var garbled = 0
+    private var unanswered = false
+    private var lastRxMs = 0L
+
+    /** Starts over, e.g. on a fresh link. */
+    fun reset(nowMs: Long) {
+        timeouts = 0
+        garbled = 0
+        unanswered = false
+        lastRxMs = nowMs
+    }
+
+    /** A polling round ended with [status], [rxBytes] received, [crcErrors] and [reads] valid tags. */
+    fun onRound(status: Int, rxBytes: Long, crcErrors: Int, reads: Int, nowMs: Long): ReaderStall? {
+        unanswered = status == NO_REPLY
+        timeouts = if (unanswered) timeouts + 1 else 0
+        if (timeouts >= config.maxTimeouts) return ReaderStall.TIMEOUTS
+        return onData(rxBytes, crcErrors, reads, nowMs)
+    }
+
+    /** A stream read received [rxBytes], with [crcErrors] and [reads] valid tags. */
+    fun onStreamRead(rxBytes: Long, crcErrors: Int, reads: Int, nowMs: Long): ReaderStall? =
+        onData(rxBytes, crcErrors, reads, nowMs)
+
+    /**
+     * Whether the last round went unanswered or nothing has arrived for
+     * [Config.silenceMs], so the module should be asked whether it is there.
+     */
+    fun needsPing(nowMs: Long): Boolean = unanswered || nowMs - lastRxMs >= config.silenceMs
+
+    /** Outcome of the question [needsPing] asked for. */
+    fun onPing(answered: Boolean, nowMs: Long): ReaderStall? {
+        if (!answered) return ReaderStall.SILENCE
+        unanswered = false
+        lastRxMs = nowMs
+        return null
+    }
+
+    private fun onData(rxBytes: Long, crcErrors: Int, reads: Int, nowMs: Long): ReaderStall? {
+        if (rxBytes > 0) lastRxMs = nowMs
+        garbled = if (crcErrors > reads) garbled + 1 else 0
+        return if (garbled >= config.maxGarbledRounds) ReaderStall.CRC_STORM else null
+    }
+
+    companion object {
+        /** Status of a command whose reply never came complete. */
+        const val NO_REPLY = 48
+    }
+}
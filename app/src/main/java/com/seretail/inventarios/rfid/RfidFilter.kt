@@ -0,0 +1,76 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.HexCodec
+import com.rfid.trans.TagFilter
+
+enum class RfidFilterType {
+    NONE,
+
+    /** First byte of the EPC, in hex, e.g. `30` for SGTIN-96. */
+    EPC_HEADER,
+
+    /** GS1 company prefix of SGTIN-96 EPCs, 6 to 12 digits. */
+    COMPANY_PREFIX,
+
+    /** [RfidFilter.lengthBits] bits of hex mask from EPC bit [RfidFilter.offsetBits]. */
+    BIT_MASK,
+}
+
+/**
+ * Which tags an empresa's inventories read, as configured and saved in the
+ * preferences. [toTagFilter] turns it into the mask the reader selects on.
+ */
+data class RfidFilter(
+    val type: RfidFilterType = RfidFilterType.NONE,
+    val value: String = "",
+    val offsetBits: Int = 0,
+    val lengthBits: Int = 0,
+) {
+    /** The mask, or null with [RfidFilterType.NONE] or when [value] does not make one. */
+    fun toTagFilter(): TagFilter? = try {
+        when (type) {
+            RfidFilterType.NONE -> null
+            RfidFilterType.EPC_HEADER -> TagFilter.epcHeader(value.trim().toInt(16))
+            RfidFilterType.COMPANY_PREFIX -> TagFilter.sgtinCompanyPrefix(value.trim())
+            RfidFilterType.BIT_MASK -> HexCodec.fromHex(value.trim())?.let { TagFilter(offsetBits, lengthBits, it) }
+        }
+    } catch (_: IllegalArgumentException) {
+        null
+    }
+
+    /** For the preferences; see [decode]. */
+    fun encode(): String = "${type.name}|$value|$offsetBits|$lengthBits"
+
+    companion object {
+        val NONE = RfidFilter()
+
+        /** The filter [encode] gave [s], or [NONE] when [s] is null or not one. */
+        fun decode(s: String?): RfidFilter {
+            val parts = s?.split('|') ?: return NONE
+            if (parts.size != 4) return NONE
+            val type = RfidFilterType.entries.firstOrNull { it.name == parts[0] } ?: return NONE
+            return RfidFilter(
+                type = type,
+                value = parts[1],
+                offsetBits = parts[2].toIntOrNull() ?: return NONE,
+                lengthBits = parts[3].toIntOrNull() ?: return NONE,
+            )
+        }
+    }
+}
+
+/**
+ * Reads per second of tags that pass the filter, over the same polling rounds
+ * with and without the Select, and the share of unselected reads that did not.
+ */
+data class FilterGain(
+    val ownReadsPerSecondUnfiltered: Double,
+    val ownReadsPerSecondFiltered: Double,
+    /** 0 to 1. */
+    val foreignShare: Double,
+    /** False when the module refused the Select and only software filtering was measured. */
+    val hardwareSelect: Boolean,
+) {
+    val gain: Double
+        get() = if (ownReadsPerSecondUnfiltered > 0) ownReadsPerSecondFiltered / ownReadsPerSecondUnfiltered else 0.0
+}
@@ -1,85 +1,241 @@
 package com.seretail.inventarios.rfid
 
+import com.rfid.InventoryTagResult
 import com.rfid.trans.BaseReader
+import com.rfid.trans.EpcKey
+import com.rfid.trans.EpcTable
+import com.rfid.trans.HexCodec
+import com.rfid.trans.InventoryScheduler
+import com.rfid.trans.LinkSpeed
+import com.rfid.trans.QController
 import com.rfid.trans.ReadTag
+import com.rfid.trans.ReaderActor
+import com.rfid.trans.ReaderActor.Priority
+import com.rfid.trans.ReaderInfo
+import com.rfid.trans.ReaderProbe
+import com.rfid.trans.SerialTransport
 import com.rfid.trans.TagCallback
+import com.rfid.trans.TagCommissioner
+import com.rfid.trans.TagFilter
+import com.rfid.trans.TagMemoryReader
+import com.rfid.trans.Transport
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.trySendBlocking
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
-import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.receiveAsFlow
+import kotlinx.coroutines.future.await
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import javax.inject.Inject
 import javax.inject.Singleton
 
 @Singleton
-class RfidManager @Inject constructor() {
+class RfidManager internal constructor(
+    private val transportFactory: () -> Transport,
+    private val governor: PowerGovernor = PowerGovernor(),
+) {
+
+    /** Production wiring: the module behind the device's UART. */
+    @Inject constructor() : this({ SerialTransport() })
 
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
 
     private val _state = MutableStateFlow<RfidState>(RfidState.Disconnected)
     val state: StateFlow<RfidState> = _state
 
-    private val _tags = MutableSharedFlow<ReadTag>(extraBufferCapacity = 256)
-    val tags: SharedFlow<ReadTag> = _tags
+    private val tagChannel = Channel<TagBatch>(BATCH_QUEUE_CAPACITY)
+    private val batcher = TagBatcher(tagChannel, MAX_PENDING_READS)
+    private val stats = RfidTelemetry(batcher)
+    private val summaryChannel = Channel<RfidTelemetryState>(SUMMARY_QUEUE_CAPACITY)
 
-    private var reader: BaseReader? = null
-    private var currentPower: Int = 20
-    private var inventoryJob: Job? = null
+    /**
+     * Tags in read order, one batch per polling round or per [BATCH_INTERVAL_MS] of
+     * continuous reading. Backed by a bounded channel: meant for a single collector.
+     */
+    val tagBatches: Flow<TagBatch> = tagChannel.receiveAsFlow()
 
-    fun connect(serialPort: String = "/dev/ttyS4", baudRate: Int = 115200) {
-        scope.launch {
-            try {
-                _state.value = RfidState.Connecting
-                val baseReader = BaseReader()
-                baseReader.SetCallBack(object : TagCallback {
-                    override fun tagCallback(tag: ReadTag?) {
-                        tag?.let {
-                            scope.launch { _tags.emit(it) }
-                        }
-                    }
+    /** Live figures of the current or last inventory, for the diagnostics panel. */
+    val telemetry: StateFlow<RfidTelemetryState> = stats.state
 
-                    override fun CRCErrorCallBack(i: Int): Int = 0
+    /** Final figures of every inventory once it stops, for saving; single collector. */
+    val sessionSummaries: Flow<RfidTelemetryState> = summaryChannel.receiveAsFlow()
 
-                    override fun FinishCallBack() {}
+    /** Runs every command to the connected reader, one at a time; see [command]. */
+    @Volatile private var actor: ReaderActor? = null
+    /** Where the connected module answered; reconnects after a stall go there first. */
+    @Volatile private var connectedProfile: ReaderProfile? = null
+    @Volatile private var currentPower: Int = 20
+    @Volatile private var adaptiveQ = true
+    @Volatile private var tagFilter: TagFilter? = null
+    /** The module refused the masked inventory; filtering is left to software until reconnecting. */
+    @Volatile private var selectRefused = false
+    /** Inventory or tag job holding the reader; replaced only through [replaceInventoryJob]. */
+    @Volatile private var inventoryJob: Job? = null
+    private val jobLock = Mutex()
 
-                    override fun tagCallbackFailed(i: Int): Int = 0
-                })
+    /** Distinct EPCs of the current inventory; repeat reads are counted here, not emitted. */
+    private val seenTags = EpcTable()
+    private val scheduler = InventoryScheduler(InventoryScheduler.Strategy.MONITOR, 2)
+    private val watchdog = ReaderWatchdog()
 
-                val result = baseReader.Connect(serialPort, baudRate, 0)
-                if (result == 0) {
-                    reader = baseReader
-                    _state.value = RfidState.Connected
-                } else {
-                    _state.value = RfidState.Error("No se pudo conectar al lector RFID (código: $result)")
+    /** Applied power, module temperature and throttle level, updated while inventorying. */
+    val powerState: StateFlow<PowerGovernorState> = governor.state
+
+    private val _filterGain = MutableStateFlow<FilterGain?>(null)
+    /** Last [measureFilterGain] result for the current filter; null until measured. */
+    val filterGain: StateFlow<FilterGain?> = _filterGain
+
+    private val tagCallback = object : TagCallback {
+        override fun tagCallback(tag: ReadTag?) {
+            tag?.let { batcher.add(it) }
+        }
+
+        override fun CRCErrorCallBack(i: Int): Int {
+            stats.onCrcErrors(i)
+            return 0
+        }
+
+        override fun FinishCallBack() {}
+
+        override fun tagCallbackFailed(i: Int): Int = 0
+    }
+
+    /**
+     * Connects to the module at [profile] if it still answers there, else probes
+     * the serial ports for it (see [ReaderProbe.find]), and brings its power to
+     * [getPower] in the same command. Unless [profile] holds a negotiated rate the
+     * link is raised to the fastest one that works (see [LinkSpeed.negotiate]).
+     * Returns where the module answered, for the caller to save and pass next time,
+     * or null when it was not found.
+     */
+    suspend fun connect(profile: ReaderProfile? = null): ReaderProfile? = scope.async {
+        try {
+            _state.value = RfidState.Connecting
+            selectRefused = false
+            // The old link holds the port and a reader thread: release both before opening again.
+            replaceInventoryJob(null)
+            actor?.let { release(it) }
+            val opened = locate(profile)
+            if (opened == null) {
+                _state.value = RfidState.Error("No se encontró el lector RFID en ningún puerto serie")
+                return@async null
+            }
+            actor = opened.first
+            _state.value = RfidState.Connected
+            connectedProfile
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            connectFailed(e)
+        } catch (e: UnsatisfiedLinkError) {
+            connectFailed(e)
+        } catch (e: ExceptionInInitializerError) {
+            connectFailed(e)
+        }
+    }.await()
+
+    /**
+     * The module at [profile], or wherever [ReaderProbe.find] finds it, opened as
+     * [open] does; sets [connectedProfile] and the telemetry's link rate.
+     */
+    private suspend fun locate(profile: ReaderProfile?): Pair<ReaderActor, ReaderInfo>? {
+        val opened = profile?.let { open(it.port, it.baudRate, IDENTIFY_ATTEMPTS, !it.linkNegotiated) }
+            ?: ReaderProbe { transportFactory() }.find(profile?.port)
+                ?.let { open(it.port, it.baudRate, IDENTIFY_ATTEMPTS, true) }
+            ?: return null
+        val info = opened.second
+        connectedProfile = ReaderProfile(info.port, info.baudRate, info.comAddr.toInt() and 0xFF, linkNegotiated = true)
+        stats.setLink(info.baudRate)
+        return opened
+    }
+
+    /**
+     * Opens [port] at [baudRate] and asks the module for its settings, up to
+     * [attempts] times, then, with [negotiate], raises the link rate and applies
+     * the power; one command, so the module is configured before anything else
+     * reaches it. Null, with nothing left open, when it did not answer.
+     */
+    private suspend fun open(
+        port: String,
+        baudRate: Int,
+        attempts: Int,
+        negotiate: Boolean,
+    ): Pair<ReaderActor, ReaderInfo>? {
+        val baseReader = BaseReader(transportFactory())
+        baseReader.SetCallBack(tagCallback)
+        val readerActor = ReaderActor(baseReader)
+        var info: ReaderInfo? = null
+        var opened = false
+        try {
+            readerActor.command(Priority.URGENT) { r ->
+                if (r.Connect(port, baudRate, 0) != 0) return@command -1
+                val answered = ReaderInfo.query(r, port, baudRate, ReaderProbe.REPLY_TIMEOUT_MS, attempts)
+                if (answered == null) {
+                    r.DisConnect()
+                    return@command 48
                 }
-            } catch (e: Throwable) {
-                val msg = when {
-                    e is UnsatisfiedLinkError ->
-                        "Lector RFID no disponible en este dispositivo"
-                    e is ExceptionInInitializerError ||
-                        e.message?.contains("SerialPort", ignoreCase = true) == true ->
-                        "No se detectó hardware RFID. Conecte el lector e intente nuevamente."
-                    else ->
-                        "No se pudo conectar al lector RFID. Verifique que el dispositivo tenga lector RFID."
+                val linked = if (negotiate) {
+                    // Null only when the module stopped answering at any rate; the port is closed then.
+                    LinkSpeed.negotiate(r, answered, LinkSpeed.UPGRADES) ?: return@command 48
+                } else {
+                    answered
                 }
-                _state.value = RfidState.Error(msg)
+                info = linked
+                // A refused setting is not worth failing the connect over: inventories apply the power again.
+                linked.configure(r, currentPower, ReaderInfo.KEEP, ReaderInfo.KEEP, ReaderInfo.KEEP, ReaderInfo.KEEP)
+                0
+            }
+            opened = info != null
+        } finally {
+            if (!opened) {
+                // Also when cancelled mid-command: the DisConnect runs once the command is done.
+                readerActor.submit(Priority.URGENT, ReaderActor.NO_DEADLINE) { it.DisConnect() }
+                readerActor.close()
             }
         }
+        return info?.let { readerActor to it }
+    }
+
+    /** Says why [connect] failed; [e] is an exception or a native library error. Null, for [connect] to return. */
+    private fun connectFailed(e: Throwable): ReaderProfile? {
+        val msg = when {
+            e is UnsatisfiedLinkError ->
+                "Lector RFID no disponible en este dispositivo"
+            e is ExceptionInInitializerError ||
+                e.message?.contains("SerialPort", ignoreCase = true) == true ->
+                "No se detectó hardware RFID. Conecte el lector e intente nuevamente."
+            else ->
+                "No se pudo conectar al lector RFID. Verifique que el dispositivo tenga lector RFID."
+        }
+        _state.value = RfidState.Error(msg)
+        return null
     }
 
     fun disconnect() {
         scope.launch {
             try {
-                inventoryJob?.cancel()
-                inventoryJob = null
-                reader?.DisConnect()
-                reader = null
+                replaceInventoryJob(null)
+                actor?.let { release(it) }
+                connectedProfile = null
                 _state.value = RfidState.Disconnected
             } catch (e: Exception) {
                 _state.value = RfidState.Disconnected
@@ -87,25 +243,120 @@ class RfidManager @Inject constructor() {
         }
     }
 
-    fun startInventory() {
+    /** Closes the link behind [a] and ends its thread. */
+    private suspend fun release(a: ReaderActor) {
+        actor = null
+        a.command(Priority.URGENT) { it.DisConnect() }
+        a.close()
+    }
+
+    /**
+     * Cancels the job holding the reader and waits for it to end, then starts [next],
+     * launched lazily, in its place. Serialized by [jobLock], so two callers cannot
+     * both cancel the old job and each run their own against the reader. If the
+     * caller is cancelled first, [next] is cancelled without having run.
+     */
+    private suspend fun replaceInventoryJob(next: Job?) {
+        try {
+            jobLock.withLock {
+                inventoryJob?.cancelAndJoin()
+                inventoryJob = next
+                next?.start()
+            }
+        } catch (e: CancellationException) {
+            next?.cancel()
+            throw e
+        }
+    }
+
+    /**
+     * Starts reading tags. [InventoryMode.CONTINUOUS] puts the module in active work
+     * mode and falls back to polling when the module refuses it, or when there is a
+     * tag filter the module can select on; see [setTagFilter].
+     *
+     * A [ReaderWatchdog] follows every command. When the module browns out or the
+     * link stalls, the inventory reconnects (see [reconnect]) and carries on with
+     * the tags it has seen, so none is reported twice; the outage shows in
+     * [telemetry] and the state is [RfidState.Reconnecting] meanwhile. A module
+     * that ends its stream on its own but still answers is polled from then on.
+     */
+    fun startInventory(mode: InventoryMode = InventoryMode.CONTINUOUS) {
         scope.launch {
             try {
-                reader?.let { r ->
+                actor?.let { a ->
                     _state.value = RfidState.Scanning
-                    inventoryJob?.cancel()
-                    inventoryJob = scope.launch {
-                        while (isActive) {
-                            val epcData = ByteArray(4096)
-                            val epcLen = IntArray(1)
-                            val tagCount = IntArray(1)
-                            r.Inventory_G2(
-                                0.toByte(), 0.toByte(), 0.toByte(), 0.toByte(),
-                                0.toByte(), 0.toByte(), 0.toByte(),
-                                1, epcData, epcLen, tagCount
-                            )
-                            delay(100)
+                    replaceInventoryJob(scope.launch(start = CoroutineStart.LAZY) {
+                        val filter = tagFilter
+                        // Active mode has no Select: with a filter, poll so the module can select.
+                        val selecting = filter != null && !selectRefused
+                        val polled = if (mode == InventoryMode.CONTINUOUS) InventoryMode.POLLING else mode
+                        var current = a
+                        try {
+                            var resumed = false
+                            var streamEnded = false
+                            while (true) {
+                                val reader = current
+                                val streamed = reader.command(Priority.INVENTORY) { r ->
+                                    governor.reset()
+                                    if (!resumed) seenTags.clear()
+                                    r.SetTagDedup(seenTags, SUMMARY_INTERVAL_MS)
+                                    r.SetTagFilter(filter)
+                                    val stream = mode == InventoryMode.CONTINUOUS && !selecting && !streamEnded
+                                    if (stream) startStream(reader, r) else -1
+                                } == 0
+                                if (!resumed) {
+                                    stats.setFilter(filter?.toString(), !streamed && selecting)
+                                    stats.start(if (streamed) InventoryMode.CONTINUOUS else polled)
+                                } else {
+                                    // The module back from an outage may refuse the stream it had.
+                                    stats.setMode(if (streamed) InventoryMode.CONTINUOUS else polled)
+                                }
+                                watchdog.reset(System.currentTimeMillis())
+                                val stall = if (streamed) {
+                                    readContinuously(reader)
+                                } else {
+                                    poll(reader, if (mode == InventoryMode.EPC_AND_TID) TID_WORDS else 0)
+                                }
+                                if (stall == null) {
+                                    // Polling returns only when stopped; a stream also when the module ended it.
+                                    if (!streamed || !currentCoroutineContext().isActive) break
+                                    reader.command(Priority.INVENTORY) { r ->
+                                        if (reader.isStreaming()) {
+                                            reader.setStreaming(null, null)
+                                            r.StopActiveInventory(0.toByte())
+                                        }
+                                        0
+                                    }
+                                    streamEnded = true
+                                    resumed = true
+                                    continue
+                                }
+                                current = reconnect(reader, stall) ?: break
+                                resumed = true
+                            }
+                        } finally {
+                            val stopped = !currentCoroutineContext().isActive
+                            val last = current
+                            withContext(NonCancellable) {
+                                // Leave the module in answer mode, or every later command competes with the stream.
+                                last.command(Priority.URGENT) { r ->
+                                    if (last.isStreaming()) {
+                                        last.setStreaming(null, null)
+                                        r.StopActiveInventory(0.toByte())
+                                    }
+                                    r.FlushTagSummaries()
+                                    0
+                                }
+                                val delivered = withTimeoutOrNull(FINAL_FLUSH_TIMEOUT_MS) {
+                                    while (!batcher.flush()) delay(BATCH_INTERVAL_MS)
+                                }
+                                if (delivered == null) batcher.discard()
+                                summaryChannel.trySend(stats.finish())
+                            }
+                            // Ended without a stop request, e.g. by an exception: the reader is idle again.
+                            if (!stopped && _state.value == RfidState.Scanning) _state.value = RfidState.Connected
                         }
-                    }
+                    })
                 } ?: run {
                     _state.value = RfidState.Error("Lector no conectado")
                 }
@@ -115,13 +366,221 @@ class RfidManager @Inject constructor() {
         }
     }
 
+    /**
+     * Polls with Inventory_G2; [tidWords] > 0 also reads that much TID from word 0.
+     * With a [tagFilter] each round selects on it, unless the module refuses, and
+     * reads outside it are left out of the telemetry but not of Q, which sizes the
+     * round for every tag that answered. Each round is one command, so commands
+     * queued meanwhile go out between rounds. Returns the stall [watchdog] saw.
+     */
+    private suspend fun poll(a: ReaderActor, tidWords: Int): ReaderStall? {
+        val epcData = ByteArray(4096)
+        val epcLen = IntArray(1)
+        val tagCount = IntArray(1)
+        val qController = if (adaptiveQ) {
+            QController(true, FIXED_Q, QController.MIN_Q, QController.MAX_Q)
+        } else {
+            QController(FIXED_Q)
+        }
+        val round = InventoryTagResult()
+        var distinct = 0
+        var foreign = 0
+        var windowStart = System.currentTimeMillis()
+        while (currentCoroutineContext().isActive) {
+            val now = System.currentTimeMillis()
+            if (now - windowStart >= governor.onWindowMs) {
+                delay(governor.offTimeMs)
+                windowStart = System.currentTimeMillis()
+            }
+            val q = qController.currentQ()
+            val filter = tagFilter
+            val masked = filter != null && !selectRefused
+            round.result = a.command(Priority.INVENTORY) { r ->
+                if (governor.isSampleDue(now)) governor.sample(r, currentPower, now)
+                else governor.ensurePower(r, currentPower)
+                r.SetTagFilter(filter)
+                val crcErrors = r.GetCrcErrorCount()
+                val filtered = r.GetFilteredReadCount()
+                val rxBytes = r.GetReceivedByteCount()
+                val start = System.nanoTime()
+                val status = if (masked) {
+                    r.Inventory_G2ByMask(
+                        0.toByte(), q.toByte(), scheduler.session().toByte(), filter, 0.toByte(),
+                        tidWords.toByte(), scheduler.target(), 0.toByte(),
+                        POLL_SCAN_TIME, epcData, tagCount, epcLen
+                    )
+                } else {
+                    r.Inventory_G2(
+                        0.toByte(), q.toByte(), scheduler.session().toByte(), 0.toByte(),
+                        tidWords.toByte(), scheduler.target(), 0.toByte(),
+                        POLL_SCAN_TIME, epcData, tagCount, epcLen
+                    )
+                }
+                round.nTime = (System.nanoTime() - start) / 1_000_000L
+                round.nCrcErrors = (r.GetCrcErrorCount() - crcErrors).toInt()
+                round.nRxBytes = r.GetReceivedByteCount() - rxBytes
+                foreign = (r.GetFilteredReadCount() - filtered).toInt()
+                round.NewNum = seenTags.size() - distinct
+                distinct = seenTags.size()
+                status
+            }
+            val end = System.currentTimeMillis()
+            watchdog.onRound(round.result, round.nRxBytes, round.nCrcErrors, tagCount[0], end)?.let { return it }
+            if (watchdog.needsPing(end)) watchdog.onPing(ping(a), end)?.let { return it }
+            if (masked && isSelectRefusal(round.result)) {
+                selectRefused = true
+                stats.setFilter(filter.toString(), false)
+                continue
+            }
+            round.nCount = tagCount[0]
+            round.QValue = q
+            qController.update(round, POLL_SCAN_TIME)
+            scheduler.onRound(round)
+            stats.onFilteredReads(foreign.toLong())
+            stats.onRound(round.nCount - foreign, round.NewNum, round.nTime, round.nRxBytes)
+            batcher.flush()
+            delay(100)
+        }
+        return null
+    }
+
+    /**
+     * Collects the stream of a module [startStream] put in active mode, one
+     * [BATCH_INTERVAL_MS] read per command; other commands pause the stream while
+     * they run (see [ReaderActor.setStreaming]). Returns once the stream ends, with
+     * the stall [watchdog] saw if it ended because the module stopped answering,
+     * else null, also when the module ended or refused the stream.
+     */
+    private suspend fun readContinuously(a: ReaderActor): ReaderStall? {
+        val tagCount = IntArray(1)
+        var windowStart = System.currentTimeMillis()
+        // The stream has no rounds; telemetry gets it in windows of STREAM_WINDOW_MS.
+        var streamReads = 0
+        var streamNew = 0
+        var streamBytes = 0L
+        var streamStart = windowStart
+        var distinct = 0
+        var foreign = 0
+        var readBytes = 0L
+        var crcErrors = 0
+        try {
+            while (currentCoroutineContext().isActive) {
+                val status = a.command(Priority.INVENTORY) { r ->
+                    r.SetTagFilter(tagFilter)
+                    val filtered = r.GetFilteredReadCount()
+                    val crcBefore = r.GetCrcErrorCount()
+                    val rxBytes = r.GetReceivedByteCount()
+                    val result = r.ReadActiveModeData(tagCount, BATCH_INTERVAL_MS.toInt())
+                    foreign = (r.GetFilteredReadCount() - filtered).toInt()
+                    crcErrors = (r.GetCrcErrorCount() - crcBefore).toInt()
+                    readBytes = r.GetReceivedByteCount() - rxBytes
+                    streamNew += seenTags.size() - distinct
+                    distinct = seenTags.size()
+                    result
+                }
+                // The stream ended on its own: a module that answers refused it, one that does not is gone.
+                if (status != 0 || !a.isStreaming()) return if (ping(a)) null else ReaderStall.TIMEOUTS
+                val now = System.currentTimeMillis()
+                streamBytes += readBytes
+                watchdog.onStreamRead(readBytes, crcErrors, tagCount[0], now)?.let { return it }
+                // An empty field is quiet too: only a module that does not answer is a stall.
+                if (watchdog.needsPing(now)) watchdog.onPing(ping(a), now)?.let { return it }
+                batcher.flushIfDue(BATCH_INTERVAL_MS)
+                stats.onFilteredReads(foreign.toLong())
+                streamReads += tagCount[0] - foreign
+                if (now - streamStart >= STREAM_WINDOW_MS) {
+                    stats.onStreamWindow(streamReads, streamNew, now - streamStart, streamBytes)
+                    streamReads = 0
+                    streamNew = 0
+                    streamBytes = 0
+                    streamStart = now
+                }
+                // Sampling pauses the stream like any other command.
+                if (governor.isSampleDue(now)) {
+                    a.command(Priority.CONTROL) { r -> governor.sample(r, currentPower, now); 0 }
+                }
+                if (now - windowStart < governor.onWindowMs || governor.offTimeMs == 0L) continue
+                // Throttled: rest in answer mode, then resume.
+                a.command(Priority.INVENTORY) { r ->
+                    a.setStreaming(null, null)
+                    r.StopActiveInventory(0.toByte())
+                }
+                batcher.flush()
+                delay(governor.offTimeMs)
+                if (a.command(Priority.INVENTORY) { r -> startStream(a, r) } != 0) {
+                    return if (ping(a)) null else ReaderStall.TIMEOUTS
+                }
+                windowStart = System.currentTimeMillis()
+                watchdog.reset(windowStart)
+            }
+        } finally {
+            stats.onStreamWindow(streamReads, streamNew, System.currentTimeMillis() - streamStart, streamBytes)
+        }
+        return null
+    }
+
+    /** From a command: puts the module in active mode, to be paused by the actor for other commands. */
+    private fun startStream(a: ReaderActor, r: BaseReader): Int {
+        val status = r.StartActiveInventory(0.toByte())
+        if (status == 0) a.setStreaming(PAUSE_STREAM, RESUME_STREAM)
+        return status
+    }
+
+    /** Whether the module behind [a] still answers; pauses a stream while it asks. */
+    private suspend fun ping(a: ReaderActor): Boolean =
+        a.command(Priority.CONTROL) { r ->
+            val answered = ReaderInfo.query(r, "", r.GetBaudRate(), ReaderProbe.REPLY_TIMEOUT_MS, PING_ATTEMPTS)
+            if (answered != null) 0 else ReaderWatchdog.NO_REPLY
+        } == 0
+
+    /**
+     * Recovers from [stall] of the module behind [a]: closes that link, then opens
+     * the module where it was, or wherever it is found (see [locate]), with the
+     * power applied again. Retries after [RECONNECT_INITIAL_MS], doubling up to
+     * [RECONNECT_MAX_BACKOFF_MS], for [RECONNECT_GIVE_UP_MS]. Returns the new
+     * [actor], or null with an [RfidState.Error] if the module did not come back.
+     */
+    private suspend fun reconnect(a: ReaderActor, stall: ReaderStall): ReaderActor? {
+        stats.onOutage(stall)
+        actor = null
+        a.command(Priority.URGENT) { r ->
+            a.setStreaming(null, null)
+            // Repeat counts still held by the old reader; the tags themselves stay in seenTags.
+            r.FlushTagSummaries()
+            r.DisConnect()
+        }
+        a.close()
+        batcher.flush()
+        val giveUpAt = System.currentTimeMillis() + RECONNECT_GIVE_UP_MS
+        var backoff = RECONNECT_INITIAL_MS
+        var attempt = 1
+        while (true) {
+            _state.value = RfidState.Reconnecting(attempt)
+            delay(backoff)
+            val opened = locate(connectedProfile)
+            if (opened != null) {
+                actor = opened.first
+                stats.onOutageEnded()
+                _state.value = RfidState.Scanning
+                return opened.first
+            }
+            backoff = (backoff * 2).coerceAtMost(RECONNECT_MAX_BACKOFF_MS)
+            if (System.currentTimeMillis() + backoff >= giveUpAt) break
+            attempt++
+        }
+        stats.onOutageEnded()
+        _state.value = RfidState.Error("Se perdió la conexión con el lector RFID")
+        return null
+    }
+
     fun stopInventory() {
         scope.launch {
             try {
-                inventoryJob?.cancel()
-                inventoryJob = null
-                reader?.let {
-                    _state.value = RfidState.Connected
+                replaceInventoryJob(null)
+                when {
+                    actor != null -> _state.value = RfidState.Connected
+                    // Stopped while reconnecting: there is no link left.
+                    _state.value is RfidState.Reconnecting -> _state.value = RfidState.Disconnected
                 }
             } catch (e: Exception) {
                 _state.value = RfidState.Error("Error al detener escaneo: ${e.message}")
@@ -129,14 +588,343 @@ class RfidManager @Inject constructor() {
         }
     }
 
+    /**
+     * Reads [words] words from [wordPtr] of [bank] (see [TagMemoryReader.MEM_TID] and
+     * friends) on every tag in [epcs], or on every tag of the last inventory when
+     * null. Stops any running inventory first; starting one cancels the read.
+     * Emits one [TagMemoryEvent.Result] per tag and a throttled
+     * [TagMemoryEvent.Progress], the last one with `done` set.
+     */
+    fun readTagMemory(
+        bank: Int,
+        wordPtr: Int,
+        words: Int,
+        password: ByteArray = ByteArray(4),
+        epcs: List<ByteArray>? = null,
+    ): Flow<TagMemoryEvent> = channelFlow {
+        val a = actor ?: throw IllegalStateException("Lector no conectado")
+        val job = scope.launch(start = CoroutineStart.LAZY) {
+            var lastProgress = 0L
+            val listener = object : TagMemoryReader.Listener {
+                override fun onTagMemory(epc: ByteArray, status: Int, data: ByteArray?, attempts: Int) {
+                    trySendBlocking(
+                        TagMemoryEvent.Result(
+                            epc = EpcKey.of(epc),
+                            status = status,
+                            data = data?.let { HexCodec.toHex(it) },
+                            attempts = attempts,
+                        )
+                    )
+                }
+
+                override fun onProgress(progress: TagMemoryReader.Progress) {
+                    val done = progress.read + progress.failed == progress.total
+                    if (!done && progress.elapsedMs - lastProgress < BATCH_INTERVAL_MS) return
+                    lastProgress = progress.elapsedMs
+                    trySendBlocking(progress.toEvent(done))
+                }
+            }
+            // One command for the whole read: its passes must not interleave with other traffic.
+            a.command(Priority.CONTROL) { r ->
+                val targets = epcs ?: lastInventoryEpcs()
+                val totals = TagMemoryReader(r, 0.toByte())
+                    .run(targets, bank, wordPtr, words, password, MEMORY_READ_PASSES, listener) { !isActive }
+                if (totals.read + totals.failed < totals.total) trySendBlocking(totals.toEvent(false))
+                0
+            }
+        }
+        replaceInventoryJob(job)
+        try {
+            job.join()
+        } finally {
+            job.cancel()
+        }
+    }
+
+    private fun TagMemoryReader.Progress.toEvent(done: Boolean) = TagMemoryEvent.Progress(
+        total = total,
+        read = read,
+        failed = failed,
+        pass = pass,
+        tagsPerSecond = tagsPerSecond(),
+        timeoutMs = timeoutMs,
+        done = done,
+    )
+
+    /**
+     * Writes each job's EPC (second) into the tag with its TID (first) as the tags
+     * come into the field, verifying every write by reading it back; see
+     * [TagCommissioner]. Stops any inventory first. The commissioning rounds are
+     * not reported on [tagBatches] nor counted as inventory reads. Progress is
+     * emitted at most every [BATCH_INTERVAL_MS] and once more when done; the flow
+     * completes when every job is encoded or failed, and collecting it again
+     * starts over.
+     */
+    fun commissionTags(
+        jobs: List<Pair<ByteArray, ByteArray>>,
+        password: ByteArray = ByteArray(4),
+    ): Flow<CommissionEvent> = channelFlow {
+        val a = actor ?: throw IllegalStateException("Lector no conectado")
+        val job = scope.launch(start = CoroutineStart.LAZY) {
+            var lastProgress = 0L
+            val listener = object : TagCommissioner.Listener {
+                override fun onTagWritten(tid: ByteArray, epc: ByteArray, status: Int, attempts: Int) {
+                    trySendBlocking(
+                        CommissionEvent.Result(
+                            tid = EpcKey.of(tid),
+                            epc = EpcKey.of(epc),
+                            status = status,
+                            attempts = attempts,
+                        )
+                    )
+                }
+
+                override fun onProgress(progress: TagCommissioner.Progress) {
+                    val done = progress.encoded + progress.failed == progress.total
+                    if (!done && progress.elapsedMs - lastProgress < BATCH_INTERVAL_MS) return
+                    lastProgress = progress.elapsedMs
+                    trySendBlocking(progress.toEvent(done))
+                }
+            }
+            a.command(Priority.CONTROL) { r ->
+                r.SetCallBack(null)
+                r.SetTagDedup(null, 0)
+                try {
+                    val totals = TagCommissioner(r, 0.toByte()).run(
+                        jobs.map { it.first }, jobs.map { it.second }, password, COMMISSION_ATTEMPTS, listener,
+                    ) { !isActive }
+                    if (totals.encoded + totals.failed < totals.total) trySendBlocking(totals.toEvent(false))
+                } finally {
+                    r.SetCallBack(tagCallback)
+                }
+                0
+            }
+        }
+        replaceInventoryJob(job)
+        try {
+            job.join()
+        } finally {
+            job.cancel()
+        }
+    }
+
+    private fun TagCommissioner.Progress.toEvent(done: Boolean) = CommissionEvent.Progress(
+        total = total,
+        encoded = encoded,
+        failed = failed,
+        attempts = attempts,
+        tagsPerMinute = tagsPerMinute(),
+        done = done,
+    )
+
+    /** EPCs counted by the last inventory; only call from a command, once its job has finished. */
+    private fun lastInventoryEpcs(): List<ByteArray> =
+        List(seenTags.size()) { e ->
+            ByteArray(seenTags.epcLength(e)).also { seenTags.copyEpc(e, it, 0) }
+        }
+
+    /**
+     * Applies [power] after the current round, without stopping an inventory; while
+     * one runs, less any thermal cut. A change still queued after
+     * [CONTROL_DEADLINE_MS] is dropped, the next round applies the latest anyway.
+     */
     fun setPower(power: Int) {
         currentPower = power.coerceIn(0, 30)
-        scope.launch {
-            try {
-                reader?.SetRfPower(0.toByte(), currentPower.toByte())
-            } catch (_: Exception) {}
+        val scanning = inventoryJob?.isActive == true
+        actor?.submit(Priority.CONTROL, CONTROL_DEADLINE_MS) { r ->
+            if (scanning) {
+                governor.ensurePower(r, currentPower)
+                0
+            } else {
+                r.SetRfPower(0.toByte(), currentPower.toByte())
+            }
         }
     }
 
     fun getPower(): Int = currentPower
+
+    /** For the consumer of [tagBatches] to report once [batch] is stored; feeds the DB write lag. */
+    fun onBatchPersisted(batch: TagBatch) = stats.onBatchPersisted(batch)
+
+    /**
+     * Polling mode only: count each tag once with S2 A/B sweeps, or monitor with S0.
+     * Takes effect from the next round.
+     */
+    fun setInventoryStrategy(strategy: InventoryScheduler.Strategy) {
+        scheduler.setStrategy(strategy)
+    }
+
+    /** Polling totals per strategy since this manager was created. */
+    fun getStrategyMetrics(strategy: InventoryScheduler.Strategy): InventoryScheduler.Metrics =
+        scheduler.metrics(strategy)
+
+    /** Polling mode only: adapt Q to the tag population, or keep it at [FIXED_Q]. Applies from the next start. */
+    fun setAdaptiveQ(enabled: Boolean) {
+        adaptiveQ = enabled
+    }
+
+    /**
+     * Reads only tags matching [filter] from the next round on: polling rounds select
+     * on it so other tags do not answer, and reads in active mode, or from a module
+     * that refuses the Select, are filtered in software. Continuous inventories
+     * started with a filter poll instead of streaming, unless the module refused the
+     * Select. Null reads every tag. Clears [filterGain].
+     */
+    fun setTagFilter(filter: TagFilter?) {
+        if (filter == tagFilter) return
+        tagFilter = filter
+        _filterGain.value = null
+        stats.setFilter(filter?.toString(), filter != null && !selectRefused && actor?.isStreaming() != true)
+    }
+
+    /**
+     * Measures what the filter is worth on the tags in the field: [GAIN_ROUNDS] pairs
+     * of S0 polling rounds, one without the Select and one with it, counting the
+     * reads of matching tags per second of round. Stops any inventory first; the
+     * rounds are neither reported on [tagBatches] nor counted as inventory reads.
+     * Publishes the result on [filterGain] and returns it; null without a reader or
+     * filter, or when another command cancels the measurement.
+     */
+    suspend fun measureFilterGain(): FilterGain? {
+        val a = actor ?: return null
+        val filter = tagFilter ?: return null
+        val job = scope.async(start = CoroutineStart.LAZY) {
+            a.command(Priority.INVENTORY) { r ->
+                r.SetCallBack(null)
+                r.SetTagDedup(null, 0)
+                r.SetTagFilter(filter)
+                0
+            }
+            try {
+                measureGain(a, filter)
+            } finally {
+                withContext(NonCancellable) {
+                    a.command(Priority.INVENTORY) { r -> r.SetCallBack(tagCallback); 0 }
+                }
+            }
+        }
+        replaceInventoryJob(job)
+        val gain = try {
+            job.await()
+        } catch (_: CancellationException) {
+            currentCoroutineContext().ensureActive()
+            null
+        } finally {
+            job.cancel()
+        }
+        if (gain != null && filter == tagFilter) _filterGain.value = gain
+        return gain
+    }
+
+    /** One command per round, so control commands still go out between them. */
+    private suspend fun measureGain(a: ReaderActor, filter: TagFilter): FilterGain {
+        val epcData = ByteArray(4096)
+        val epcLen = IntArray(1)
+        val tagCount = IntArray(1)
+        val round = InventoryTagResult()
+        // Index 0 without the Select, 1 with it; each with its own Q, as each sees its own population.
+        val qControllers = Array(2) { QController(true, FIXED_Q, QController.MIN_Q, QController.MAX_Q) }
+        val ownReads = LongArray(2)
+        val nanos = LongArray(2)
+        var foreignReads = 0L
+        var hardware = !selectRefused
+        repeat(GAIN_ROUNDS) {
+            for (pass in 0..1) {
+                currentCoroutineContext().ensureActive()
+                val q = qControllers[pass].currentQ()
+                var foreign = 0L
+                var elapsed = 0L
+                round.result = a.command(Priority.INVENTORY) { r ->
+                    governor.ensurePower(r, currentPower)
+                    val filteredBefore = r.GetFilteredReadCount()
+                    var start = System.nanoTime()
+                    var status = 0
+                    if (pass == 1 && hardware) {
+                        status = r.Inventory_G2ByMask(
+                            0.toByte(), q.toByte(), 0.toByte(), filter, 0.toByte(), 0.toByte(), 0.toByte(), 0.toByte(),
+                            POLL_SCAN_TIME, epcData, tagCount, epcLen
+                        )
+                        if (isSelectRefusal(status)) {
+                            selectRefused = true
+                            hardware = false
+                            stats.setFilter(filter.toString(), false)
+                            start = System.nanoTime()
+                        }
+                    }
+                    if (pass == 0 || !hardware) {
+                        status = r.Inventory_G2(
+                            0.toByte(), q.toByte(), 0.toByte(), 0.toByte(), 0.toByte(), 0.toByte(), 0.toByte(),
+                            POLL_SCAN_TIME, epcData, tagCount, epcLen
+                        )
+                    }
+                    elapsed = System.nanoTime() - start
+                    foreign = r.GetFilteredReadCount() - filteredBefore
+                    status
+                }
+                round.nTime = elapsed / 1_000_000L
+                round.nCount = tagCount[0]
+                round.nCrcErrors = 0
+                qControllers[pass].update(round, POLL_SCAN_TIME)
+                ownReads[pass] += tagCount[0] - foreign
+                nanos[pass] += elapsed
+                if (pass == 0) foreignReads += foreign
+            }
+        }
+        return FilterGain(
+            ownReadsPerSecondUnfiltered = ownReads[0] * 1e9 / nanos[0].coerceAtLeast(1),
+            ownReadsPerSecondFiltered = ownReads[1] * 1e9 / nanos[1].coerceAtLeast(1),
+            foreignShare = if (ownReads[0] + foreignReads > 0) foreignReads.toDouble() / (ownReads[0] + foreignReads) else 0.0,
+            hardwareSelect = hardware,
+        )
+    }
+
+    /** Status of a module that does not take [BaseReader.Inventory_G2ByMask]. */
+    private fun isSelectRefusal(status: Int): Boolean = status == 0xFE || status == 0xFF
+
+    /** Reads dropped because the tag consumer fell [MAX_PENDING_READS] behind. */
+    fun getDroppedReads(): Long = batcher.droppedReads
+
+    /** Control commands dropped at their deadline on this connection, e.g. power changes superseded while queued. */
+    fun getExpiredCommands(): Long = actor?.expiredCount ?: 0
+
+    /** Queues [command] on the actor and suspends until it has run; cancelling takes it back if still queued. */
+    private suspend fun ReaderActor.command(
+        priority: Priority,
+        deadlineMs: Long = ReaderActor.NO_DEADLINE,
+        command: (BaseReader) -> Int,
+    ): Int = submit(priority, deadlineMs, command).await()
+
+    companion object {
+        private const val FIXED_Q = 4
+        private const val POLL_SCAN_TIME = 1
+        private const val BATCH_QUEUE_CAPACITY = 16
+        private const val SUMMARY_QUEUE_CAPACITY = 8
+        private const val STREAM_WINDOW_MS = 1000L
+        private const val BATCH_INTERVAL_MS = 100L
+        private const val MAX_PENDING_READS = 8192
+        private const val FINAL_FLUSH_TIMEOUT_MS = 1000L
+        private const val MEMORY_READ_PASSES = 3
+        private const val COMMISSION_ATTEMPTS = 5
+        /** Queries before giving up on a port: enough for a module still starting up, about 0.25 s when it is not there. */
+        private const val IDENTIFY_ATTEMPTS = 3
+        /** Queries of a watchdog ping; a live module answers the first. */
+        private const val PING_ATTEMPTS = 2
+        /** Reconnect backoff after a stall: first wait, cap, and how long before giving up. */
+        private const val RECONNECT_INITIAL_MS = 250L
+        private const val RECONNECT_MAX_BACKOFF_MS = 8_000L
+        private const val RECONNECT_GIVE_UP_MS = 60_000L
+        /** How long a setting may wait for the current round before it is dropped. */
+        private const val CONTROL_DEADLINE_MS = 1000L
+        /** Round pairs of a [measureFilterGain]; about 0.2 s of air time each. */
+        private const val GAIN_ROUNDS = 20
+
+        /** 96-bit TID: class, mask designer, model and a 48-bit serial. */
+        private const val TID_WORDS = 6
+
+        /** How often repeat reads are summarised downstream, per EPC. */
+        private const val SUMMARY_INTERVAL_MS = 1000
+
+        private val PAUSE_STREAM = ReaderActor.Command { it.StopActiveInventory(0.toByte()) }
+        private val RESUME_STREAM = ReaderActor.Command { it.StartActiveInventory(0.toByte()) }
+    }
 }
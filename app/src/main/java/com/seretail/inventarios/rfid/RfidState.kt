@@ -5,5 +5,7 @@ sealed class RfidState {
     data object Connecting : RfidState()
     data object Connected : RfidState()
     data object Scanning : RfidState()
+    /** The inventory lost the module and is reconnecting; [attempt] counts from 1. */
+    data class Reconnecting(val attempt: Int) : RfidState()
     data class Error(val message: String) : RfidState()
 }
@@ -0,0 +1,274 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.InventoryTagResult
+import com.rfid.trans.RoundStatsRing
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import java.util.concurrent.atomic.AtomicInteger
+
+data class RfidTelemetryState(
+    val scanning: Boolean = false,
+    val mode: InventoryMode? = null,
+    val elapsedMs: Long = 0,
+    /** Tag reads per second over the rolling window. */
+    val readsPerSecond: Double = 0.0,
+    val peakReadsPerSecond: Double = 0.0,
+    /** Tags seen for the first time per second over the rolling window. */
+    val uniquePerSecond: Double = 0.0,
+    val totalReads: Long = 0,
+    val uniqueTags: Int = 0,
+    val rounds: Long = 0,
+    val crcErrors: Long = 0,
+    /** Share of frames failing their CRC over the rolling window, 0 to 1. */
+    val crcErrorRate: Double = 0.0,
+    /** Inventory command latency over the last rounds; null without rounds, as in continuous mode. */
+    val roundLatencyP50Ms: Long? = null,
+    val roundLatencyP90Ms: Long? = null,
+    val roundLatencyP99Ms: Long? = null,
+    val droppedReads: Long = 0,
+    /** Batch hand-offs the consumer was too slow to take; the reads stayed pending. */
+    val deferredBatches: Long = 0,
+    /** From the first read of a batch until it was in the database: last batch, and p90. */
+    val dbWriteLagMs: Long? = null,
+    val dbWriteLagP90Ms: Long? = null,
+    /** Mask the reads are filtered on; null without one. */
+    val filter: String? = null,
+    /** Whether the module selects on [filter]; otherwise reads are filtered in software. */
+    val hardwareSelect: Boolean = false,
+    /** Reads of tags outside [filter] that reached the reader and were dropped. */
+    val filteredReads: Long = 0,
+    /** Serial link rate the module was connected at; 0 before connecting. */
+    val baudRate: Int = 0,
+    /** Share of the link's capacity from module to app in use over the rolling window, 0 to 1. */
+    val linkUtilization: Double = 0.0,
+    /** Times the reader stalled and the inventory reconnected, or tried to. */
+    val outages: Int = 0,
+    /** Time spent reconnecting, the current outage included. */
+    val downtimeMs: Long = 0,
+    /** Why the last outage started; null without one. */
+    val lastOutage: ReaderStall? = null,
+    /** Whether the inventory is reconnecting right now. */
+    val reconnecting: Boolean = false,
+)
+
+/**
+ * Gathers the inventory's performance for the diagnostics panel and the saved
+ * session summaries. The inventory loop reports each round (or, in continuous
+ * mode, each second of stream) and each outage, the reader callback its CRC
+ * errors, and the consumer each batch it has written; [state] is republished at most every
+ * [PUBLISH_INTERVAL_MS]. Rates are rolling over [windowMs] and kept in a
+ * [RoundStatsRing]; latencies come from the last [LATENCY_SAMPLES] rounds.
+ */
+internal class RfidTelemetry(
+    private val batcher: TagBatcher,
+    private val windowMs: Long = 5_000,
+) {
+    private val _state = MutableStateFlow(RfidTelemetryState())
+    val state: StateFlow<RfidTelemetryState> = _state
+
+    private val history = RoundStatsRing(ROUND_HISTORY)
+    private val pendingCrcErrors = AtomicInteger()
+    private val round = InventoryTagResult()
+    private val latencies = LongArray(LATENCY_SAMPLES)
+    private var latencyCount = 0L
+    private val lags = LongArray(LAG_SAMPLES)
+    private var lagCount = 0L
+
+    private var mode: InventoryMode? = null
+    private var startNanos = 0L
+    private var lastPublishNanos = 0L
+    private var totalReads = 0L
+    private var uniqueTags = 0
+    private var rounds = 0L
+    private var crcErrors = 0L
+    private var peakReadsPerSecond = 0.0
+    private var droppedAtStart = 0L
+    private var deferredAtStart = 0L
+    private var filter: String? = null
+    private var hardwareSelect = false
+    private var filteredReads = 0L
+    private var baudRate = 0
+    private var outages = 0
+    private var downtimeMs = 0L
+    private var lastOutage: ReaderStall? = null
+    private var outageStartNanos = 0L
+
+    @Synchronized
+    fun start(mode: InventoryMode) {
+        this.mode = mode
+        startNanos = System.nanoTime()
+        history.clear()
+        pendingCrcErrors.set(0)
+        latencyCount = 0
+        lagCount = 0
+        totalReads = 0
+        uniqueTags = 0
+        rounds = 0
+        crcErrors = 0
+        peakReadsPerSecond = 0.0
+        filteredReads = 0
+        outages = 0
+        downtimeMs = 0
+        lastOutage = null
+        outageStartNanos = 0
+        droppedAtStart = batcher.droppedReads
+        deferredAtStart = batcher.deferredBatches
+        publish(scanning = true)
+    }
+
+    /** The session carries on in [mode], e.g. polling once the module refused its stream. */
+    @Synchronized
+    fun setMode(mode: InventoryMode) {
+        if (this.mode == mode) return
+        this.mode = mode
+        publish(scanning = _state.value.scanning)
+    }
+
+    /** From the reader callback; counted into the next round. */
+    fun onCrcErrors(count: Int) {
+        pendingCrcErrors.addAndGet(count)
+    }
+
+    /** One Inventory_G2 round of [timeMs], whose replies took [rxBytes]. */
+    @Synchronized
+    fun onRound(reads: Int, newTags: Int, timeMs: Long, rxBytes: Long) {
+        latencies[(latencyCount++ % LATENCY_SAMPLES).toInt()] = timeMs
+        record(reads, newTags, timeMs, rxBytes)
+    }
+
+    /** [timeMs] of active-mode stream, which has no rounds to time. */
+    @Synchronized
+    fun onStreamWindow(reads: Int, newTags: Int, timeMs: Long, rxBytes: Long) {
+        record(reads, newTags, timeMs, rxBytes)
+    }
+
+    /** The link rate, for [RfidTelemetryState.linkUtilization]; kept across sessions. */
+    @Synchronized
+    fun setLink(baudRate: Int) {
+        this.baudRate = baudRate
+        publish(scanning = _state.value.scanning)
+    }
+
+    /** The mask in force and whether the module applies it; kept across sessions. */
+    @Synchronized
+    fun setFilter(filter: String?, hardwareSelect: Boolean) {
+        this.filter = filter
+        this.hardwareSelect = hardwareSelect
+        publish(scanning = _state.value.scanning)
+    }
+
+    /** [count] reads dropped by the software filter; not counted as reads. */
+    @Synchronized
+    fun onFilteredReads(count: Long) {
+        filteredReads += count
+    }
+
+    /** The reader stalled for [cause]; the inventory reconnects until [onOutageEnded]. */
+    @Synchronized
+    fun onOutage(cause: ReaderStall) {
+        outages++
+        lastOutage = cause
+        outageStartNanos = System.nanoTime()
+        publish(scanning = _state.value.scanning)
+    }
+
+    /** The reader is back, or reconnecting was given up. */
+    @Synchronized
+    fun onOutageEnded() {
+        if (outageStartNanos == 0L) return
+        downtimeMs += (System.nanoTime() - outageStartNanos) / 1_000_000L
+        outageStartNanos = 0
+        publish(scanning = _state.value.scanning)
+    }
+
+    /** Called by the consumer once [batch] is written to the database. */
+    @Synchronized
+    fun onBatchPersisted(batch: TagBatch) {
+        lags[(lagCount++ % LAG_SAMPLES).toInt()] = (System.nanoTime() - batch.firstReadNanos) / 1_000_000L
+        publishIfDue()
+    }
+
+    /** Ends the session and returns its final figures. */
+    @Synchronized
+    fun finish(): RfidTelemetryState {
+        if (pendingCrcErrors.get() > 0) record(0, 0, 0, 0)
+        // Stopped while reconnecting.
+        onOutageEnded()
+        publish(scanning = false)
+        return _state.value
+    }
+
+    private fun record(reads: Int, newTags: Int, timeMs: Long, rxBytes: Long) {
+        val crc = pendingCrcErrors.getAndSet(0)
+        round.nCount = reads
+        round.NewNum = newTags
+        round.nTime = timeMs
+        round.nCrcErrors = crc
+        round.nRxBytes = rxBytes
+        history.add(round)
+        totalReads += reads
+        uniqueTags += newTags
+        crcErrors += crc
+        rounds++
+        publishIfDue()
+    }
+
+    private fun publishIfDue() {
+        if (System.nanoTime() - lastPublishNanos >= PUBLISH_INTERVAL_MS * 1_000_000L) {
+            publish(scanning = _state.value.scanning)
+        }
+    }
+
+    private fun publish(scanning: Boolean) {
+        lastPublishNanos = System.nanoTime()
+        val readsPerSecond = history.readsPerSecond(windowMs)
+        if (readsPerSecond > peakReadsPerSecond) peakReadsPerSecond = readsPerSecond
+        val latency = sorted(latencies, latencyCount)
+        val lag = sorted(lags, lagCount)
+        _state.value = RfidTelemetryState(
+            scanning = scanning,
+            mode = mode,
+            elapsedMs = if (startNanos == 0L) 0 else (lastPublishNanos - startNanos) / 1_000_000L,
+            readsPerSecond = readsPerSecond,
+            peakReadsPerSecond = peakReadsPerSecond,
+            uniquePerSecond = history.newTagsPerSecond(windowMs),
+            totalReads = totalReads,
+            uniqueTags = uniqueTags,
+            rounds = rounds,
+            crcErrors = crcErrors,
+            crcErrorRate = history.crcErrorRate(windowMs),
+            roundLatencyP50Ms = latency?.percentile(0.50),
+            roundLatencyP90Ms = latency?.percentile(0.90),
+            roundLatencyP99Ms = latency?.percentile(0.99),
+            droppedReads = batcher.droppedReads - droppedAtStart,
+            deferredBatches = batcher.deferredBatches - deferredAtStart,
+            dbWriteLagMs = if (lagCount == 0L) null else lags[((lagCount - 1) % LAG_SAMPLES).toInt()],
+            dbWriteLagP90Ms = lag?.percentile(0.90),
+            filter = filter,
+            hardwareSelect = hardwareSelect,
+            filteredReads = filteredReads,
+            baudRate = baudRate,
+            // 8N1: ten bits on the wire per byte.
+            linkUtilization = if (baudRate == 0) 0.0 else history.rxBytesPerSecond(windowMs) * 10 / baudRate,
+            outages = outages,
+            downtimeMs = downtimeMs + if (outageStartNanos == 0L) 0 else (lastPublishNanos - outageStartNanos) / 1_000_000L,
+            lastOutage = lastOutage,
+            reconnecting = outageStartNanos != 0L,
+        )
+    }
+
+    private fun sorted(samples: LongArray, count: Long): LongArray? {
+        if (count == 0L) return null
+        return samples.copyOf(minOf(count, samples.size.toLong()).toInt()).apply { sort() }
+    }
+
+    private fun LongArray.percentile(p: Double): Long =
+        this[(Math.ceil(p * size).toInt() - 1).coerceIn(0, size - 1)]
+
+    companion object {
+        const val PUBLISH_INTERVAL_MS = 250L
+        private const val ROUND_HISTORY = 1024
+        private const val LATENCY_SAMPLES = 512
+        private const val LAG_SAMPLES = 128
+    }
+}
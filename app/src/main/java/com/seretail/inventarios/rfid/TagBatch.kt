@@ -0,0 +1,6 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.ReadTag
+
+/** Reads handed downstream together; [firstReadNanos] is when the oldest one arrived (System.nanoTime). */
+class TagBatch(val tags: List<ReadTag>, val firstReadNanos: Long)
@@ -0,0 +1,64 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.ReadTag
+import kotlinx.coroutines.channels.SendChannel
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Groups reader callbacks into batches for [channel]. The reader adds tags from
+ * its actor thread while the inventory coroutine flushes, so the pending batch is
+ * guarded by the batcher's lock; both sides hold it only to append or swap.
+ *
+ * Overflow policy: a batch the bounded channel cannot take stays pending and keeps
+ * growing, so a slow consumer gets bigger batches rather than gaps. Once
+ * [maxPending] reads are waiting, further reads are dropped and counted in
+ * [droppedReads]. Flushes the channel refused are counted in [deferredBatches].
+ */
+internal class TagBatcher(
+    private val channel: SendChannel<TagBatch>,
+    private val maxPending: Int,
+) {
+    private var pending = ArrayList<ReadTag>()
+    private var firstPending = 0L
+    private var lastFlush = System.nanoTime()
+    private val dropped = AtomicLong()
+    private val deferred = AtomicLong()
+
+    val droppedReads: Long get() = dropped.get()
+    val deferredBatches: Long get() = deferred.get()
+
+    @Synchronized
+    fun add(tag: ReadTag) {
+        if (pending.size >= maxPending) {
+            dropped.incrementAndGet()
+            return
+        }
+        if (pending.isEmpty()) firstPending = System.nanoTime()
+        pending.add(tag)
+    }
+
+    @Synchronized
+    fun flushIfDue(intervalMs: Long) {
+        if (System.nanoTime() - lastFlush >= intervalMs * 1_000_000L) flush()
+    }
+
+    /** Hands the pending batch to the channel; returns false if it had to stay pending. */
+    @Synchronized
+    fun flush(): Boolean {
+        lastFlush = System.nanoTime()
+        if (pending.isEmpty()) return true
+        if (channel.trySend(TagBatch(pending, firstPending)).isFailure) {
+            deferred.incrementAndGet()
+            return false
+        }
+        pending = ArrayList()
+        return true
+    }
+
+    /** Gives up on whatever is still pending, e.g. when the reader goes away. */
+    @Synchronized
+    fun discard() {
+        dropped.addAndGet(pending.size.toLong())
+        pending = ArrayList()
+    }
+}
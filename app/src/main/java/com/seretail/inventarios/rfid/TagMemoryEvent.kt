@@ -0,0 +1,18 @@
+package com.seretail.inventarios.rfid
+
+import com.rfid.trans.EpcKey
+
+sealed class TagMemoryEvent {
+    /** Final outcome for one tag; [data] is the hex memory, null when [status] is not 0. */
+    data class Result(val epc: EpcKey, val status: Int, val data: String?, val attempts: Int) : TagMemoryEvent()
+
+    data class Progress(
+        val total: Int,
+        val read: Int,
+        val failed: Int,
+        val pass: Int,
+        val tagsPerSecond: Double,
+        val timeoutMs: Int,
+        val done: Boolean,
+    ) : TagMemoryEvent()
+}
@@ -16,11 +16,13 @@ import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.filled.Assessment
 import androidx.compose.material.icons.filled.DeleteSweep
 import androidx.compose.material.icons.filled.FilterList
 import androidx.compose.material.icons.filled.Nfc
 import androidx.compose.material.icons.filled.PlayArrow
 import androidx.compose.material.icons.filled.Stop
+import androidx.compose.material3.AlertDialog
 import androidx.compose.material3.Button
 import androidx.compose.material3.ButtonDefaults
 import androidx.compose.material3.Card
@@ -39,7 +41,10 @@ import androidx.compose.material3.SliderDefaults
 import androidx.compose.material3.Snackbar
 import androidx.compose.material3.SnackbarHost
 import androidx.compose.material3.SnackbarHostState
+import androidx.compose.material3.Switch
+import androidx.compose.material3.SwitchDefaults
 import androidx.compose.material3.Text
+import androidx.compose.material3.TextButton
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.collectAsState
@@ -54,7 +59,12 @@ import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.unit.dp
 import androidx.hilt.navigation.compose.hiltViewModel
 import com.seretail.inventarios.data.local.entity.RfidTagEntity
+import com.seretail.inventarios.rfid.FilterGain
+import com.seretail.inventarios.rfid.RfidFilter
+import com.seretail.inventarios.rfid.RfidFilterType
 import com.seretail.inventarios.rfid.RfidState
+import com.seretail.inventarios.rfid.RfidTelemetryState
+import com.seretail.inventarios.ui.components.SERTextField
 import com.seretail.inventarios.ui.components.SERTopBar
 import com.seretail.inventarios.ui.theme.DarkBackground
 import com.seretail.inventarios.ui.theme.DarkSurface
@@ -90,6 +100,13 @@ fun RfidCaptureScreen(
                 title = "RFID",
                 onBackClick = onBackClick,
                 actions = {
+                    IconButton(onClick = viewModel::toggleDiagnostics) {
+                        Icon(
+                            Icons.Default.Assessment,
+                            contentDescription = "Diagnóstico",
+                            tint = if (state.showDiagnostics) SERBlue else TextMuted,
+                        )
+                    }
                     IconButton(onClick = viewModel::toggleFilter) {
                         Icon(
                             Icons.Default.FilterList,
@@ -137,7 +154,7 @@ fun RfidCaptureScreen(
                             contentDescription = null,
                             tint = when (state.rfidState) {
                                 is RfidState.Connected, is RfidState.Scanning -> StatusFound
-                                is RfidState.Connecting -> Warning
+                                is RfidState.Connecting, is RfidState.Reconnecting -> Warning
                                 is RfidState.Error -> Error
                                 else -> TextMuted
                             },
@@ -151,6 +168,8 @@ fun RfidCaptureScreen(
                                     is RfidState.Connecting -> "Conectando..."
                                     is RfidState.Connected -> "Conectado"
                                     is RfidState.Scanning -> "Escaneando..."
+                                    is RfidState.Reconnecting ->
+                                        "Reconectando (intento ${(state.rfidState as RfidState.Reconnecting).attempt})..."
                                     is RfidState.Error -> "Error: ${(state.rfidState as RfidState.Error).message}"
                                 },
                                 color = TextPrimary,
@@ -169,7 +188,7 @@ fun RfidCaptureScreen(
                             is RfidState.Connecting -> {
                                 CircularProgressIndicator(modifier = Modifier.size(24.dp), color = SERBlue, strokeWidth = 2.dp)
                             }
-                            is RfidState.Connected, is RfidState.Scanning -> {
+                            is RfidState.Connected, is RfidState.Scanning, is RfidState.Reconnecting -> {
                                 OutlinedButton(
                                     onClick = viewModel::disconnect,
                                     shape = RoundedCornerShape(8.dp),
@@ -238,6 +257,31 @@ fun RfidCaptureScreen(
                 Text("${state.power}", color = TextPrimary, style = MaterialTheme.typography.bodySmall, modifier = Modifier.width(24.dp))
             }
 
+            // EPC+TID mode
+            Row(
+                verticalAlignment = Alignment.CenterVertically,
+                modifier = Modifier.fillMaxWidth().padding(bottom = 4.dp),
+            ) {
+                Text("Leer TID", style = MaterialTheme.typography.labelMedium, color = TextSecondary, modifier = Modifier.weight(1f))
+                Switch(
+                    checked = state.readTid,
+                    onCheckedChange = { viewModel.toggleReadTid() },
+                    enabled = state.rfidState !is RfidState.Scanning,
+                    colors = SwitchDefaults.colors(checkedTrackColor = SERBlue),
+                )
+            }
+
+            // Tag filter
+            RfidTagFilterCard(
+                filter = state.tagFilter,
+                telemetry = state.telemetry,
+                gain = state.filterGain,
+                measuring = state.measuringGain,
+                canMeasure = state.rfidState is RfidState.Connected && state.tagFilter.type != RfidFilterType.NONE,
+                onConfigure = viewModel::showTagFilterDialog,
+                onMeasure = viewModel::measureFilterGain,
+            )
+
             // Start/Stop scan
             Row(
                 modifier = Modifier.fillMaxWidth(),
@@ -288,6 +332,10 @@ fun RfidCaptureScreen(
                 }
             }
 
+            if (state.showDiagnostics) {
+                RfidDiagnosticsPanel(state.telemetry)
+            }
+
             // Tag list
             LazyColumn(
                 modifier = Modifier.fillMaxSize(),
@@ -301,6 +349,197 @@ fun RfidCaptureScreen(
             }
         }
     }
+
+    if (state.showTagFilterDialog) {
+        RfidTagFilterDialog(
+            current = state.tagFilter,
+            onDismiss = viewModel::dismissTagFilterDialog,
+            onSave = viewModel::saveTagFilter,
+        )
+    }
+}
+
+@Composable
+private fun RfidTagFilterCard(
+    filter: RfidFilter,
+    telemetry: RfidTelemetryState,
+    gain: FilterGain?,
+    measuring: Boolean,
+    canMeasure: Boolean,
+    onConfigure: () -> Unit,
+    onMeasure: () -> Unit,
+) {
+    Card(
+        modifier = Modifier.fillMaxWidth().padding(bottom = 4.dp),
+        colors = CardDefaults.cardColors(containerColor = DarkSurface),
+        shape = RoundedCornerShape(8.dp),
+    ) {
+        Column(modifier = Modifier.padding(horizontal = 12.dp, vertical = 4.dp)) {
+            Row(verticalAlignment = Alignment.CenterVertically, modifier = Modifier.fillMaxWidth()) {
+                Column(modifier = Modifier.weight(1f)) {
+                    Text("Filtro de tags", style = MaterialTheme.typography.labelMedium, color = TextSecondary)
+                    Text(filter.description(), style = MaterialTheme.typography.bodySmall, color = TextPrimary)
+                }
+                if (filter.type != RfidFilterType.NONE) {
+                    TextButton(onClick = onMeasure, enabled = canMeasure && !measuring) {
+                        if (measuring) {
+                            CircularProgressIndicator(modifier = Modifier.size(16.dp), color = SERBlue, strokeWidth = 2.dp)
+                        } else {
+                            Text("Medir", color = if (canMeasure) SERBlue else TextMuted)
+                        }
+                    }
+                }
+                TextButton(onClick = onConfigure) { Text("Configurar", color = SERBlue) }
+            }
+            if (filter.type != RfidFilterType.NONE) {
+                Text(
+                    text = if (telemetry.hardwareSelect) "Select en lector" else "Filtro por software",
+                    style = MaterialTheme.typography.labelSmall,
+                    color = if (telemetry.hardwareSelect) StatusFound else Warning,
+                )
+                gain?.let {
+                    Text(
+                        text = "Ganancia medida ×%.1f: %.0f → %.0f lecturas/s propias, %.0f%% ajenas"
+                            .format(it.gain, it.ownReadsPerSecondUnfiltered, it.ownReadsPerSecondFiltered, it.foreignShare * 100),
+                        style = MaterialTheme.typography.labelSmall,
+                        color = TextSecondary,
+                    )
+                }
+            }
+        }
+    }
+}
+
+@Composable
+private fun RfidTagFilterDialog(
+    current: RfidFilter,
+    onDismiss: () -> Unit,
+    onSave: (RfidFilter) -> Unit,
+) {
+    var type by remember { mutableStateOf(current.type) }
+    var value by remember { mutableStateOf(current.value) }
+    var offset by remember { mutableStateOf(current.offsetBits.toString()) }
+    var length by remember { mutableStateOf(current.lengthBits.toString()) }
+    var showTypes by remember { mutableStateOf(false) }
+
+    AlertDialog(
+        onDismissRequest = onDismiss,
+        title = { Text("Filtro de tags de la empresa", color = TextPrimary) },
+        text = {
+            Column(verticalArrangement = Arrangement.spacedBy(8.dp)) {
+                Box {
+                    OutlinedButton(
+                        onClick = { showTypes = true },
+                        modifier = Modifier.fillMaxWidth(),
+                        shape = RoundedCornerShape(8.dp),
+                    ) { Text(type.label(), color = TextPrimary) }
+                    DropdownMenu(expanded = showTypes, onDismissRequest = { showTypes = false }) {
+                        RfidFilterType.entries.forEach { t ->
+                            DropdownMenuItem(
+                                text = { Text(t.label(), color = TextPrimary) },
+                                onClick = {
+                                    type = t
+                                    showTypes = false
+                                },
+                            )
+                        }
+                    }
+                }
+                when (type) {
+                    RfidFilterType.NONE -> Text(
+                        "Se leen todos los tags del campo.",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = TextSecondary,
+                    )
+                    RfidFilterType.EPC_HEADER -> SERTextField(value, { value = it }, "Cabecera (hex, p. ej. 30)")
+                    RfidFilterType.COMPANY_PREFIX -> SERTextField(value, { value = it }, "Prefijo GS1 (6 a 12 dígitos)")
+                    RfidFilterType.BIT_MASK -> {
+                        SERTextField(value, { value = it }, "Máscara (hex)")
+                        Row(horizontalArrangement = Arrangement.spacedBy(8.dp)) {
+                            SERTextField(offset, { offset = it }, "Desde bit", modifier = Modifier.weight(1f))
+                            SERTextField(length, { length = it }, "Bits", modifier = Modifier.weight(1f))
+                        }
+                    }
+                }
+            }
+        },
+        confirmButton = {
+            TextButton(onClick = {
+                onSave(
+                    RfidFilter(
+                        type = type,
+                        value = value.trim(),
+                        offsetBits = offset.toIntOrNull() ?: -1,
+                        lengthBits = length.toIntOrNull() ?: -1,
+                    )
+                )
+            }) { Text("Guardar", color = SERBlue) }
+        },
+        dismissButton = {
+            TextButton(onClick = onDismiss) { Text("Cancelar", color = TextSecondary) }
+        },
+        containerColor = DarkSurface,
+    )
+}
+
+private fun RfidFilterType.label(): String = when (this) {
+    RfidFilterType.NONE -> "Sin filtro"
+    RfidFilterType.EPC_HEADER -> "Cabecera EPC"
+    RfidFilterType.COMPANY_PREFIX -> "Prefijo de empresa (SGTIN)"
+    RfidFilterType.BIT_MASK -> "Máscara de bits"
+}
+
+private fun RfidFilter.description(): String = when (type) {
+    RfidFilterType.NONE -> "Sin filtro: se leen todos los tags"
+    RfidFilterType.EPC_HEADER -> "Cabecera EPC $value"
+    RfidFilterType.COMPANY_PREFIX -> "Prefijo de empresa $value"
+    RfidFilterType.BIT_MASK -> "Máscara $value desde el bit $offsetBits ($lengthBits bits)"
+}
+
+@Composable
+private fun RfidDiagnosticsPanel(telemetry: RfidTelemetryState) {
+    Card(
+        modifier = Modifier.fillMaxWidth().padding(bottom = 8.dp),
+        colors = CardDefaults.cardColors(containerColor = DarkSurface),
+        shape = RoundedCornerShape(8.dp),
+    ) {
+        Column(modifier = Modifier.padding(12.dp), verticalArrangement = Arrangement.spacedBy(2.dp)) {
+            DiagnosticsRow("Lecturas/s", "%.0f (máx. %.0f)".format(telemetry.readsPerSecond, telemetry.peakReadsPerSecond))
+            DiagnosticsRow("Tags nuevos/s", "%.1f".format(telemetry.uniquePerSecond))
+            DiagnosticsRow("Lecturas / únicos", "${telemetry.totalReads} / ${telemetry.uniqueTags}")
+            DiagnosticsRow("Errores CRC", "${telemetry.crcErrors} (%.2f%%)".format(telemetry.crcErrorRate * 100))
+            if (telemetry.baudRate > 0) {
+                DiagnosticsRow("Enlace serie", "${telemetry.baudRate} baud (%.0f%% en uso)".format(telemetry.linkUtilization * 100))
+            }
+            DiagnosticsRow(
+                "Latencia ronda p50/p90/p99",
+                telemetry.roundLatencyP50Ms?.let {
+                    "$it / ${telemetry.roundLatencyP90Ms} / ${telemetry.roundLatencyP99Ms} ms"
+                } ?: "—",
+            )
+            if (telemetry.outages > 0) {
+                DiagnosticsRow("Cortes del lector", "${telemetry.outages} (%.1f s sin leer)".format(telemetry.downtimeMs / 1000.0))
+            }
+            DiagnosticsRow("Lecturas descartadas", "${telemetry.droppedReads}")
+            DiagnosticsRow("Lotes retenidos", "${telemetry.deferredBatches}")
+            if (telemetry.filter != null) {
+                DiagnosticsRow("Filtro", "${telemetry.filter} (${if (telemetry.hardwareSelect) "lector" else "software"})")
+                DiagnosticsRow("Lecturas ajenas descartadas", "${telemetry.filteredReads}")
+            }
+            DiagnosticsRow(
+                "Retraso BD (último/p90)",
+                telemetry.dbWriteLagMs?.let { "$it / ${telemetry.dbWriteLagP90Ms} ms" } ?: "—",
+            )
+        }
+    }
+}
+
+@Composable
+private fun DiagnosticsRow(label: String, value: String) {
+    Row(modifier = Modifier.fillMaxWidth()) {
+        Text(label, style = MaterialTheme.typography.labelSmall, color = TextSecondary, modifier = Modifier.weight(1f))
+        Text(value, style = MaterialTheme.typography.labelSmall, color = TextPrimary)
+    }
 }
 
 @Composable
@@ -334,6 +573,14 @@ private fun RfidTagCard(tag: RfidTagEntity) {
                     color = TextPrimary,
                     maxLines = 1,
                 )
+                tag.tid?.let {
+                    Text(
+                        text = "TID $it",
+                        style = MaterialTheme.typography.labelSmall,
+                        color = TextSecondary,
+                        maxLines = 1,
+                    )
+                }
                 Text(
                     text = if (tag.matched) "Coincide" else "Sin coincidencia",
                     style = MaterialTheme.typography.labelSmall,
@@ -6,9 +6,16 @@ import com.seretail.inventarios.data.local.entity.ActivoFijoSessionEntity
 import com.seretail.inventarios.data.local.entity.RfidTagEntity
 import com.seretail.inventarios.data.repository.ActivoFijoRepository
 import com.seretail.inventarios.data.repository.RfidRepository
+import com.seretail.inventarios.rfid.FilterGain
+import com.seretail.inventarios.rfid.InventoryMode
+import com.seretail.inventarios.rfid.RfidFilter
+import com.seretail.inventarios.rfid.RfidFilterType
 import com.seretail.inventarios.rfid.RfidState
+import com.seretail.inventarios.rfid.RfidTelemetryState
 import com.seretail.inventarios.util.FeedbackManager
+import com.seretail.inventarios.util.PreferencesManager
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.collectLatest
@@ -24,6 +31,15 @@ data class RfidCaptureUiState(
     val totalCount: Int = 0,
     val matchedCount: Int = 0,
     val showMatchedOnly: Boolean = false,
+    /** Read TID with every EPC (polling); otherwise continuous EPC-only reading. */
+    val readTid: Boolean = false,
+    val telemetry: RfidTelemetryState = RfidTelemetryState(),
+    val showDiagnostics: Boolean = false,
+    /** Tag filter of the selected session's empresa. */
+    val tagFilter: RfidFilter = RfidFilter.NONE,
+    val filterGain: FilterGain? = null,
+    val measuringGain: Boolean = false,
+    val showTagFilterDialog: Boolean = false,
     val message: String? = null,
 )
 
@@ -32,14 +48,18 @@ class RfidCaptureViewModel @Inject constructor(
     private val rfidRepository: RfidRepository,
     private val activoFijoRepository: ActivoFijoRepository,
     private val feedbackManager: FeedbackManager,
+    private val preferencesManager: PreferencesManager,
 ) : ViewModel() {
 
     private val _uiState = MutableStateFlow(RfidCaptureUiState())
     val uiState: StateFlow<RfidCaptureUiState> = _uiState
 
+    private var tagFilterJob: Job? = null
+
     init {
         observeRfidState()
         observeIncomingTags()
+        observeTelemetry()
         loadSessions()
     }
 
@@ -53,13 +73,34 @@ class RfidCaptureViewModel @Inject constructor(
 
     private fun observeIncomingTags() {
         viewModelScope.launch {
-            rfidRepository.incomingTags.collect { readTag ->
+            rfidRepository.incomingTags.collect { batch ->
                 val sessionId = _uiState.value.selectedSessionId ?: return@collect
-                val epc = readTag.epcId ?: return@collect
-                feedbackManager.playDecode()
-                val saved = rfidRepository.saveOrUpdateTag(sessionId, epc, readTag.rssi)
-                rfidRepository.matchTagToAsset(saved)
-                updateCounts(sessionId)
+                feedbackManager.onNewTags(rfidRepository.recordReads(sessionId, batch))
+            }
+        }
+        viewModelScope.launch {
+            rfidRepository.tagCounts.collect { counts ->
+                if (counts.sessionId != _uiState.value.selectedSessionId) return@collect
+                _uiState.value = _uiState.value.copy(totalCount = counts.total, matchedCount = counts.matched)
+            }
+        }
+    }
+
+    private fun observeTelemetry() {
+        viewModelScope.launch {
+            rfidRepository.telemetry.collect { telemetry ->
+                _uiState.value = _uiState.value.copy(telemetry = telemetry)
+            }
+        }
+        viewModelScope.launch {
+            rfidRepository.filterGain.collect { gain ->
+                _uiState.value = _uiState.value.copy(filterGain = gain)
+            }
+        }
+        viewModelScope.launch {
+            rfidRepository.sessionSummaries.collect { summary ->
+                val sessionId = _uiState.value.selectedSessionId ?: return@collect
+                rfidRepository.saveSessionSummary(sessionId, summary)
             }
         }
     }
@@ -79,10 +120,26 @@ class RfidCaptureViewModel @Inject constructor(
                 _uiState.value = _uiState.value.copy(tags = tags)
             }
         }
-        viewModelScope.launch { updateCounts(sessionId) }
+        viewModelScope.launch { rfidRepository.openTagSession(sessionId) }
+        observeTagFilter(sessionId)
+    }
+
+    /** Applies the filter of the session's empresa, and again whenever it is changed. */
+    private fun observeTagFilter(sessionId: Long) {
+        tagFilterJob?.cancel()
+        val empresaId = _uiState.value.sessions.find { it.id == sessionId }?.empresaId ?: return
+        tagFilterJob = viewModelScope.launch {
+            preferencesManager.rfidFilter(empresaId).collect { encoded ->
+                val filter = RfidFilter.decode(encoded)
+                rfidRepository.setTagFilter(filter)
+                _uiState.value = _uiState.value.copy(tagFilter = filter)
+            }
+        }
     }
 
-    fun connect() = rfidRepository.connect()
+    fun connect() {
+        viewModelScope.launch { rfidRepository.connect() }
+    }
     fun disconnect() = rfidRepository.disconnect()
 
     fun startScan() {
@@ -90,16 +147,71 @@ class RfidCaptureViewModel @Inject constructor(
             _uiState.value = _uiState.value.copy(message = "Selecciona una sesión primero")
             return
         }
-        rfidRepository.startInventory()
+        rfidRepository.startInventory(
+            if (_uiState.value.readTid) InventoryMode.EPC_AND_TID else InventoryMode.CONTINUOUS
+        )
     }
 
-    fun stopScan() = rfidRepository.stopInventory()
+    fun stopScan() {
+        rfidRepository.stopInventory()
+        viewModelScope.launch { rfidRepository.flushTags() }
+    }
 
     fun setPower(power: Int) {
         rfidRepository.setPower(power)
         _uiState.value = _uiState.value.copy(power = power)
     }
 
+    /** Applies from the next scan. */
+    fun toggleReadTid() {
+        _uiState.value = _uiState.value.copy(readTid = !_uiState.value.readTid)
+    }
+
+    fun toggleDiagnostics() {
+        _uiState.value = _uiState.value.copy(showDiagnostics = !_uiState.value.showDiagnostics)
+    }
+
+    fun showTagFilterDialog() {
+        if (_uiState.value.selectedSessionId == null) {
+            _uiState.value = _uiState.value.copy(message = "Selecciona una sesión primero")
+            return
+        }
+        _uiState.value = _uiState.value.copy(showTagFilterDialog = true)
+    }
+
+    fun dismissTagFilterDialog() {
+        _uiState.value = _uiState.value.copy(showTagFilterDialog = false)
+    }
+
+    /** Saves [filter] for the empresa of the selected session; the collector applies it. */
+    fun saveTagFilter(filter: RfidFilter) {
+        if (filter.type != RfidFilterType.NONE && filter.toTagFilter() == null) {
+            _uiState.value = _uiState.value.copy(message = "Filtro no válido")
+            return
+        }
+        val state = _uiState.value
+        val empresaId = state.sessions.find { it.id == state.selectedSessionId }?.empresaId ?: return
+        _uiState.value = state.copy(showTagFilterDialog = false)
+        viewModelScope.launch {
+            preferencesManager.saveRfidFilter(
+                empresaId,
+                if (filter.type == RfidFilterType.NONE) null else filter.encode(),
+            )
+        }
+    }
+
+    fun measureFilterGain() {
+        if (_uiState.value.measuringGain) return
+        _uiState.value = _uiState.value.copy(measuringGain = true)
+        viewModelScope.launch {
+            val gain = rfidRepository.measureFilterGain()
+            _uiState.value = _uiState.value.copy(measuringGain = false)
+            if (gain == null) {
+                _uiState.value = _uiState.value.copy(message = "No se pudo medir el filtro")
+            }
+        }
+    }
+
     fun toggleFilter() {
         _uiState.value = _uiState.value.copy(showMatchedOnly = !_uiState.value.showMatchedOnly)
     }
@@ -112,16 +224,7 @@ class RfidCaptureViewModel @Inject constructor(
 
     fun clearSession() {
         val sessionId = _uiState.value.selectedSessionId ?: return
-        viewModelScope.launch {
-            rfidRepository.clearSession(sessionId)
-            updateCounts(sessionId)
-        }
-    }
-
-    private suspend fun updateCounts(sessionId: Long) {
-        val total = rfidRepository.countTags(sessionId)
-        val matched = rfidRepository.countMatched(sessionId)
-        _uiState.value = _uiState.value.copy(totalCount = total, matchedCount = matched)
+        viewModelScope.launch { rfidRepository.clearSession(sessionId) }
     }
 
     fun clearMessage() { _uiState.value = _uiState.value.copy(message = null) }
@@ -1,7 +1,6 @@
 package com.seretail.inventarios.util
 
 import android.content.Context
-import android.media.AudioAttributes
 import android.media.AudioManager
 import android.media.ToneGenerator
 import android.os.Build
@@ -9,9 +8,17 @@ import android.os.VibrationEffect
 import android.os.Vibrator
 import android.os.VibratorManager
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Beeps and vibrations for the RFID, hardware scanner and camera paths. Every
+ * request goes through one [FeedbackScheduler], so they return at once and
+ * bursts are coalesced instead of queuing up tones.
+ */
 @Singleton
 class FeedbackManager @Inject constructor(
     @ApplicationContext private val context: Context,
@@ -26,20 +33,26 @@ class FeedbackManager @Inject constructor(
         }
     }
 
-    fun playDecode() {
-        playTone(ToneGenerator.TONE_PROP_BEEP, 150)
-        vibrate(100)
+    // One generator for the app's lifetime; startTone() cuts off the previous tone.
+    private val toneGenerator: ToneGenerator? by lazy {
+        try {
+            ToneGenerator(AudioManager.STREAM_NOTIFICATION, 80)
+        } catch (_: Exception) {
+            null
+        }
     }
 
-    fun playSuccess() {
-        playTone(ToneGenerator.TONE_PROP_ACK, 200)
-        vibrate(50)
-    }
+    private var lastTickNanos = 0L
+    private val scheduler = FeedbackScheduler(CoroutineScope(SupervisorJob() + Dispatchers.Default), ::play)
 
-    fun playError() {
-        playTone(ToneGenerator.TONE_PROP_NACK, 300)
-        vibrate(500)
-    }
+    fun playDecode() = scheduler.request(FeedbackCue.DECODE)
+
+    fun playSuccess() = scheduler.request(FeedbackCue.SUCCESS)
+
+    fun playError() = scheduler.request(FeedbackCue.ERROR)
+
+    /** RFID reads: ticks at the rate new tags come in, up to a cap. */
+    fun onNewTags(count: Int) = scheduler.onNewTags(count)
 
     fun vibrate(durationMs: Long) {
         try {
@@ -52,14 +65,39 @@ class FeedbackManager @Inject constructor(
         } catch (_: Exception) {}
     }
 
+    /** On the scheduler's coroutine, one cue at a time. */
+    private fun play(cue: FeedbackCue) {
+        when (cue) {
+            FeedbackCue.TICK -> {
+                playTone(ToneGenerator.TONE_PROP_BEEP, TICK_TONE_MS)
+                // Vibrating on every tick would buzz non-stop; only mark the start of a burst.
+                val now = System.nanoTime()
+                if (now - lastTickNanos > TICK_BURST_GAP_MS * 1_000_000L) vibrate(30)
+                lastTickNanos = now
+            }
+            FeedbackCue.DECODE -> {
+                playTone(ToneGenerator.TONE_PROP_BEEP, 150)
+                vibrate(100)
+            }
+            FeedbackCue.SUCCESS -> {
+                playTone(ToneGenerator.TONE_PROP_ACK, 200)
+                vibrate(50)
+            }
+            FeedbackCue.ERROR -> {
+                playTone(ToneGenerator.TONE_PROP_NACK, 300)
+                vibrate(500)
+            }
+        }
+    }
+
     private fun playTone(toneType: Int, durationMs: Int) {
         try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 80)
-            toneGenerator.startTone(toneType, durationMs)
-            // Release after tone plays
-            android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
-                toneGenerator.release()
-            }, durationMs.toLong() + 100)
+            toneGenerator?.startTone(toneType, durationMs)
         } catch (_: Exception) {}
     }
+
+    companion object {
+        private const val TICK_TONE_MS = 40
+        private const val TICK_BURST_GAP_MS = 1_000L
+    }
 }
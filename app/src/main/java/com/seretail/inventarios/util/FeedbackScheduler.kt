@@ -0,0 +1,77 @@
+package com.seretail.inventarios.util
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicInteger
+
+/** Feedback cues, lowest priority first; [gapMs] is how long a cue holds the output. */
+enum class FeedbackCue(val gapMs: Long) {
+    TICK(1000L / FeedbackScheduler.MAX_TICKS_PER_SECOND),
+    DECODE(150),
+    SUCCESS(200),
+    ERROR(300),
+}
+
+/**
+ * Paces beeps and vibrations from every capture path through one coroutine.
+ * Requests only set a flag or bump a counter and never block, so callers on an
+ * ingest path can make them per read. The coroutine sleeps on a conflated
+ * channel while idle and plays at most one cue per gap: of the cues requested
+ * meanwhile only the highest priority is played, and new tags come out as
+ * Geiger-style ticks, one per tag up to [MAX_TICKS_PER_SECOND]. Ticks still owed
+ * are capped at [MAX_PENDING_TICKS], so they stop soon after the tags do.
+ */
+class FeedbackScheduler(
+    scope: CoroutineScope,
+    private val output: (FeedbackCue) -> Unit,
+) {
+    private val pendingCue = AtomicInteger(NONE)
+    private val pendingTicks = AtomicInteger()
+    private val wake = Channel<Unit>(Channel.CONFLATED)
+
+    init {
+        scope.launch { run() }
+    }
+
+    /** Plays [cue] in the next gap, unless a higher priority cue comes first. */
+    fun request(cue: FeedbackCue) {
+        if (cue == FeedbackCue.TICK) {
+            onNewTags(1)
+            return
+        }
+        pendingCue.accumulateAndGet(cue.ordinal, ::maxOf)
+        wake.trySend(Unit)
+    }
+
+    /** [count] tags were seen for the first time. */
+    fun onNewTags(count: Int) {
+        if (count <= 0) return
+        pendingTicks.updateAndGet { minOf(MAX_PENDING_TICKS, it + count) }
+        wake.trySend(Unit)
+    }
+
+    private suspend fun run() {
+        for (signal in wake) {
+            while (true) {
+                val requested = pendingCue.getAndSet(NONE)
+                val cue = when {
+                    requested != NONE -> FeedbackCue.entries[requested]
+                    pendingTicks.getAndUpdate { if (it > 0) it - 1 else 0 } > 0 -> FeedbackCue.TICK
+                    else -> break
+                }
+                try {
+                    output(cue)
+                } catch (_: Exception) {}
+                delay(cue.gapMs)
+            }
+        }
+    }
+
+    companion object {
+        const val MAX_TICKS_PER_SECOND = 15
+        const val MAX_PENDING_TICKS = MAX_TICKS_PER_SECOND / 2
+        private const val NONE = -1
+    }
+}
@@ -52,6 +52,11 @@ class PreferencesManager @Inject constructor(
         // Active session tracking
         private val KEY_ACTIVE_INVENTARIO_SESSION_ID = longPreferencesKey("active_inventario_session_id")
         private val KEY_ACTIVE_ACTIVO_FIJO_SESSION_ID = longPreferencesKey("active_activo_fijo_session_id")
+
+        // RFID tag filter, one per empresa
+        private fun keyRfidFilter(empresaId: Long) = stringPreferencesKey("rfid_filter_$empresaId")
+        // Where the RFID reader answered, one per device model
+        private fun keyRfidReader(model: String) = stringPreferencesKey("rfid_reader_$model")
     }
 
     val token: Flow<String?> = dataStore.data.map { it[KEY_TOKEN] }
@@ -82,6 +87,12 @@ class PreferencesManager @Inject constructor(
     val activeInventarioSessionId: Flow<Long?> = dataStore.data.map { it[KEY_ACTIVE_INVENTARIO_SESSION_ID] }
     val activeActivoFijoSessionId: Flow<Long?> = dataStore.data.map { it[KEY_ACTIVE_ACTIVO_FIJO_SESSION_ID] }
 
+    /** The empresa's RFID tag filter as encoded by RfidFilter; null when none is set. */
+    fun rfidFilter(empresaId: Long): Flow<String?> = dataStore.data.map { it[keyRfidFilter(empresaId)] }
+
+    /** The model's RFID reader port as encoded by ReaderProfile; null until one was found. */
+    fun rfidReaderProfile(model: String): Flow<String?> = dataStore.data.map { it[keyRfidReader(model)] }
+
     suspend fun saveToken(token: String) {
         dataStore.edit { it[KEY_TOKEN] = token }
     }
@@ -143,6 +154,16 @@ class PreferencesManager @Inject constructor(
     suspend fun saveCaptureGps(v: Boolean) { dataStore.edit { it[KEY_CAPTURE_GPS] = v } }
     suspend fun saveConteoUnidad(v: Boolean) { dataStore.edit { it[KEY_CONTEO_UNIDAD] = v } }
 
+    suspend fun saveRfidFilter(empresaId: Long, encoded: String?) {
+        dataStore.edit {
+            if (encoded == null) it.remove(keyRfidFilter(empresaId)) else it[keyRfidFilter(empresaId)] = encoded
+        }
+    }
+
+    suspend fun saveRfidReaderProfile(model: String, encoded: String) {
+        dataStore.edit { it[keyRfidReader(model)] = encoded }
+    }
+
     // Active session persistence
     suspend fun saveActiveInventarioSession(sessionId: Long) {
         dataStore.edit { it[KEY_ACTIVE_INVENTARIO_SESSION_ID] = sessionId }
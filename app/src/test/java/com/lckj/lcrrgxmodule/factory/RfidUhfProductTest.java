@@ -0,0 +1,134 @@
+package com.lckj.lcrrgxmodule.factory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.rfid.trans.HexCodec;
+import com.rfid.trans.ReaderEmulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tag access of RfidUhfProduct against the module emulator. */
+public class RfidUhfProductTest {
+
+    private static final byte[] PASSWORD = new byte[4];
+
+    private final ReaderEmulator emulator = new ReaderEmulator(config());
+    private final RfidUhfProduct product = new RfidUhfProduct(this.emulator);
+
+    private static ReaderEmulator.Config config() {
+        ReaderEmulator.Config config = new ReaderEmulator.Config();
+        config.tagCount = 5;
+        return config;
+    }
+
+    @Before
+    public void connect() {
+        assertEquals(0, this.product.Connect("emulator", 115200));
+    }
+
+    @After
+    public void disconnect() {
+        this.product.DisConnect();
+    }
+
+    @Test
+    public void writeEpcByTid() {
+        String tid = hex(this.emulator.getTid(2));
+        for (String epc : new String[] {"300833B2DDD9014000000001", "E2801170", "0123456789ABCDEF0123456789ABCDEF"}) {
+            assertEquals(epc, 0, this.product.WriteEPCByTID(tid, epc, PASSWORD));
+            assertArrayEquals(epc, fromHex(epc), this.emulator.getEpc(2));
+        }
+    }
+
+    @Test
+    public void writeEpcByTidRejectsBadArguments() {
+        String tid = hex(this.emulator.getTid(0));
+        byte[] before = this.emulator.getEpc(0);
+        assertEquals(255, this.product.WriteEPCByTID(tid, "E28", PASSWORD));
+        assertEquals(255, this.product.WriteEPCByTID(tid, "", PASSWORD));
+        assertEquals(255, this.product.WriteEPCByTID(tid, LONGEST_EPC + "ABCD", PASSWORD));
+        assertEquals(255, this.product.WriteEPCByTID(tid, "ZZ001122", PASSWORD));
+        assertEquals(255, this.product.WriteEPCByTID("QQQQ", "00112233", PASSWORD));
+        assertEquals(255, this.product.WriteEPCByTID(tid, "00112233", null));
+        assertArrayEquals(before, this.emulator.getEpc(0));
+    }
+
+    @Test
+    public void userMemoryByTid() {
+        String tid = hex(this.emulator.getTid(3));
+        assertEquals(0, this.product.WriteDataByTID(tid, (byte) 3, (byte) 4, PASSWORD, "ABCD1234"));
+        assertEquals("ABCD1234", this.product.ReadDataByTID(tid, (byte) 3, (byte) 4, (byte) 2, PASSWORD));
+    }
+
+    @Test
+    public void badHexIsAParameterError() {
+        String epc = hex(this.emulator.getEpc(1));
+        String tid = hex(this.emulator.getTid(1));
+        assertEquals("FF", this.product.ReadDataByEPC("ZZZZ", (byte) 1, (byte) 2, (byte) 1, PASSWORD));
+        assertEquals("FF", this.product.ReadDataByTID("ZZZZ", (byte) 1, (byte) 2, (byte) 1, PASSWORD));
+        assertEquals(255, this.product.WriteDataByEPC("ZZZZ", (byte) 3, (byte) 0, PASSWORD, "0011"));
+        assertEquals(255, this.product.WriteDataByEPC(epc, (byte) 3, (byte) 0, PASSWORD, "00GG"));
+        assertEquals(255, this.product.WriteDataByTID(tid, (byte) 3, (byte) 0, PASSWORD, "00GG"));
+        assertEquals(255, this.product.WriteDataByTID("ZZZZ", (byte) 3, (byte) 0, PASSWORD, "0011"));
+        assertEquals(255, this.product.Lock(epc, (byte) 0, (byte) 0, "0000000G"));
+        assertEquals(255, this.product.Kill("ZZZZ", "00000000"));
+    }
+
+    @Test
+    public void writeEpcByTidKeepsTheTagsPcBits() {
+        String tid = hex(this.emulator.getTid(1));
+        // UMI set, NSI/AFI 0xA5.
+        this.emulator.setPcFlags(1, 0x04A5);
+        int lengthBits = this.emulator.getPc(1) & 0xF800;
+        assertEquals(0, this.product.WriteEPCByTID(tid, "0123456789ABCDEF01234567", PASSWORD));
+        assertEquals(lengthBits | 0x04A5, this.emulator.getPc(1));
+        assertEquals(0, this.product.WriteEPCByTID(tid, "E2801170", PASSWORD));
+        assertEquals(2 << 11 | 0x04A5, this.emulator.getPc(1));
+        assertArrayEquals(fromHex("E2801170"), this.emulator.getEpc(1));
+    }
+
+    @Test
+    public void disconnectEndsTheReaderThread() throws InterruptedException {
+        assertEquals(0, this.product.DisConnect());
+        int before = readerThreads();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, this.product.Connect("emulator", 115200));
+            assertEquals(0, this.product.DisConnect());
+        }
+        Thread.sleep(100);
+        assertEquals(before, readerThreads());
+        assertEquals("30", this.product.ReadDataByEPC(hex(this.emulator.getEpc(0)), (byte) 1, (byte) 2, (byte) 1,
+                PASSWORD));
+        assertEquals(0, this.product.Connect("emulator", 115200));
+    }
+
+    private static final String LONGEST_EPC = repeat("AB", 62);
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        return HexCodec.fromHex(hex);
+    }
+
+    private static int readerThreads() {
+        int n = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("uhf-reader") && t.isAlive()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static String hex(byte[] b) {
+        return HexCodec.toHex(b, 0, b.length);
+    }
+}
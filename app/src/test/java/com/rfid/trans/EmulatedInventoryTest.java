@@ -0,0 +1,130 @@
+package com.rfid.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Test;
+
+/** Inventory through BaseReader against the in-process module emulator. */
+public class EmulatedInventoryTest {
+
+    private static final int TAGS = 100;
+
+    private ReaderEmulator emulator;
+    private BaseReader reader;
+    private final List<byte[]> population = population();
+    private final Set<String> seen = new HashSet<>();
+    private int crcErrors = 0;
+
+    @After
+    public void disconnect() {
+        if (this.reader != null) {
+            this.reader.DisConnect();
+        }
+    }
+
+    @Test
+    public void answerModeRoundsReadEveryTag() {
+        connect(new ReaderEmulator.Config());
+        int rounds = inventoryUntilAllSeen(6, 50, false);
+        assertEquals(populationEpcs(), this.seen);
+        assertTrue("rounds " + rounds, rounds <= 10);
+        assertEquals(0, this.crcErrors);
+    }
+
+    @Test
+    public void corruptedRepliesAreReportedAndTheRestDecoded() {
+        ReaderEmulator.Config config = new ReaderEmulator.Config();
+        config.frameCorruptionRate = 0.2;
+        connect(config);
+        inventoryUntilAllSeen(6, 200, true);
+        assertEquals(populationEpcs(), this.seen);
+        assertTrue(this.crcErrors > 0);
+    }
+
+    @Test
+    public void activeModeStreamReadsEveryTag() {
+        connect(new ReaderEmulator.Config());
+        assertEquals(0, this.reader.StartActiveInventory((byte) 0));
+        int[] cardNum = new int[1];
+        for (int reads = 0; this.seen.size() < TAGS && reads < 500; reads++) {
+            assertEquals(0, this.reader.ReadActiveModeData(cardNum, 100));
+        }
+        assertEquals(0, this.reader.StopActiveInventory((byte) 0));
+        assertEquals(populationEpcs(), this.seen);
+    }
+
+    private void connect(ReaderEmulator.Config config) {
+        this.emulator = new ReaderEmulator(config);
+        this.emulator.setTags(this.population);
+        this.reader = new BaseReader(this.emulator);
+        assertEquals(0, this.reader.Connect("emulator", 115200, 0));
+        this.reader.SetCallBack(new TagCallback() {
+            @Override
+            public int CRCErrorCallBack(int i) {
+                EmulatedInventoryTest.this.crcErrors += i;
+                return 0;
+            }
+
+            @Override
+            public void FinishCallBack() {
+            }
+
+            @Override
+            public void tagCallback(ReadTag readTag) {
+                EmulatedInventoryTest.this.seen.add(readTag.getEpcId());
+            }
+
+            @Override
+            public int tagCallbackFailed(int i) {
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * Session 0 Inventory_G2 rounds at {@code q} until every tag was read; returns
+     * the rounds run. With {@code lossy}, a round whose closing frame was corrupted
+     * may end in the reply timeout (48).
+     */
+    private int inventoryUntilAllSeen(int q, int maxRounds, boolean lossy) {
+        byte[] epcList = new byte[8192];
+        int[] cardNum = new int[1];
+        int[] epcLength = new int[1];
+        int rounds = 0;
+        while (this.seen.size() < TAGS && rounds < maxRounds) {
+            int status = this.reader.Inventory_G2((byte) 0, (byte) q, (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                    (byte) 0x80, 3, epcList, cardNum, epcLength);
+            if (!lossy || status != 48) {
+                assertEquals(0, status);
+            }
+            rounds++;
+        }
+        return rounds;
+    }
+
+    private Set<String> populationEpcs() {
+        Set<String> epcs = new HashSet<>();
+        for (byte[] epc : this.population) {
+            epcs.add(RecordedFrames.toHex(epc, 0, epc.length));
+        }
+        return epcs;
+    }
+
+    private static List<byte[]> population() {
+        Random random = new Random(TAGS);
+        List<byte[]> tags = new ArrayList<>();
+        for (int i = 0; i < TAGS; i++) {
+            byte[] epc = new byte[12];
+            random.nextBytes(epc);
+            tags.add(epc);
+        }
+        return tags;
+    }
+}
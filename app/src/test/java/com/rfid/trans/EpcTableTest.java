@@ -0,0 +1,86 @@
+package com.rfid.trans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class EpcTableTest {
+
+    @Test
+    public void countsMatchAHashMapAcrossEpcLengths() {
+        Random random = new Random(11);
+        byte[][] epcs = new byte[2000][];
+        for (int i = 0; i < epcs.length; i++) {
+            // 2 to 62 bytes: packed and wide keys, and lengths sharing a prefix.
+            epcs[i] = new byte[2 + random.nextInt(61)];
+            random.nextBytes(epcs[i]);
+        }
+        EpcTable table = new EpcTable(16);
+        Map<ByteBuffer, Integer> reference = new HashMap<>();
+        Map<ByteBuffer, Integer> entries = new HashMap<>();
+        byte[] buf = new byte[80];
+        for (int n = 0; n < 50_000; n++) {
+            byte[] epc = epcs[random.nextInt(epcs.length)];
+            int off = random.nextInt(buf.length - epc.length + 1);
+            System.arraycopy(epc, 0, buf, off, epc.length);
+            int e = table.record(buf, off, epc.length, 50, 1, n);
+            ByteBuffer key = ByteBuffer.wrap(epc);
+            reference.merge(key, 1, Integer::sum);
+            Integer known = entries.putIfAbsent(key, e);
+            assertEquals(known == null ? e : known.intValue(), e);
+            assertEquals(reference.get(key).intValue(), table.readCount(e));
+        }
+        assertEquals(reference.size(), table.size());
+        byte[] out = new byte[64];
+        for (Map.Entry<ByteBuffer, Integer> entry : entries.entrySet()) {
+            int e = entry.getValue();
+            int len = table.copyEpc(e, out, 1);
+            assertArrayEquals(entry.getKey().array(), Arrays.copyOfRange(out, 1, 1 + len));
+        }
+    }
+
+    @Test
+    public void keepsPeakAndLastSighting() {
+        EpcTable table = new EpcTable();
+        byte[] epc = RecordedFrames.fromHex("E2000017221101441890ABCD");
+        int e = table.record(epc, 0, epc.length, 60, 1, 100);
+        table.record(epc, 0, epc.length, 72, 2, 200);
+        table.record(epc, 0, epc.length, 55, 3, 300);
+        assertEquals(3, table.readCount(e));
+        assertEquals(72, table.peakRssi(e));
+        assertEquals(55, table.lastRssi(e));
+        assertEquals(3, table.antenna(e));
+        assertEquals(100, table.firstSeen(e));
+        assertEquals(300, table.lastSeen(e));
+    }
+
+    @Test
+    public void unreportedReadsRestartAfterMarking() {
+        EpcTable table = new EpcTable();
+        byte[] epc = RecordedFrames.fromHex("300833B2DDD9014000000001");
+        int e = table.record(epc, 0, epc.length, 60, 1, 0);
+        table.markReported(e);
+        table.record(epc, 0, epc.length, 60, 1, 0);
+        table.record(epc, 0, epc.length, 60, 1, 0);
+        assertEquals(2, table.unreportedReads(e));
+        table.markReported(e);
+        assertEquals(0, table.unreportedReads(e));
+    }
+
+    @Test
+    public void clearForgetsEveryEpc() {
+        EpcTable table = new EpcTable();
+        byte[] epc = new byte[40];
+        table.record(epc, 0, epc.length, 60, 1, 0);
+        table.clear();
+        assertEquals(0, table.size());
+        int e = table.record(epc, 0, epc.length, 60, 1, 0);
+        assertEquals(1, table.readCount(e));
+    }
+}
@@ -0,0 +1,159 @@
+package com.rfid.trans;
+
+import static com.rfid.trans.RecordedFrames.DONE_ONE_TAG;
+import static com.rfid.trans.RecordedFrames.MORE_TWO_TAGS;
+import static com.rfid.trans.RecordedFrames.NO_TAG;
+import static com.rfid.trans.RecordedFrames.READER_INFO;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class FrameAssemblerTest {
+
+    private static final int INVENTORY = 0x01;
+
+    private final FrameAssembler rx = new FrameAssembler(1024);
+
+    @Test
+    public void wholeFrame() {
+        byte[] frame = RecordedFrames.fromHex(DONE_ONE_TAG);
+        append(frame);
+        int off = this.rx.nextFrame(INVENTORY);
+        assertEquals(0, off);
+        assertEquals(frame.length, this.rx.frameLength());
+        assertFrame(frame, off);
+        this.rx.consumeFrame();
+        assertEquals(0, this.rx.available());
+        assertEquals(-1, this.rx.nextFrame(INVENTORY));
+    }
+
+    @Test
+    public void frameSplitAcrossChunks() {
+        byte[] frame = RecordedFrames.fromHex(MORE_TWO_TAGS);
+        for (int i = 0; i < frame.length - 1; i++) {
+            this.rx.append(frame, i, 1);
+            assertEquals("after " + (i + 1) + " bytes", -1, this.rx.nextFrame(INVENTORY));
+        }
+        this.rx.append(frame, frame.length - 1, 1);
+        int off = this.rx.nextFrame(INVENTORY);
+        assertTrue(off >= 0);
+        assertFrame(frame, off);
+    }
+
+    @Test
+    public void concatenatedFramesComeOutInTurn() {
+        byte[] first = RecordedFrames.fromHex(MORE_TWO_TAGS);
+        byte[] second = RecordedFrames.fromHex(DONE_ONE_TAG);
+        byte[] third = RecordedFrames.fromHex(NO_TAG);
+        append(concat(first, second, third));
+        for (byte[] frame : new byte[][] {first, second, third}) {
+            int off = this.rx.nextFrame(INVENTORY);
+            assertTrue(off >= 0);
+            assertFrame(frame, off);
+            this.rx.consumeFrame();
+        }
+        assertEquals(-1, this.rx.nextFrame(INVENTORY));
+        assertEquals(0, this.rx.takeCrcErrors());
+    }
+
+    @Test
+    public void badCrcFrameIsSkippedAndCounted() {
+        byte[] bad = RecordedFrames.fromHex(DONE_ONE_TAG);
+        bad[9] ^= 0x40;
+        byte[] good = RecordedFrames.fromHex(MORE_TWO_TAGS);
+        append(concat(bad, good));
+        int off = this.rx.nextFrame(INVENTORY);
+        assertTrue(off >= 0);
+        assertFrame(good, off);
+        assertEquals(1, this.rx.takeCrcErrors());
+        assertEquals(0, this.rx.takeCrcErrors());
+    }
+
+    @Test
+    public void noiseAndOtherRepliesInFrontAreDiscarded() {
+        byte[] noise = {0x00, (byte) 0xFF, 0x03, 0x11};
+        byte[] frame = RecordedFrames.fromHex(DONE_ONE_TAG);
+        append(concat(noise, RecordedFrames.fromHex(READER_INFO), frame));
+        int off = this.rx.nextFrame(INVENTORY);
+        assertTrue(off >= 0);
+        assertFrame(frame, off);
+    }
+
+    @Test
+    public void corruptedLengthJumpsToLaterCompleteFrame() {
+        byte[] broken = RecordedFrames.fromHex(DONE_ONE_TAG);
+        broken[0] = (byte) 0xF0;
+        byte[] good = RecordedFrames.fromHex(MORE_TWO_TAGS);
+        append(concat(broken, good));
+        int off = this.rx.nextFrame(INVENTORY);
+        assertTrue(off >= 0);
+        assertFrame(good, off);
+    }
+
+    @Test
+    public void illegalCommandReplyIsAccepted() {
+        byte[] frame = RecordedFrames.fromHex("050000FE" + RecordedFrames.crcHex("050000FE"));
+        append(frame);
+        int off = this.rx.nextFrame(INVENTORY);
+        assertTrue(off >= 0);
+        assertFrame(frame, off);
+    }
+
+    @Test
+    public void overflowDropsBufferedBytes() {
+        byte[] fill = new byte[1010];
+        assertTrue(this.rx.append(fill, 0, fill.length));
+        byte[] frame = RecordedFrames.fromHex(DONE_ONE_TAG);
+        assertFalse(this.rx.append(frame, 0, frame.length));
+        assertEquals(frame.length, this.rx.available());
+        int off = this.rx.nextFrame(INVENTORY);
+        assertTrue(off >= 0);
+        assertFrame(frame, off);
+    }
+
+    @Test
+    public void frameWrappingTheRingIsContiguousInTheMirror() {
+        FrameAssembler ring = new FrameAssembler(FrameAssembler.MAX_FRAME);
+        byte[] frame = RecordedFrames.fromHex(MORE_TWO_TAGS);
+        // Zero bytes are skipped as noise, leaving the frame's head 10 bytes before the end of the ring.
+        byte[] zeros = new byte[FrameAssembler.MAX_FRAME - 16];
+        ring.append(zeros, 0, zeros.length);
+        ring.append(frame, 0, 10);
+        assertEquals(-1, ring.nextFrame(INVENTORY));
+        assertEquals(10, ring.available());
+        ring.append(frame, 10, frame.length - 10);
+        int off = ring.nextFrame(INVENTORY);
+        assertEquals(zeros.length, off);
+        assertTrue(off + frame.length > FrameAssembler.MAX_FRAME);
+        assertArrayEquals(frame, Arrays.copyOfRange(ring.array(), off, off + frame.length));
+        ring.consumeFrame();
+        assertEquals(0, ring.available());
+    }
+
+    private void append(byte[] b) {
+        assertTrue(this.rx.append(b, 0, b.length));
+    }
+
+    private void assertFrame(byte[] expected, int off) {
+        assertEquals(expected.length, this.rx.frameLength());
+        assertArrayEquals(expected, Arrays.copyOfRange(this.rx.array(), off, off + expected.length));
+    }
+
+    static byte[] concat(byte[]... parts) {
+        int n = 0;
+        for (byte[] p : parts) {
+            n += p.length;
+        }
+        byte[] out = new byte[n];
+        int at = 0;
+        for (byte[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,182 @@
+package com.rfid.trans;
+
+import static com.rfid.trans.RecordedFrames.DONE_ONE_TAG;
+import static com.rfid.trans.RecordedFrames.FULL_ONE_TAG;
+import static com.rfid.trans.RecordedFrames.MORE_TWO_TAGS;
+import static com.rfid.trans.RecordedFrames.NO_TAG;
+import static com.rfid.trans.RecordedFrames.TIMED_OUT_ONE_TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Inventory_G2 rounds decoded from recorded replies. */
+public class InventoryDecodeTest {
+
+    private static final String TAG_A = "E2000017221101441890ABCD";
+    private static final String TAG_B = "300833B2DDD9014000000001";
+    private static final String TAG_C = "E28011700000020D6B2F1A33";
+
+    private final ScriptedTransport transport = new ScriptedTransport();
+    private final BaseReader reader = new BaseReader(this.transport);
+    private final List<String> epcs = new ArrayList<>();
+    private final List<Integer> rssis = new ArrayList<>();
+    private final List<Integer> readCounts = new ArrayList<>();
+    private int crcErrors = 0;
+    private final int[] cardNum = new int[1];
+    private final int[] epcLength = new int[1];
+    private final byte[] epcList = new byte[4096];
+
+    @Before
+    public void connect() {
+        this.reader.Connect("test", 57600, 0);
+        this.reader.SetCallBack(new TagCallback() {
+            @Override
+            public int CRCErrorCallBack(int i) {
+                InventoryDecodeTest.this.crcErrors += i;
+                return 0;
+            }
+
+            @Override
+            public void FinishCallBack() {
+            }
+
+            @Override
+            public void tagCallback(ReadTag readTag) {
+                InventoryDecodeTest.this.epcs.add(readTag.getEpcId());
+                InventoryDecodeTest.this.rssis.add(readTag.rssi);
+                InventoryDecodeTest.this.readCounts.add(readTag.readCount);
+            }
+
+            @Override
+            public int tagCallbackFailed(int i) {
+                return 0;
+            }
+        });
+    }
+
+    @After
+    public void disconnect() {
+        this.reader.DisConnect();
+    }
+
+    @Test
+    public void continuationThenDone() {
+        this.transport.reply(MORE_TWO_TAGS, DONE_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(3, this.cardNum[0]);
+        assertEquals(Arrays.asList(TAG_A, TAG_B, TAG_C), this.epcs);
+        assertEquals(Arrays.asList(0x4A, 0x3C, 0x52), this.rssis);
+        // Each record is copied as received: EPCLen EPC RSSI.
+        assertEquals(3 * (1 + 12 + 1), this.epcLength[0]);
+        assertEquals(12, this.epcList[0]);
+    }
+
+    @Test
+    public void scanTimeUsedUpEndsTheRound() {
+        this.transport.reply(TIMED_OUT_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(Arrays.asList(TAG_A), this.epcs);
+    }
+
+    @Test
+    public void moduleBufferFullEndsTheRound() {
+        this.transport.reply(FULL_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(Arrays.asList(TAG_B), this.epcs);
+    }
+
+    @Test
+    public void noTagEndsTheRoundEmpty() {
+        this.transport.reply(NO_TAG);
+        assertEquals(0, inventory());
+        assertEquals(0, this.cardNum[0]);
+        assertEquals(0, this.epcs.size());
+    }
+
+    @Test
+    public void severalContinuationsBeforeTheEnd() {
+        this.transport.reply(MORE_TWO_TAGS, MORE_TWO_TAGS, DONE_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(5, this.cardNum[0]);
+    }
+
+    @Test
+    public void replySplitIntoSmallChunks() {
+        // Five bytes at a time.
+        String all = MORE_TWO_TAGS + DONE_ONE_TAG;
+        String[] chunks = new String[(all.length() + 9) / 10];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = all.substring(10 * i, Math.min(all.length(), 10 * i + 10));
+        }
+        this.transport.reply(chunks);
+        assertEquals(0, inventory());
+        assertEquals(Arrays.asList(TAG_A, TAG_B, TAG_C), this.epcs);
+    }
+
+    @Test
+    public void repliesConcatenatedInOneChunk() {
+        this.transport.reply(MORE_TWO_TAGS + MORE_TWO_TAGS + DONE_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(Arrays.asList(TAG_A, TAG_B, TAG_A, TAG_B, TAG_C), this.epcs);
+    }
+
+    @Test
+    public void chunksCuttingAcrossFrames() {
+        String all = MORE_TWO_TAGS + DONE_ONE_TAG;
+        this.transport.reply(all.substring(0, 20), all.substring(20, 90), all.substring(90));
+        assertEquals(0, inventory());
+        assertEquals(Arrays.asList(TAG_A, TAG_B, TAG_C), this.epcs);
+    }
+
+    @Test
+    public void badCrcFrameIsDroppedAndReported() {
+        byte[] bad = RecordedFrames.fromHex(MORE_TWO_TAGS);
+        bad[10] ^= 0x01;
+        this.transport.reply(RecordedFrames.toHex(bad, 0, bad.length), DONE_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(Arrays.asList(TAG_C), this.epcs);
+        // Bytes inside the broken frame that look like a frame header fail the CRC too.
+        assertTrue(this.crcErrors >= 1);
+    }
+
+    @Test
+    public void illegalCommandReply() {
+        this.transport.reply("050000FE" + RecordedFrames.crcHex("050000FE"));
+        assertEquals(0xFE, inventory());
+    }
+
+    @Test
+    public void unansweredRoundGivesUpAtTheDeadline() {
+        // Nothing queued: the round waits out its scan time plus the margin and reports 48.
+        assertEquals(48, inventory());
+        assertEquals(0, this.cardNum[0]);
+        assertEquals(1, this.transport.written().size());
+    }
+
+    @Test
+    public void dedupReportsFirstSightingsThenSummaries() {
+        this.reader.SetTagDedup(new EpcTable(), 60_000);
+        this.transport.reply(MORE_TWO_TAGS, MORE_TWO_TAGS, DONE_ONE_TAG);
+        assertEquals(0, inventory());
+        assertEquals(5, this.cardNum[0]);
+        assertEquals(Arrays.asList(TAG_A, TAG_B, TAG_C), this.epcs);
+        assertEquals(Arrays.asList(1, 1, 1), this.readCounts);
+        this.reader.FlushTagSummaries();
+        // The repeat reads of A and B, one summary each; C has nothing left to report.
+        assertEquals(Arrays.asList(TAG_A, TAG_B, TAG_C, TAG_A, TAG_B), this.epcs);
+        assertEquals(Arrays.asList(1, 1, 1, 1, 1), this.readCounts);
+        this.reader.FlushTagSummaries();
+        assertEquals(5, this.epcs.size());
+    }
+
+    private int inventory() {
+        return this.reader.Inventory_G2((byte) 0, (byte) 4, (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0x80, 1,
+                this.epcList, this.cardNum, this.epcLength);
+    }
+}
@@ -0,0 +1,132 @@
+package com.rfid.trans;
+
+import static org.junit.Assert.assertEquals;
+
+import com.rfid.InventoryTagResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class InventorySchedulerTest {
+
+    @Test
+    public void monitorRunsS0OnTargetA() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.MONITOR, 2);
+        for (int i = 0; i < 20; i++) {
+            s.onRound(round(50, 0));
+            assertEquals(0, s.session());
+            assertEquals(0, s.target());
+        }
+    }
+
+    @Test
+    public void legacySessionPicksTheStrategy() {
+        assertEquals(InventoryScheduler.Strategy.COUNT_ONCE, InventoryScheduler.forSession(3).getStrategy());
+        assertEquals(3, InventoryScheduler.forSession(3).session());
+        assertEquals(InventoryScheduler.Strategy.MONITOR, InventoryScheduler.forSession(1).getStrategy());
+    }
+
+    @Test
+    public void sweepEndsOnceNoNewTagTurnsUp() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.COUNT_ONCE, 2);
+        assertEquals(2, s.session());
+        int[] newTags = {40, 30, 20, 10, 0, 0};
+        for (int n : newTags) {
+            assertEquals(0, s.target());
+            s.onRound(round(n, n));
+        }
+        assertEquals(1, s.target());
+        assertEquals(1, s.metrics(InventoryScheduler.Strategy.COUNT_ONCE).flips);
+    }
+
+    @Test
+    public void repeatReadsDoNotKeepTheSweepGoing() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.COUNT_ONCE, 2);
+        // Lots of reads, none of them new: the field is already counted.
+        for (int i = 0; i < 4; i++) {
+            s.onRound(round(80, 0));
+        }
+        assertEquals(1, s.target());
+    }
+
+    @Test
+    public void aCountedFieldIsResweptLessAndLessOften() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.COUNT_ONCE, 2);
+        s.onRound(round(100, 100));
+        List<Integer> roundsPerSweep = new ArrayList<>();
+        int rounds = 0;
+        byte target = s.target();
+        for (int i = 0; i < 400 && roundsPerSweep.size() < 7; i++) {
+            s.onRound(round(100, 0));
+            rounds++;
+            if (s.target() != target) {
+                target = s.target();
+                roundsPerSweep.add(rounds);
+                rounds = 0;
+            }
+        }
+        // The first sweep found tags and keeps the minimum dwell for the next one; every
+        // sweep after that finds nothing and doubles it, up to 64 rounds.
+        assertEquals(Arrays.asList(3, 4, 8, 16, 32, 64, 64), roundsPerSweep);
+    }
+
+    @Test
+    public void newArrivalsBringTheDwellBackDown() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.COUNT_ONCE, 2);
+        for (int i = 0; i < 4; i++) {
+            s.onRound(round(0, 0));
+        }
+        for (int i = 0; i < 8; i++) {
+            s.onRound(round(0, 0));
+        }
+        assertEquals(0, s.target());
+        // Dwell is now 16 rounds; a sweep that finds someone new resets it to 4.
+        s.onRound(round(5, 5));
+        for (int i = 0; i < 15; i++) {
+            s.onRound(round(0, 0));
+        }
+        assertEquals(1, s.target());
+        for (int i = 0; i < 4; i++) {
+            s.onRound(round(0, 0));
+        }
+        assertEquals(0, s.target());
+    }
+
+    @Test
+    public void changingStrategyStartsOverOnTargetA() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.COUNT_ONCE, 2);
+        for (int i = 0; i < 4; i++) {
+            s.onRound(round(0, 0));
+        }
+        assertEquals(1, s.target());
+        s.setStrategy(InventoryScheduler.Strategy.COUNT_ONCE);
+        assertEquals(0, s.target());
+    }
+
+    @Test
+    public void metricsAreKeptPerStrategy() {
+        InventoryScheduler s = new InventoryScheduler(InventoryScheduler.Strategy.MONITOR, 2);
+        s.onRound(round(10, 10));
+        s.setStrategy(InventoryScheduler.Strategy.COUNT_ONCE);
+        s.onRound(round(4, 4));
+        s.onRound(round(6, 0));
+        InventoryScheduler.Metrics monitor = s.metrics(InventoryScheduler.Strategy.MONITOR);
+        InventoryScheduler.Metrics count = s.metrics(InventoryScheduler.Strategy.COUNT_ONCE);
+        assertEquals(1, monitor.rounds);
+        assertEquals(10, monitor.newTags);
+        assertEquals(2, count.rounds);
+        assertEquals(10, count.reads);
+        assertEquals(4, count.newTags);
+        assertEquals(100, count.lastNewTagMs);
+        assertEquals(40.0, count.countRate(), 1e-9);
+    }
+
+    private static InventoryTagResult round(int reads, int newTags) {
+        InventoryTagResult r = new InventoryTagResult();
+        r.nCount = reads;
+        r.NewNum = newTags;
+        r.nTime = 100;
+        return r;
+    }
+}
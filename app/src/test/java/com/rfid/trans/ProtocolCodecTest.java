@@ -0,0 +1,146 @@
+package com.rfid.trans;
+
+import static com.rfid.trans.RecordedFrames.DONE_ONE_TAG;
+import static com.rfid.trans.RecordedFrames.FULL_ONE_TAG;
+import static com.rfid.trans.RecordedFrames.MORE_TWO_TAGS;
+import static com.rfid.trans.RecordedFrames.NO_TAG;
+import static com.rfid.trans.RecordedFrames.READER_INFO;
+import static com.rfid.trans.RecordedFrames.TIMED_OUT_ONE_TAG;
+import static com.rfid.trans.RecordedFrames.crcBitwise;
+import static com.rfid.trans.RecordedFrames.fromHex;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class ProtocolCodecTest {
+
+    @Test
+    public void recordedFramesVerify() {
+        for (String hex : new String[] {MORE_TWO_TAGS, DONE_ONE_TAG, TIMED_OUT_ONE_TAG, FULL_ONE_TAG, NO_TAG,
+                READER_INFO}) {
+            byte[] frame = fromHex(hex);
+            assertTrue(hex, ProtocolCodec.verify(frame, 0, frame.length));
+        }
+    }
+
+    @Test
+    public void appendCrcReproducesRecordedCrc() {
+        byte[] recorded = fromHex(DONE_ONE_TAG);
+        byte[] signed = recorded.clone();
+        signed[signed.length - 2] = 0;
+        signed[signed.length - 1] = 0;
+        ProtocolCodec.appendCrc(signed, 0, signed.length - 2);
+        assertArrayEquals(recorded, signed);
+    }
+
+    @Test
+    public void inventoryCommandIsSignedAsTheVendorLibraryDid() {
+        // Inventory_G2, Q 4, S0, scan time 1: the bytes the vendor library sent.
+        byte[] cmd = {9, 0, 1, 4, 0, 0, 0, 1, 0, 0};
+        ProtocolCodec.appendCrc(cmd, 0, 8);
+        assertEquals(crcBitwise(cmd, 0, 8), (cmd[8] & 0xFF) | (cmd[9] & 0xFF) << 8);
+        assertTrue(ProtocolCodec.verify(cmd, 0, cmd.length));
+    }
+
+    @Test
+    public void everySingleBitErrorIsCaught() {
+        byte[] frame = fromHex(MORE_TWO_TAGS);
+        for (int bit = 0; bit < frame.length * 8; bit++) {
+            frame[bit / 8] ^= (byte) (1 << (bit % 8));
+            assertFalse("bit " + bit, ProtocolCodec.verify(frame, 0, frame.length));
+            frame[bit / 8] ^= (byte) (1 << (bit % 8));
+        }
+    }
+
+    @Test
+    public void verifiesInPlaceAtAnOffset() {
+        byte[] frame = fromHex(DONE_ONE_TAG);
+        byte[] buf = new byte[frame.length + 40];
+        System.arraycopy(frame, 0, buf, 17, frame.length);
+        assertTrue(ProtocolCodec.verify(buf, 17, frame.length));
+        assertFalse(ProtocolCodec.verify(buf, 16, frame.length));
+    }
+
+    @Test
+    public void maximumLengthFrameVerifies() {
+        // Length byte 0xFF: 256 bytes in all, the size the old CheckCRC copy could not hold.
+        byte[] frame = new byte[256];
+        new Random(3).nextBytes(frame);
+        frame[0] = (byte) 0xFF;
+        ProtocolCodec.appendCrc(frame, 0, 254);
+        assertTrue(ProtocolCodec.verify(frame, 0, 256));
+    }
+
+    @Test
+    public void tableMatchesBitwiseDefinition() {
+        Random random = new Random(7);
+        for (int n = 0; n < 300; n++) {
+            byte[] b = new byte[n];
+            random.nextBytes(b);
+            assertEquals("length " + n, crcBitwise(b, 0, n), ProtocolCodec.crc16(b, 0, n));
+        }
+    }
+
+    @Test
+    public void tooShortIsNotAFrame() {
+        assertFalse(ProtocolCodec.verify(new byte[] {0}, 0, 1));
+        assertFalse(ProtocolCodec.verify(new byte[0], 0, 0));
+    }
+
+    @Test
+    public void verifyAgreesWithTheCopyingCheckItReplaced() {
+        for (int size : new int[] {6, 20, 64, 128, 254}) {
+            Random random = new Random(size);
+            for (int i = 0; i < 64; i++) {
+                byte[] frame = new byte[size];
+                random.nextBytes(frame);
+                frame[0] = (byte) (size - 1);
+                ProtocolCodec.appendCrc(frame, 0, size - 2);
+                if (i % 4 == 3) {
+                    frame[random.nextInt(size)] ^= 1;
+                }
+                assertEquals(size + " bytes, frame " + i, checkCrcBitwise(frame, size - 2),
+                        ProtocolCodec.verify(frame, 0, size));
+            }
+        }
+    }
+
+    @Test
+    public void assemblerPassesARepeatedStreamWithoutRejects() {
+        byte[] frame = fromHex(MORE_TWO_TAGS);
+        byte[] chunk = new byte[512 / frame.length * frame.length];
+        for (int at = 0; at < chunk.length; at += frame.length) {
+            System.arraycopy(frame, 0, chunk, at, frame.length);
+        }
+        FrameAssembler rx = new FrameAssembler(4096);
+        int frames = 0;
+        for (int i = 0; i < 100; i++) {
+            rx.append(chunk, 0, chunk.length);
+            int off;
+            while ((off = rx.nextFrame(0x01)) >= 0) {
+                assertTrue(ProtocolCodec.verify(rx.array(), off, rx.frameLength()));
+                rx.consumeFrame();
+                frames++;
+            }
+        }
+        assertEquals(100 * (chunk.length / frame.length), frames);
+        assertEquals(0, rx.takeCrcErrors());
+    }
+
+    /**
+     * The vendor library's CheckCRC: copy into a 256-byte array, CRC bit by bit,
+     * test the residue. Kept only as the reference the table-driven check must match.
+     */
+    private static boolean checkCrcBitwise(byte[] frame, int bodyLength) {
+        byte[] copy = new byte[256];
+        System.arraycopy(frame, 0, copy, 0, bodyLength + 2);
+        int crc = crcBitwise(copy, 0, bodyLength);
+        copy[bodyLength] ^= (byte) crc;
+        copy[bodyLength + 1] ^= (byte) (crc >> 8);
+        return copy[bodyLength] == 0 && copy[bodyLength + 1] == 0;
+    }
+}
@@ -0,0 +1,158 @@
+package com.rfid.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rfid.InventoryTagResult;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * QController on its own, then driving S0 rounds on the module emulator. The
+ * emulator runs are seeded and judged by rounds, not by elapsed time.
+ */
+public class QControllerTest {
+
+    private static final int SCAN_TIME = 3;
+
+    @Test
+    public void fixedNeverMoves() {
+        QController q = new QController(4);
+        assertEquals(4, q.update(round(0, 200, 300), SCAN_TIME));
+        assertEquals(4, q.update(round(0, 1, 20), SCAN_TIME));
+    }
+
+    @Test
+    public void completedRoundsConvergeOnLog2OfThePopulation() {
+        QController q = new QController(true, 4, QController.MIN_Q, QController.MAX_Q);
+        for (int i = 0; i < 8; i++) {
+            q.update(round(0, 100, 120), SCAN_TIME);
+        }
+        assertEquals(7, q.currentQ());
+        assertEquals(100, q.estimatedPopulation(), 2);
+    }
+
+    @Test
+    public void crcRejectedFramesCountTowardsThePopulation() {
+        QController q = new QController(true, 4, QController.MIN_Q, QController.MAX_Q);
+        for (int i = 0; i < 8; i++) {
+            InventoryTagResult r = round(0, 40, 120);
+            r.nCrcErrors = 24;
+            q.update(r, SCAN_TIME);
+        }
+        assertEquals(6, q.currentQ());
+    }
+
+    @Test
+    public void cutShortRoundsClimbUntilTheRateDrops() {
+        QController q = new QController(true, 4, QController.MIN_Q, QController.MAX_Q);
+        assertEquals(5, q.update(round(0, 10, 300), SCAN_TIME));
+        assertEquals(6, q.update(round(0, 30, 300), SCAN_TIME));
+        // Worse than at 5: turn back.
+        assertEquals(5, q.update(round(0, 20, 300), SCAN_TIME));
+    }
+
+    @Test
+    public void emptyRoundsFallToTheMinimum() {
+        QController q = new QController(true, 8, 2, QController.MAX_Q);
+        for (int i = 0; i < 12; i++) {
+            q.update(round(0, 0, 20), SCAN_TIME);
+        }
+        assertEquals(2, q.currentQ());
+    }
+
+    @Test
+    public void qIsCappedToWhatTheScanTimeCanWalk() {
+        QController q = new QController(true, 15, QController.MIN_Q, QController.MAX_Q);
+        // 300 ms at 100 us per empty slot: at most 3000 slots, Q 11.
+        assertEquals(11, q.update(round(0, 5000, 300), SCAN_TIME));
+    }
+
+    @Test
+    public void failedRoundsAreIgnored() {
+        QController q = new QController(true, 4, QController.MIN_Q, QController.MAX_Q);
+        assertEquals(4, q.update(round(48, 0, 2300), SCAN_TIME));
+    }
+
+    @Test
+    public void adaptiveQSettlesOnTheEmulatorPopulation() {
+        QController q = new QController(true, 4, QController.MIN_Q, QController.MAX_Q);
+        assertEquals(100, rounds(100, q, 12));
+        // log2(100) is 6.6; collisions keep the per-round count a little under 100.
+        assertTrue("Q " + q.currentQ(), q.currentQ() == 6 || q.currentQ() == 7);
+        assertEquals(100, q.estimatedPopulation(), 20);
+    }
+
+    @Test
+    public void adaptiveQReadsAPopulationThatFixedQCannot() {
+        int fixed = rounds(300, new QController(4), 12);
+        int adaptive = rounds(300, new QController(true, 4, QController.MIN_Q, QController.MAX_Q), 12);
+        // Sixteen slots for 300 tags: nearly every slot collides.
+        assertTrue("fixed read " + fixed, fixed < 30);
+        assertEquals(300, adaptive);
+    }
+
+    /**
+     * Runs {@code count} S0 rounds as StartRead does, feeding QController after every
+     * round, and returns the distinct tags read. The emulator walks its slots on a
+     * simulated timeline, so a round either finishes well inside the scan time or is
+     * cut off at it.
+     */
+    private static int rounds(int tags, QController q, int count) {
+        ReaderEmulator.Config config = new ReaderEmulator.Config();
+        config.tagCount = tags;
+        ReaderEmulator emulator = new ReaderEmulator(config);
+        BaseReader reader = new BaseReader(emulator);
+        Set<String> seen = new HashSet<>();
+        reader.SetCallBack(new TagCallback() {
+            @Override
+            public int CRCErrorCallBack(int i) {
+                return 0;
+            }
+
+            @Override
+            public void FinishCallBack() {
+            }
+
+            @Override
+            public void tagCallback(ReadTag readTag) {
+                seen.add(readTag.getEpcId());
+            }
+
+            @Override
+            public int tagCallbackFailed(int i) {
+                return 0;
+            }
+        });
+        assertEquals(0, reader.Connect("emulator", 115200, 0));
+        byte[] epcList = new byte[16384];
+        int[] cardNum = new int[1];
+        int[] epcLength = new int[1];
+        long crcErrors = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                int currentQ = q.currentQ();
+                long roundStart = System.nanoTime();
+                int status = reader.Inventory_G2((byte) 0, (byte) currentQ, (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                        (byte) 0x80, SCAN_TIME, epcList, cardNum, epcLength);
+                InventoryTagResult round = round(status, cardNum[0], (System.nanoTime() - roundStart) / 1_000_000L);
+                round.QValue = currentQ;
+                round.nCrcErrors = (int) (reader.GetCrcErrorCount() - crcErrors);
+                crcErrors = reader.GetCrcErrorCount();
+                q.update(round, SCAN_TIME);
+            }
+        } finally {
+            reader.DisConnect();
+        }
+        return seen.size();
+    }
+
+    private static InventoryTagResult round(int result, int count, long millis) {
+        InventoryTagResult r = new InventoryTagResult();
+        r.result = result;
+        r.nCount = count;
+        r.nTime = millis;
+        return r;
+    }
+}
@@ -0,0 +1,878 @@
+package com.rfid.trans;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process stand-in for the UHF module. It accepts the same length-prefixed,
+ * CRC-16 framed commands as the hardware and answers them with correctly framed
+ * replies, released on a simulated timeline (command latency, Gen2 slot times and
+ * serial transmission time at the configured baud rate).
+ *
+ * <p>Inventory runs slotted-ALOHA rounds of 2^Q slots over a configurable tag
+ * population, with per-session inventoried flags (S0 resets every command, S1 after
+ * {@link Config#s1PersistenceMs}, S2/S3 only on target flips or
+ * {@link #resetInventoriedFlags()}), so Q, session and target choices have the same
+ * first-order effect on throughput as on a real field. This lets BaseReader and the
+ * layers above it be exercised and benchmarked on a plain JVM.
+ */
+public class ReaderEmulator implements Transport {
+
+    /** Emulation knobs; read when a command is handled, so they may be tuned between rounds. */
+    public static class Config {
+        public int tagCount = 100;
+        public int epcBytes = 12;
+        /** Chance that a singulated reply is lost to RF noise; the tag stays unread. */
+        public double replyLossRate = 0.0;
+        /** Chance that a reply frame is corrupted on the wire and fails its CRC. */
+        public double frameCorruptionRate = 0.0;
+        public int commandLatencyMs = 3;
+        public int emptySlotMicros = 150;
+        public int collisionSlotMicros = 400;
+        public int successSlotMicros = 1200;
+        public int s1PersistenceMs = 1000;
+        public int rssiMin = 40;
+        public int rssiMax = 80;
+        /** Q and session the firmware uses for its own rounds in active work mode. */
+        public int activeQ = 6;
+        public int activeSession = 0;
+        /** Firmware turnaround between two active-mode rounds. */
+        public int activeRoundGapMicros = 500;
+        /** Each tag needs an RF power in this range (dBm) to be energised. */
+        public int tagMinPowerLow = 5;
+        public int tagMinPowerHigh = 28;
+        public double ambientC = 25;
+        /** Steady-state temperature rise with 1 W radiated continuously. */
+        public double riseCPerWatt = 80;
+        public double thermalTauSeconds = 120;
+        /** The module stops answering at faultC and comes back below recoverC. */
+        public double faultC = 80;
+        public double recoverC = 65;
+        /** Speeds up the thermal model, e.g. 120 to play two hours in one minute. */
+        public double thermalTimeScale = 1;
+        /** Extra air time per tag when an inventory also reads TID (Req_RN + Read). */
+        public int tidReadMicros = 1500;
+        /** Select, singulate and access one tag for a memory command. */
+        public int accessMicros = 6000;
+        public int accessMicrosPerWord = 150;
+        /** Chance that the addressed tag does not answer an access (status 0xFB). */
+        public double accessFailureRate = 0.0;
+        public int userWords = 32;
+        public int writeMicrosPerWord = 3000;
+        /** Chance that the tag drops out part-way through a write, keeping only the first words. */
+        public double writeTearRate = 0.0;
+        /** Whether the firmware takes the inventory form with a Select mask; if not it answers 0xFE. */
+        public boolean selectSupported = true;
+        /** Fastest rate SetBaudRate accepts; faster codes are refused with 0xFF. */
+        public int maxBaudRate = 921600;
+        /** Rates above this garble frames both ways at {@link #fastLinkCorruptionRate}, as a UART clock too far off would. */
+        public int maxCleanBaudRate = Integer.MAX_VALUE;
+        public double fastLinkCorruptionRate = 0.5;
+        public long seed = 1;
+    }
+
+    private static final int MAX_LEN = 255;
+    private static final int ACTIVE_MODE_DATA = 0xEE;
+    /** How far ahead of the consumer the active-mode stream is generated. */
+    private static final long ACTIVE_HORIZON_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final Config config;
+    private final Random random;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataReady = this.lock.newCondition();
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final byte[] frame = new byte[MAX_LEN + 1];
+
+    private byte[][] epcs = new byte[0][];
+    private int[] rssi = new int[0];
+    private int[] minPower = new int[0];
+    private byte[][] tids = new byte[0][];
+    private byte[][] userMemory = new byte[0][];
+    /** PC bits 10..0 (UMI, XI, NSI/AFI) of each tag; bits 15..11 follow its EPC length. */
+    private int[] pcFlags = new int[0];
+    private boolean[][] flagB = new boolean[4][0];
+    private long[] s1FlaggedAt = new long[0];
+    private boolean[] readThisCommand = new boolean[0];
+    /** Tags left out of the current command by its Select; null when it has none. */
+    private boolean[] deselected = null;
+
+    private volatile boolean open = false;
+    private int baudRate = 115200;
+    /** Rate SetBaudRate set; kept across open and close. 0 until then: the module follows the port. */
+    private int moduleBaudRate = 0;
+    private long wireFreeAt = 0;
+    private byte address = 0x00;
+    private int power = 30;
+    private int scanTime = 10;
+    private int antenna = 0x01;
+    private byte regionHigh = (byte) 0x31;
+    private byte regionLow = 0x00;
+    private long commands = 0;
+    private double temperatureC = Double.NaN;
+    private long thermalAt = 0;
+    private long rfOnNanos = 0;
+    private boolean faulted = false;
+    private boolean poweredOff = false;
+    private long powerBackAt = 0;
+    private long faults = 0;
+    private boolean active = false;
+    private long activeClock = 0;
+    private int[] slotCount = new int[0];
+    private int[] slotTag = new int[0];
+    private int lastRoundFound = 0;
+    private int framePos = 0;
+    private int frameTags = 0;
+    private long reportedReads = 0;
+
+    private static final class Pending {
+        final byte[] data;
+        final long dueNanos;
+        int pos = 0;
+
+        Pending(byte[] data, long dueNanos) {
+            this.data = data;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    public ReaderEmulator() {
+        this(new Config());
+    }
+
+    public ReaderEmulator(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        byte[][] tags = new byte[config.tagCount][];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = new byte[config.epcBytes];
+            this.random.nextBytes(tags[i]);
+        }
+        setTags(Arrays.asList(tags));
+    }
+
+    public Config getConfig() {
+        return this.config;
+    }
+
+    /** Replaces the tag population in the field; all inventoried flags start at A. */
+    public void setTags(List<byte[]> tags) {
+        this.lock.lock();
+        try {
+            int n = tags.size();
+            this.epcs = tags.toArray(new byte[n][]);
+            this.rssi = new int[n];
+            int span = Math.max(1, this.config.rssiMax - this.config.rssiMin + 1);
+            for (int i = 0; i < n; i++) {
+                this.rssi[i] = this.config.rssiMin + this.random.nextInt(span);
+            }
+            this.minPower = new int[n];
+            int powerSpan = Math.max(1, this.config.tagMinPowerHigh - this.config.tagMinPowerLow + 1);
+            for (int i = 0; i < n; i++) {
+                this.minPower[i] = this.config.tagMinPowerLow + this.random.nextInt(powerSpan);
+            }
+            this.tids = new byte[n][];
+            this.userMemory = new byte[n][];
+            this.pcFlags = new int[n];
+            for (int i = 0; i < n; i++) {
+                // Impinj-style TID: class E2, MDID/TMN, then a 48-bit serial.
+                this.tids[i] = new byte[] {(byte) 0xE2, (byte) 0x80, 0x11, 0x05, 0x20, 0x00,
+                        0x00, 0x00, (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+                this.userMemory[i] = new byte[this.config.userWords * 2];
+                this.random.nextBytes(this.userMemory[i]);
+            }
+            this.flagB = new boolean[4][n];
+            this.s1FlaggedAt = new long[n];
+            this.readThisCommand = new boolean[n];
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /** Returns every tag's inventoried flag to A in all sessions, as a power cycle would. */
+    public void resetInventoriedFlags() {
+        this.lock.lock();
+        try {
+            for (boolean[] flags : this.flagB) {
+                Arrays.fill(flags, false);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Cuts the module's supply for {@code offMs}, as a brown-out does: it hears
+     * nothing meanwhile, drops what it was sending and comes back in answer mode.
+     * Its settings and baud rate are kept, as they live in EEPROM.
+     */
+    public void powerCycle(long offMs) {
+        this.lock.lock();
+        try {
+            this.poweredOff = true;
+            this.powerBackAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offMs);
+            this.pending.clear();
+            this.active = false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public long getCommandCount() {
+        return this.commands;
+    }
+
+    /** Current module temperature of the thermal model. */
+    public double getTemperature() {
+        this.lock.lock();
+        try {
+            advanceThermal(System.nanoTime());
+            return this.temperatureC;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /** Times the module has shut down on over-temperature. */
+    public long getFaultCount() {
+        return this.faults;
+    }
+
+    /** Current EPC of tag {@code i}, after any writes. */
+    public byte[] getEpc(int i) {
+        this.lock.lock();
+        try {
+            return this.epcs[i].clone();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /** Sets PC bits 10..0 of tag {@code i}, as a tag with user memory or an AFI would carry them. */
+    public void setPcFlags(int i, int flags) {
+        this.lock.lock();
+        try {
+            this.pcFlags[i] = flags & 0x07FF;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /** Current PC word of tag {@code i}. */
+    public int getPc(int i) {
+        this.lock.lock();
+        try {
+            byte[] bank = bank(i, 1);
+            return ((bank[2] & 0xFF) << 8) | (bank[3] & 0xFF);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /** TID bank of tag {@code i} of the population, as the emulator answers it. */
+    public byte[] getTid(int i) {
+        return this.tids[i].clone();
+    }
+
+    /** Tag records sent in inventory replies so far, duplicates included. */
+    public long getReportedReads() {
+        return this.reportedReads;
+    }
+
+    @Override
+    public int open(String port, int baudRate) {
+        this.lock.lock();
+        try {
+            this.baudRate = baudRate > 0 ? baudRate : 115200;
+            this.pending.clear();
+            this.wireFreeAt = System.nanoTime();
+            this.active = false;
+            this.open = true;
+            return 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int close() {
+        this.lock.lock();
+        try {
+            this.open = false;
+            this.pending.clear();
+            this.dataReady.signalAll();
+            return 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len) {
+        if (!this.open) {
+            return -1;
+        }
+        if (len < 5) {
+            return 0;
+        }
+        this.lock.lock();
+        try {
+            int frameLen = (b[off] & 0xFF) + 1;
+            if (frameLen > len || !ProtocolCodec.verify(b, off, frameLen)) {
+                return 0;
+            }
+            int addr = b[off + 1] & 0xFF;
+            if (addr != 0xFF && addr != (this.address & 0xFF)) {
+                return 0;
+            }
+            if (this.moduleBaudRate != 0 && this.moduleBaudRate != this.baudRate || garbled()) {
+                // Framing errors at the wrong rate; the module hears noise.
+                return 0;
+            }
+            long now = System.nanoTime();
+            if (this.poweredOff && now - this.powerBackAt < 0) {
+                return 0;
+            }
+            this.poweredOff = false;
+            advanceThermal(now);
+            if (this.faulted) {
+                return 0;
+            }
+            this.commands++;
+            handle(b, off, now + TimeUnit.MILLISECONDS.toNanos(this.config.commandLatencyMs));
+            return 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len, int timeoutMs) throws IOException {
+        this.lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (this.open) {
+                long now = System.nanoTime();
+                advanceThermal(now);
+                fillActive(now);
+                Pending head = this.pending.peek();
+                if (head != null && head.dueNanos <= now) {
+                    int n = Math.min(len, head.data.length - head.pos);
+                    System.arraycopy(head.data, head.pos, b, off, n);
+                    head.pos += n;
+                    if (head.pos == head.data.length) {
+                        this.pending.poll();
+                    }
+                    return n;
+                }
+                long wait = deadline - now;
+                if (wait <= 0) {
+                    return 0;
+                }
+                if (head != null) {
+                    wait = Math.min(wait, head.dueNanos - now);
+                }
+                try {
+                    this.dataReady.awaitNanos(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return 0;
+                }
+            }
+            return -1;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void handle(byte[] b, int off, long startNanos) {
+        int cmd = b[off + 2] & 0xFF;
+        switch (cmd) {
+            case 0x01:
+                inventory(b, off, startNanos);
+                break;
+            case 0x02:
+                readData(b, off, startNanos);
+                break;
+            case 0x03:
+                writeData(b, off, startNanos);
+                break;
+            case 0x21:
+                reply(startNanos, 0x21, 0x00, 0x02, 0x0A, 0x0F, 0x02, this.regionHigh & 0xFF,
+                        this.regionLow & 0xFF, this.power, this.scanTime, this.antenna, 0x00, 0x00, 0x00);
+                break;
+            case 0x22:
+                this.regionHigh = b[off + 3];
+                this.regionLow = b[off + 4];
+                reply(startNanos, cmd, 0x00);
+                break;
+            case 0x25:
+                this.scanTime = b[off + 3] & 0xFF;
+                reply(startNanos, cmd, 0x00);
+                break;
+            case 0x2F:
+                this.power = b[off + 3] & 0xFF;
+                reply(startNanos, cmd, 0x00);
+                break;
+            case 0x3F:
+                this.antenna = b[off + 5] & 0xFF;
+                reply(startNanos, cmd, 0x00);
+                break;
+            case 0x76:
+                setWorkMode(b, off, startNanos);
+                break;
+            case 0x28:
+                int rate = LinkSpeed.rate(b[off + 3] & 0xFF);
+                if (rate == 0 || rate > this.config.maxBaudRate) {
+                    reply(startNanos, cmd, 0xFF);
+                } else {
+                    // Answered at the old rate; the next command must come at the new one.
+                    reply(startNanos, cmd, 0x00);
+                    this.moduleBaudRate = rate;
+                }
+                break;
+            case 0x92:
+                int t = (int) Math.round(this.temperatureC);
+                reply(startNanos, cmd, 0x00, t < 0 ? 0 : 1, Math.min(255, Math.abs(t)));
+                break;
+            case 0x24:
+            case 0x30:
+            case 0x40:
+            case 0x66:
+            case 0x6B:
+            case 0x75:
+                reply(startNanos, cmd, 0x00);
+                break;
+            default:
+                reply(startNanos, 0x00, 0xFE);
+                break;
+        }
+    }
+
+    /**
+     * {@code Len Adr 01 Q Session [TidPtr TidLen] Target Ant ScanTime CRC16}, or with
+     * a Select mask {@code Len Adr 01 Q Session MaskMem MaskAdr(2) MaskLen MaskData
+     * TidPtr TidLen Target Ant ScanTime CRC16}. Runs ALOHA rounds over the selected
+     * tags until none is left to answer or the scan time is used up, and streams the
+     * singulated EPCs as status-0x03 frames followed by a final one. With TidLen > 0
+     * each record is {@code 0x80|len EPC TID RSSI}.
+     */
+    private void inventory(byte[] b, int off, long startNanos) {
+        int len = b[off] & 0xFF;
+        int q = b[off + 3] & 0x0F;
+        int session = b[off + 4] & 0x03;
+        int p = off + 5;
+        this.deselected = null;
+        if (len > 11) {
+            if (!this.config.selectSupported) {
+                reply(startNanos, 0x01, 0xFE);
+                return;
+            }
+            select(b, p);
+            p += 4 + ((b[p + 3] & 0xFF) + 7) / 8;
+        }
+        boolean withTidFields = len != 9;
+        int tidFrom = withTidFields ? (b[p] & 0xFF) * 2 : 0;
+        int tidBytes = withTidFields ? (b[p + 1] & 0xFF) * 2 : 0;
+        int tail = withTidFields ? p + 2 : p;
+        boolean target = (b[tail] & 0x01) != 0;
+        int ant = b[tail + 1] & 0xFF;
+        long budgetMicros = (b[tail + 2] & 0xFF) * 100_000L;
+        int replyAnt = ant == 0x80 || ant == 0 ? 0x01 : ant;
+
+        this.framePos = startFrame(replyAnt);
+        this.frameTags = 0;
+        int extraMicros = tidBytes > 0 ? this.config.tidReadMicros : 0;
+        long simMicros = aloha(q, session, target, budgetMicros, startNanos, extraMicros, (tag, atMicros) -> {
+            byte[] epc = this.epcs[tag];
+            byte[] tid = this.tids[tag];
+            int withTid = tidBytes > 0 && tidFrom + tidBytes <= tid.length ? tidBytes : 0;
+            if (this.framePos + epc.length + withTid + 2 + 2 > MAX_LEN + 1) {
+                emitFrame(this.framePos, 0x03, this.frameTags, startNanos + atMicros * 1000L);
+                this.framePos = startFrame(replyAnt);
+                this.frameTags = 0;
+            }
+            this.frame[this.framePos++] = (byte) (withTid > 0 ? 0x80 | (epc.length + withTid) : epc.length);
+            System.arraycopy(epc, 0, this.frame, this.framePos, epc.length);
+            this.framePos += epc.length;
+            System.arraycopy(tid, tidFrom, this.frame, this.framePos, withTid);
+            this.framePos += withTid;
+            this.frame[this.framePos++] = (byte) jitter(this.rssi[tag]);
+            this.frameTags++;
+        });
+        // A Select only holds for the command it came with.
+        this.deselected = null;
+        long due = startNanos + simMicros * 1000L;
+        if (this.lastRoundFound == 0) {
+            reply(due, 0x01, 0xFB);
+        } else {
+            emitFrame(this.framePos, simMicros >= budgetMicros ? 0x02 : 0x01, this.frameTags, due);
+        }
+    }
+
+    /**
+     * {@code Len Adr 02 ENum EPC Mem WordPtr Num Pwd [MaskMem MaskAdr MaskLen MaskData] CRC16}.
+     * ENum 0xFF selects by mask instead of EPC. Answers {@code 00 data} once the tag
+     * has been accessed, 0xFB if no energised tag matches, or 0xFC 0x03 if the range
+     * runs past the bank.
+     */
+    private void readData(byte[] b, int off, long startNanos) {
+        int eNum = b[off + 3] & 0xFF;
+        int p = off + 4 + (eNum == 0xFF ? 0 : eNum * 2);
+        int mem = b[p] & 0xFF;
+        int wordPtr = b[p + 1] & 0xFF;
+        int words = b[p + 2] & 0xFF;
+        int tag = eNum == 0xFF ? findByMask(b, p + 7) : findByEpc(b, off + 4, eNum * 2);
+        long due = startNanos + (this.config.accessMicros + words * (long) this.config.accessMicrosPerWord) * 1000L;
+        if (tag < 0 || this.random.nextDouble() < this.config.accessFailureRate) {
+            reply(due, 0x02, 0xFB);
+            return;
+        }
+        byte[] bank = bank(tag, mem);
+        if ((wordPtr + words) * 2 > bank.length) {
+            reply(due, 0x02, 0xFC, 0x03);
+            return;
+        }
+        int[] body = new int[1 + words * 2];
+        for (int i = 0; i < words * 2; i++) {
+            body[1 + i] = bank[wordPtr * 2 + i] & 0xFF;
+        }
+        reply(due, 0x02, body);
+    }
+
+    /**
+     * {@code Len Adr 03 WNum ENum EPC Mem WordPtr Data Pwd [MaskMem MaskAdr MaskLen MaskData] CRC16}.
+     * A torn write keeps the words written before the tag dropped out and is
+     * answered 0xFB; TID is read-only (0xFC 0x04).
+     */
+    private void writeData(byte[] b, int off, long startNanos) {
+        int words = b[off + 3] & 0xFF;
+        int eNum = b[off + 4] & 0xFF;
+        int p = off + 5 + (eNum == 0xFF ? 0 : eNum * 2);
+        int mem = b[p] & 0xFF;
+        int wordPtr = b[p + 1] & 0xFF;
+        int data = p + 2;
+        int tag = eNum == 0xFF ? findByMask(b, data + words * 2 + 4) : findByEpc(b, off + 5, eNum * 2);
+        long due = startNanos + (this.config.accessMicros + words * (long) this.config.writeMicrosPerWord) * 1000L;
+        if (tag < 0 || this.random.nextDouble() < this.config.accessFailureRate) {
+            reply(due, 0x03, 0xFB);
+            return;
+        }
+        if (mem == 2) {
+            reply(due, 0x03, 0xFC, 0x04);
+            return;
+        }
+        int capacity = mem == 1 ? 4 + 62 : mem == 3 ? this.userMemory[tag].length : 8;
+        if ((wordPtr + words) * 2 > capacity) {
+            reply(due, 0x03, 0xFC, 0x03);
+            return;
+        }
+        boolean torn = this.random.nextDouble() < this.config.writeTearRate;
+        int written = torn ? this.random.nextInt(words) : words;
+        if (mem == 1) {
+            byte[] bank = bank(tag, 1);
+            bank = Arrays.copyOf(bank, Math.max(bank.length, (wordPtr + written) * 2));
+            System.arraycopy(b, data, bank, wordPtr * 2, written * 2);
+            int epcLen = ((bank[2] & 0xFF) >>> 3) * 2;
+            this.epcs[tag] = Arrays.copyOfRange(bank, 4, 4 + epcLen);
+            this.pcFlags[tag] = ((bank[2] & 0x07) << 8) | (bank[3] & 0xFF);
+        } else if (mem == 3) {
+            System.arraycopy(b, data, this.userMemory[tag], wordPtr * 2, written * 2);
+        }
+        reply(due, 0x03, torn ? 0xFB : 0x00);
+    }
+
+    /** Bank contents as the tag would return them: EPC bank is CRC, PC, EPC. */
+    private byte[] bank(int tag, int mem) {
+        switch (mem) {
+            case 0:
+                return new byte[8];
+            case 1:
+                byte[] epc = this.epcs[tag];
+                byte[] bank = new byte[4 + epc.length];
+                bank[2] = (byte) ((epc.length / 2) << 3 | this.pcFlags[tag] >>> 8);
+                bank[3] = (byte) this.pcFlags[tag];
+                System.arraycopy(epc, 0, bank, 4, epc.length);
+                return bank;
+            case 2:
+                return this.tids[tag];
+            default:
+                return this.userMemory[tag];
+        }
+    }
+
+    private int findByEpc(byte[] b, int off, int len) {
+        for (int i = 0; i < this.epcs.length; i++) {
+            byte[] epc = this.epcs[i];
+            if (epc.length == len && this.minPower[i] <= this.power && regionEquals(epc, 0, b, off, len)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** {@code MaskMem MaskAdr(2, bits) MaskLen(bits) MaskData} at {@code p}; whole bytes only. */
+    private int findByMask(byte[] b, int p) {
+        int mem = b[p] & 0xFF;
+        int bitAdr = ((b[p + 1] & 0xFF) << 8) | (b[p + 2] & 0xFF);
+        int bytes = ((b[p + 3] & 0xFF) + 7) / 8;
+        int from = bitAdr / 8;
+        for (int i = 0; i < this.epcs.length; i++) {
+            byte[] bank = bank(i, mem);
+            if (this.minPower[i] <= this.power && from + bytes <= bank.length
+                    && regionEquals(bank, from, b, p + 4, bytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Deselects the tags whose bank does not match {@code MaskMem MaskAdr(2, bits) MaskLen(bits) MaskData} at {@code p}. */
+    private void select(byte[] b, int p) {
+        int mem = b[p] & 0xFF;
+        int bitAdr = ((b[p + 1] & 0xFF) << 8) | (b[p + 2] & 0xFF);
+        int bits = b[p + 3] & 0xFF;
+        boolean[] out = new boolean[this.epcs.length];
+        for (int i = 0; i < this.epcs.length; i++) {
+            byte[] bank = bank(i, mem);
+            out[i] = bitAdr + bits > bank.length * 8 || !TagFilter.bitsEqual(bank, bitAdr, b, (p + 4) * 8, bits);
+        }
+        this.deselected = out;
+    }
+
+    private static boolean regionEquals(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code Len Adr 76 Mode CRC16}. Entering active mode starts the free-running
+     * stream from the acknowledgement onwards; leaving it drops whatever the stream
+     * had not put on the wire yet.
+     */
+    private void setWorkMode(byte[] b, int off, long startNanos) {
+        boolean activeMode = (b[off + 3] & 0x01) != 0;
+        if (!activeMode && this.active) {
+            long keptUntil = System.nanoTime();
+            for (Iterator<Pending> it = this.pending.iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                if (p.dueNanos > startNanos && p.pos == 0 && (p.data[2] & 0xFF) == ACTIVE_MODE_DATA) {
+                    it.remove();
+                    this.reportedReads--;
+                } else {
+                    keptUntil = Math.max(keptUntil, p.dueNanos);
+                }
+            }
+            this.wireFreeAt = keptUntil;
+        }
+        reply(startNanos, 0x76, 0x00);
+        if (activeMode && !this.active) {
+            this.activeClock = startNanos;
+        }
+        this.active = activeMode;
+    }
+
+    /**
+     * Runs active-mode rounds, back to back, until the simulated clock (or the wire,
+     * at low baud rates) is {@link #ACTIVE_HORIZON_NANOS} ahead of {@code now}. Each singulated tag is
+     * pushed as its own {@code Len Adr EE 00 Ant EPCLen EPC RSSI CRC16} frame.
+     */
+    private void fillActive(long now) {
+        long horizon = now + ACTIVE_HORIZON_NANOS;
+        while (this.active && !this.faulted && this.activeClock < horizon && this.wireFreeAt < horizon) {
+            // After a stall nobody was listening; the firmware does not queue rounds for later.
+            long roundStart = Math.max(this.activeClock, now - ACTIVE_HORIZON_NANOS);
+            long budgetMicros = this.scanTime * 100_000L;
+            long simMicros = aloha(this.config.activeQ, this.config.activeSession, false, budgetMicros, roundStart, 0,
+                    (tag, atMicros) -> {
+                        byte[] epc = this.epcs[tag];
+                        byte[] out = new byte[epc.length + 9];
+                        out[0] = (byte) (epc.length + 8);
+                        out[1] = this.address;
+                        out[2] = (byte) ACTIVE_MODE_DATA;
+                        out[3] = 0x00;
+                        out[4] = (byte) (this.antenna == 0 ? 0x01 : this.antenna);
+                        out[5] = (byte) epc.length;
+                        System.arraycopy(epc, 0, out, 6, epc.length);
+                        out[6 + epc.length] = (byte) jitter(this.rssi[tag]);
+                        ProtocolCodec.appendCrc(out, 0, out.length - 2);
+                        enqueue(out, roundStart + atMicros * 1000L);
+                    });
+            this.activeClock = roundStart + (simMicros + this.config.activeRoundGapMicros) * 1000L;
+        }
+    }
+
+    /** Receives each singulation of one {@link #aloha} call, in air-time order. */
+    private interface SlotSink {
+        void singulated(int tag, long atMicros);
+    }
+
+    /**
+     * One inventory command worth of Gen2 rounds: every tag whose session flag
+     * matches {@code target} picks a slot out of 2^Q, singly occupied slots are read.
+     * Repeats until nobody is left to answer or {@code budgetMicros} of air time is
+     * spent; returns the air time used. Each read slot costs {@code extraReadMicros}
+     * more when the command also reads tag memory.
+     */
+    private long aloha(int q, int session, boolean target, long budgetMicros, long startNanos, int extraReadMicros,
+            SlotSink sink) {
+        long nowMs = TimeUnit.NANOSECONDS.toMillis(startNanos);
+        int n = this.epcs.length;
+        Arrays.fill(this.readThisCommand, false);
+        if (session == 0) {
+            Arrays.fill(this.flagB[0], false);
+        } else if (session == 1) {
+            for (int i = 0; i < n; i++) {
+                if (this.flagB[1][i] && nowMs - this.s1FlaggedAt[i] > this.config.s1PersistenceMs) {
+                    this.flagB[1][i] = false;
+                }
+            }
+        }
+
+        int slots = 1 << q;
+        if (this.slotCount.length < slots) {
+            this.slotCount = new int[slots];
+            this.slotTag = new int[slots];
+        }
+        int[] slotCount = this.slotCount;
+        int[] slotTag = this.slotTag;
+        long simMicros = 0;
+        int found = 0;
+        while (simMicros < budgetMicros) {
+            Arrays.fill(slotCount, 0, slots, 0);
+            int participants = 0;
+            for (int i = 0; i < n; i++) {
+                if (!this.readThisCommand[i] && this.flagB[session][i] == target && this.minPower[i] <= this.power
+                        && (this.deselected == null || !this.deselected[i])) {
+                    int slot = this.random.nextInt(slots);
+                    slotCount[slot]++;
+                    slotTag[slot] = i;
+                    participants++;
+                }
+            }
+            if (participants == 0) {
+                break;
+            }
+            for (int s = 0; s < slots && simMicros < budgetMicros; s++) {
+                if (slotCount[s] == 0) {
+                    simMicros += this.config.emptySlotMicros;
+                } else if (slotCount[s] > 1 || this.random.nextDouble() < this.config.replyLossRate) {
+                    simMicros += this.config.collisionSlotMicros;
+                } else {
+                    simMicros += this.config.successSlotMicros + extraReadMicros;
+                    int tag = slotTag[s];
+                    this.readThisCommand[tag] = true;
+                    if (session != 0) {
+                        this.flagB[session][tag] = !target;
+                        this.s1FlaggedAt[tag] = nowMs;
+                    }
+                    sink.singulated(tag, simMicros);
+                    found++;
+                }
+            }
+        }
+        this.lastRoundFound = found;
+        this.reportedReads += found;
+        this.rfOnNanos += simMicros * 1000L;
+        return simMicros;
+    }
+
+    /**
+     * First-order thermal model: the temperature relaxes towards ambient plus a rise
+     * proportional to the mean RF power radiated since the last update. Crossing
+     * {@link Config#faultC} shuts the module up, dropping its queued replies and
+     * leaving active mode, until it has cooled below {@link Config#recoverC}.
+     */
+    private void advanceThermal(long now) {
+        if (Double.isNaN(this.temperatureC)) {
+            this.temperatureC = this.config.ambientC;
+            this.thermalAt = now;
+            this.rfOnNanos = 0;
+            return;
+        }
+        long elapsed = now - this.thermalAt;
+        if (elapsed < 1_000_000L) {
+            return;
+        }
+        double duty = Math.min(1.0, this.rfOnNanos / (double) elapsed);
+        double watts = Math.pow(10, this.power / 10.0) / 1000.0;
+        double target = this.config.ambientC + this.config.riseCPerWatt * watts * duty;
+        double dt = elapsed / 1e9 * this.config.thermalTimeScale;
+        this.temperatureC = target + (this.temperatureC - target) * Math.exp(-dt / this.config.thermalTauSeconds);
+        this.thermalAt = now;
+        // Active rounds are generated ahead of the clock; their RF time counts when it comes due.
+        this.rfOnNanos = Math.max(0, this.rfOnNanos - elapsed);
+        if (!this.faulted && this.temperatureC >= this.config.faultC) {
+            this.faulted = true;
+            this.faults++;
+            this.active = false;
+            this.pending.clear();
+        } else if (this.faulted && this.temperatureC < this.config.recoverC) {
+            this.faulted = false;
+        }
+    }
+
+    private int jitter(int base) {
+        return Math.max(0, Math.min(255, base + this.random.nextInt(5) - 2));
+    }
+
+    private int startFrame(int ant) {
+        this.frame[1] = this.address;
+        this.frame[2] = 0x01;
+        this.frame[4] = (byte) ant;
+        return 6;
+    }
+
+    private void emitFrame(int end, int status, int num, long dueNanos) {
+        this.frame[0] = (byte) (end + 1);
+        this.frame[3] = (byte) status;
+        this.frame[5] = (byte) num;
+        ProtocolCodec.appendCrc(this.frame, 0, end);
+        enqueue(Arrays.copyOf(this.frame, end + 2), dueNanos);
+    }
+
+    /** Queues {@code Len Adr cmd body... CRC16}. */
+    private void reply(long dueNanos, int cmd, int... body) {
+        byte[] out = new byte[body.length + 5];
+        out[0] = (byte) (body.length + 4);
+        out[1] = this.address;
+        out[2] = (byte) cmd;
+        for (int i = 0; i < body.length; i++) {
+            out[3 + i] = (byte) body[i];
+        }
+        ProtocolCodec.appendCrc(out, 0, out.length - 2);
+        enqueue(out, dueNanos);
+    }
+
+    /** Whether a frame crossing the link now is hit by the errors of a too fast rate. */
+    private boolean garbled() {
+        return this.baudRate > this.config.maxCleanBaudRate
+                && this.random.nextDouble() < this.config.fastLinkCorruptionRate;
+    }
+
+    private void enqueue(byte[] data, long readyNanos) {
+        if (this.random.nextDouble() < this.config.frameCorruptionRate || garbled()) {
+            data[1 + this.random.nextInt(data.length - 1)] ^= (byte) (1 << this.random.nextInt(8));
+        }
+        long wireNanos = data.length * 10L * 1_000_000_000L / this.baudRate;
+        long start = Math.max(readyNanos, this.wireFreeAt);
+        this.wireFreeAt = start + wireNanos;
+        this.pending.add(new Pending(data, this.wireFreeAt));
+        this.dataReady.signalAll();
+    }
+}
@@ -0,0 +1,50 @@
+package com.rfid.trans;
+
+/** Replies recorded from the UHF module, and the helpers the tests use to build frames. */
+final class RecordedFrames {
+
+    /** Inventory_G2 reply, status 0x03, two tags, as received from the module. */
+    static final String MORE_TWO_TAGS =
+            "2300010301020CE2000017221101441890ABCD4A0C300833B2DDD90140000000013C1FA3";
+    /** Inventory_G2 reply, status 0x01, one tag. */
+    static final String DONE_ONE_TAG = "1500010101010CE28011700000020D6B2F1A33524574";
+    /** Inventory_G2 reply, status 0x02 (scan time used up), one tag. */
+    static final String TIMED_OUT_ONE_TAG = "1500010201010CE2000017221101441890ABCD4B2FAE";
+    /** Inventory_G2 reply, status 0x04 (module buffer full), one tag. */
+    static final String FULL_ONE_TAG = "1500010401010C300833B2DDD90140000000013D4BB3";
+    /** Inventory_G2 reply, status 0xFB: no tag in the field. */
+    static final String NO_TAG = "050001FBF23D";
+    /** GetReaderInformation reply. */
+    static final String READER_INFO = "10002100020A0F0231001E01010000990C";
+
+
+    private RecordedFrames() {
+    }
+
+    static byte[] fromHex(String hex) {
+        return HexCodec.fromHex(hex);
+    }
+
+    static String toHex(byte[] b, int off, int len) {
+        return HexCodec.toHex(b, off, len);
+    }
+
+    /** Hex of the CRC the reader appends to {@code bodyHex}, low byte first. */
+    static String crcHex(String bodyHex) {
+        byte[] body = fromHex(bodyHex);
+        int crc = crcBitwise(body, 0, body.length);
+        return toHex(new byte[] {(byte) crc, (byte) (crc >> 8)}, 0, 2);
+    }
+
+    /** The reader's CRC bit by bit, as the vendor library computed it. */
+    static int crcBitwise(byte[] b, int off, int len) {
+        int crc = 0xFFFF;
+        for (int i = off; i < off + len; i++) {
+            crc ^= b[i] & 0xFF;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >> 1) ^ 0x8408 : crc >> 1;
+            }
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,88 @@
+package com.rfid.trans;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport that answers each command written to it with recorded reply bytes,
+ * delivered in the chunks given, as the serial port would split them.
+ */
+final class ScriptedTransport implements Transport {
+
+    private final ArrayDeque<byte[][]> replies = new ArrayDeque<>();
+    private final LinkedBlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+    private final List<byte[]> written = new ArrayList<>();
+    private volatile boolean open = false;
+
+    /** Queues the hex chunks received after the next command; none is a command left unanswered. */
+    synchronized ScriptedTransport reply(String... hexChunks) {
+        byte[][] chunks = new byte[hexChunks.length][];
+        for (int i = 0; i < hexChunks.length; i++) {
+            chunks[i] = RecordedFrames.fromHex(hexChunks[i]);
+        }
+        this.replies.add(chunks);
+        return this;
+    }
+
+    /** Commands written so far. */
+    synchronized List<byte[]> written() {
+        return new ArrayList<>(this.written);
+    }
+
+    @Override
+    public int open(String port, int baudRate) {
+        this.open = true;
+        return 0;
+    }
+
+    @Override
+    public int close() {
+        this.open = false;
+        return 0;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public synchronized int write(byte[] b, int off, int len) {
+        if (!this.open) {
+            return -1;
+        }
+        byte[] command = new byte[len];
+        System.arraycopy(b, off, command, 0, len);
+        this.written.add(command);
+        byte[][] reply = this.replies.poll();
+        if (reply != null) {
+            for (byte[] chunk : reply) {
+                this.received.add(chunk);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len, int timeoutMs) {
+        if (!this.open) {
+            return -1;
+        }
+        byte[] chunk;
+        try {
+            chunk = this.received.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        if (chunk == null) {
+            return 0;
+        }
+        int n = Math.min(len, chunk.length);
+        System.arraycopy(chunk, 0, b, off, n);
+        return n;
+    }
+}
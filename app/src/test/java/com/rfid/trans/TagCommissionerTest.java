@@ -0,0 +1,67 @@
+package com.rfid.trans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+/** TagCommissioner against the module emulator. */
+public class TagCommissionerTest {
+
+    private static final int TAGS = 20;
+
+    private final ReaderEmulator emulator = new ReaderEmulator(config());
+    private final BaseReader reader = new BaseReader(this.emulator);
+
+    private static ReaderEmulator.Config config() {
+        ReaderEmulator.Config config = new ReaderEmulator.Config();
+        config.tagCount = TAGS;
+        return config;
+    }
+
+    @After
+    public void disconnect() {
+        this.reader.DisConnect();
+    }
+
+    @Test
+    public void everyTagEndsUpWithItsEpcAndKeepsItsPcFlags() {
+        assertEquals(0, this.reader.Connect("emulator", 115200, 0));
+        List<byte[]> tids = new ArrayList<>();
+        List<byte[]> epcs = new ArrayList<>();
+        for (int i = 0; i < TAGS; i++) {
+            // Every other tag has UMI set and an AFI; half the EPCs change length.
+            this.emulator.setPcFlags(i, i % 2 == 0 ? 0x04A5 : 0);
+            tids.add(this.emulator.getTid(i));
+            epcs.add(epc(i, i % 4 < 2 ? 12 : 16));
+        }
+        TagCommissioner.Progress progress = new TagCommissioner(this.reader, (byte) 0xFF).run(tids, epcs,
+                new byte[4], 5, new TagCommissioner.Listener() {
+                    @Override
+                    public void onTagWritten(byte[] tid, byte[] epc, int status, int attempts) {
+                        assertEquals(0, status);
+                    }
+
+                    @Override
+                    public void onProgress(TagCommissioner.Progress progress) {
+                    }
+                }, () -> false);
+        assertEquals(TAGS, progress.encoded);
+        for (int i = 0; i < TAGS; i++) {
+            assertArrayEquals(epcs.get(i), this.emulator.getEpc(i));
+            int pc = this.emulator.getPc(i);
+            assertEquals(epcs.get(i).length / 2, pc >>> 11);
+            assertEquals(i % 2 == 0 ? 0x04A5 : 0, pc & 0x07FF);
+        }
+    }
+
+    private static byte[] epc(int i, int length) {
+        byte[] epc = new byte[length];
+        epc[0] = (byte) 0x30;
+        epc[length - 1] = (byte) i;
+        return epc;
+    }
+}